@@ -0,0 +1,57 @@
+package com.cloudnative.apps.db;
+
+import cn.hutool.core.util.StrUtil;
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.handler.AbstractStoreIdempotentExecuteHandler;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
+import com.cloudnative.idm.aspect.wrapper.AbstractIdempotentWrapper;
+import com.cloudnative.idm.aspect.wrapper.IdempotentSpelWrapper;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.key.IdempotentKeyTemplate;
+import com.cloudnative.idm.service.IdempotentSpELDBService;
+import com.cloudnative.idm.store.IdempotentStore;
+
+/**
+ * Idempotency of database writes, keyed by a SpEL expression over the arguments.
+ *
+ * <p>
+ * Meant to run with {@link com.cloudnative.apps.store.JdbcIdempotentStore} as the store
+ * of the DB scene, so that the key lives next to the data it guards. Keys are
+ * {@code <uniqueKeyPrefix>:<key>}, {@code idempotent:db} by default, and are not scoped
+ * to the current user since the same row may be written on behalf of anyone.
+ * </p>
+ */
+public class IdempotentSpELDBExecuteHandler extends AbstractStoreIdempotentExecuteHandler
+        implements IdempotentSpELDBService {
+    public static final String DEFAULT_KEY_PREFIX = "idempotent:db";
+
+    public IdempotentSpELDBExecuteHandler(IdempotentStore defaultStore) {
+        super(defaultStore);
+    }
+
+    @Override
+    public AbstractIdempotentWrapper buildWrapper(IdempotentInvocationContext context) {
+        IdempotentMethodPlan plan = context.getPlan();
+        Idempotent idempotent = plan.getIdempotent();
+
+        if (idempotent == null || plan.getType() != IdempotentTypeEnum.SPEL) {
+            throw new IllegalStateException("Missing or invalid @Idempotent(scene=DB, type=SPEL) " +
+                    "annotation");
+        }
+
+        String evaluatedKey = plan.getKeyExtractor().extract(context.getJoinPoint().getArgs());
+        return IdempotentSpelWrapper.builder()
+                .idempotent(idempotent)
+                .joinPoint(context.getJoinPoint())
+                .spelKey(plan.getKeyTemplate())
+                .lockKey(lockKeyTemplate(plan).render(evaluatedKey))
+                .build();
+    }
+
+    @Override
+    public IdempotentKeyTemplate createLockKeyTemplate(Idempotent idempotent) {
+        String prefix = StrUtil.blankToDefault(idempotent.uniqueKeyPrefix(), DEFAULT_KEY_PREFIX);
+        return IdempotentKeyTemplate.compile(prefix + ":{}", idempotent.keyFormat());
+    }
+}
@@ -1,59 +1,74 @@
 package com.cloudnative.apps.http;
 
-import cn.hutool.crypto.digest.DigestUtil;
-import com.alibaba.fastjson2.JSON;
-import com.cloudnative.idm.aspect.handler.AbstractIdempotentExecuteHandler;
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.handler.AbstractStoreIdempotentExecuteHandler;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
 import com.cloudnative.idm.aspect.wrapper.AbstractIdempotentWrapper;
 import com.cloudnative.idm.aspect.wrapper.IdempotentParamWrapper;
-import com.cloudnative.idm.context.IdempotentContext;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.enums.IdempotentFingerprintEnum;
+import com.cloudnative.idm.key.IdempotentFingerprinter;
+import com.cloudnative.idm.key.IdempotentKeyTemplate;
+import com.cloudnative.idm.key.Murmur3Fingerprinter;
 import com.cloudnative.idm.service.IdempotentParamService;
-import lombok.RequiredArgsConstructor;
-import org.aspectj.lang.ProceedingJoinPoint;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import com.cloudnative.idm.store.IdempotentStore;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
-@RequiredArgsConstructor
-public class IdempotentParamExecuteHandler extends AbstractIdempotentExecuteHandler
+import java.util.EnumMap;
+import java.util.Map;
+
+public class IdempotentParamExecuteHandler extends AbstractStoreIdempotentExecuteHandler
         implements IdempotentParamService {
-    private final RedissonClient redissionClient;
-    // lock:${idempotent-scene}:${idempotent-type}
-    private final static String LOCK = "lock:http:param";
+    private final Map<IdempotentFingerprintEnum, IdempotentFingerprinter> fingerprinters =
+            new EnumMap<>(IdempotentFingerprintEnum.class);
 
-    @Override
-    public AbstractIdempotentWrapper buildWrapper(ProceedingJoinPoint joinPoint) {
-        String lockKey = String.format("idempotent:path:%s:currentUserId:%s:md5:%s",
-                getServletPath(),
-                getCurrentUserId(),
-                genBasedOnMD5Alg(joinPoint));
-        return IdempotentParamWrapper.builder().lockKey(lockKey).joinPoint(joinPoint).build();
+    public IdempotentParamExecuteHandler(IdempotentStore defaultStore) {
+        super(defaultStore);
+        registerFingerprinter(new Murmur3Fingerprinter());
+        registerFingerprinter(new Md5JsonFingerprinter());
     }
 
-    private String genBasedOnMD5Alg(ProceedingJoinPoint joinPoint) {
-        return DigestUtil.md5Hex(JSON.toJSONBytes(joinPoint.getArgs()));
+    /**
+     * Register, or replace, the fingerprinter used for its algorithm.
+     */
+    public void registerFingerprinter(IdempotentFingerprinter fingerprinter) {
+        fingerprinters.put(fingerprinter.algorithm(), fingerprinter);
     }
 
-    private String getServletPath() {
-        ServletRequestAttributes servletRequestAttributes =
-                (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-        return servletRequestAttributes.getRequest().getServletPath();
+    @Override
+    public AbstractIdempotentWrapper buildWrapper(IdempotentInvocationContext context) {
+        IdempotentMethodPlan plan = context.getPlan();
+        IdempotentFingerprinter fingerprinter = getFingerprinter(plan.getFingerprint());
+        Object[] keyArguments = plan.keyArguments(context.getJoinPoint().getArgs());
+        String lockKey = lockKeyTemplate(plan).newKey()
+                .add(getServletPath())
+                .add(getCurrentUserId(context))
+                .add(fingerprinter.tag())
+                .add(fingerprinter.fingerprint(keyArguments))
+                .build();
+        return IdempotentParamWrapper.builder().lockKey(lockKey)
+                .joinPoint(context.getJoinPoint()).build();
     }
 
     @Override
-    public void handler(AbstractIdempotentWrapper wrapper) {
-        String lockKey = wrapper.getLockKey();
-        RLock lock = redissionClient.getLock(lockKey);
-        if (!lock.tryLock()) {
-            throw new RuntimeException(wrapper.getIdempotent().message());
+    public IdempotentKeyTemplate createLockKeyTemplate(Idempotent idempotent) {
+        return IdempotentKeyTemplate.compile("idempotent:path:{}:currentUserId:{}:{}:{}",
+                idempotent != null ? idempotent.keyFormat() : null);
+    }
+
+    private IdempotentFingerprinter getFingerprinter(IdempotentFingerprintEnum algorithm) {
+        IdempotentFingerprinter fingerprinter = fingerprinters.get(
+                algorithm != null ? algorithm : IdempotentFingerprintEnum.MURMUR3_128);
+        if (fingerprinter == null) {
+            throw new IllegalStateException(String.format("No fingerprinter registered for [%s]", algorithm));
         }
-        IdempotentContext.put(LOCK, lock);
+        return fingerprinter;
     }
 
-    @Override
-    public void postProcessing() {
-        super.postProcessing();
+    private String getServletPath() {
+        ServletRequestAttributes servletRequestAttributes =
+                (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        return servletRequestAttributes.getRequest().getServletPath();
     }
-}
\ No newline at end of file
+}
@@ -1,76 +1,99 @@
 package com.cloudnative.apps.http;
 
 import com.cloudnative.idm.annotation.Idempotent;
-import com.cloudnative.idm.aspect.handler.AbstractIdempotentExecuteHandler;
+import com.cloudnative.idm.aspect.handler.AbstractStoreIdempotentExecuteHandler;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
 import com.cloudnative.idm.aspect.wrapper.AbstractIdempotentWrapper;
 import com.cloudnative.idm.aspect.wrapper.IdempotentParamWrapper;
 import com.cloudnative.idm.aspect.wrapper.IdempotentTokenWrapper;
-import com.cloudnative.idm.context.IdempotentContext;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
 import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.key.IdempotentKeyTemplate;
+import com.cloudnative.idm.key.IdempotentTokenSigner;
 import com.cloudnative.idm.service.IdempotentTokenService;
-import lombok.RequiredArgsConstructor;
-import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.reflect.MethodSignature;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
+import com.cloudnative.idm.store.IdempotentStore;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
-import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.List;
 
-@RequiredArgsConstructor
-public class IdempotentTokenExecuteHandler extends AbstractIdempotentExecuteHandler
+/**
+ * Guards methods with the token sent in the {@code Idempotency-Key} header.
+ *
+ * <p>
+ * With an {@link IdempotentTokenSigner} the handler issues signed tokens and refuses
+ * missing, forged or expired ones without reaching the store, so the only store command
+ * of a request is the claim consuming the token. A completed token is then kept no longer
+ * than the token time to live, past which the signature check refuses it anyway. Without
+ * a signer any header value is accepted and tokens cannot be issued.
+ * </p>
+ */
+public class IdempotentTokenExecuteHandler extends AbstractStoreIdempotentExecuteHandler
         implements IdempotentTokenService {
+    public static final String TOKEN_HEADER = "Idempotency-Key";
 
-    private final RedissonClient redissonClient;
-    // lock:${idempotent-scene}:${idempotent-type}
-    private final static String LOCK = "lock:http:token";
+    private final IdempotentTokenSigner signer;
 
+    public IdempotentTokenExecuteHandler(IdempotentStore defaultStore) {
+        this(defaultStore, null);
+    }
+
+    public IdempotentTokenExecuteHandler(IdempotentStore defaultStore, IdempotentTokenSigner signer) {
+        super(defaultStore);
+        this.signer = signer;
+    }
 
     @Override
-    public AbstractIdempotentWrapper buildWrapper(ProceedingJoinPoint joinPoint) {
-        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
-        Idempotent idempotent = method.getAnnotation(Idempotent.class);
+    public List<String> issueTokens(int count) {
+        if (signer == null) {
+            throw new IllegalStateException("Token issuance needs an IdempotentTokenSigner");
+        }
+        return signer.issue(count);
+    }
 
-        if (idempotent == null || idempotent.type() != IdempotentTypeEnum.TOKEN) {
+    @Override
+    public AbstractIdempotentWrapper buildWrapper(IdempotentInvocationContext context) {
+        IdempotentMethodPlan plan = context.getPlan();
+        Idempotent idempotent = plan.getIdempotent();
+
+        if (idempotent == null || plan.getType() != IdempotentTypeEnum.TOKEN) {
             throw new IllegalStateException("Missing or invalid @Idempotent(type=SPEL) " +
                     "annotation");
         }
 
         String token = getRequestToken();
-        String lockKey = String.format("idempotent:token:%s", token);
+        if (signer != null && signer.expiresAt(token) == 0) {
+            throw new IllegalArgumentException(String.format("Invalid or expired idempotency token [%s]", token));
+        }
+        String lockKey = lockKeyTemplate(plan).render(token);
         return IdempotentTokenWrapper.builder().idempotent(idempotent)
-                .joinPoint(joinPoint)
+                .joinPoint(context.getJoinPoint())
                 .lockKey(lockKey)
                 .requestToken(token)
                 .build();
     }
 
-    private String getRequestToken() {
-        ServletRequestAttributes attrs =
-                (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-        HttpServletRequest request = attrs.getRequest();
-        return request.getHeader("Idempotency-Key");
-    }
-
     @Override
-    public void handler(AbstractIdempotentWrapper wrapper) {
-        String lockKey = wrapper.getLockKey();
-        RLock lock = redissonClient.getLock(lockKey);
-        if (!lock.tryLock()) {
-            throw new RuntimeException(wrapper.getIdempotent().message());
-        }
-        IdempotentContext.put(LOCK, lock);
+    public IdempotentKeyTemplate createLockKeyTemplate(Idempotent idempotent) {
+        return IdempotentKeyTemplate.compile("idempotent:token:{}",
+                idempotent != null ? idempotent.keyFormat() : null);
     }
 
     @Override
-    public void exceptionProcessing() {
-        super.exceptionProcessing();
+    protected Duration keepAfterSuccess(IdempotentMethodPlan plan) {
+        Duration keepAfterSuccess = super.keepAfterSuccess(plan);
+        if (signer == null || (keepAfterSuccess != null && keepAfterSuccess.compareTo(signer.getTimeToLive()) <= 0)) {
+            return keepAfterSuccess;
+        }
+        return signer.getTimeToLive();
     }
 
-    @Override
-    public void postProcessing() {
-        super.postProcessing();
+    private String getRequestToken() {
+        ServletRequestAttributes attrs =
+                (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        HttpServletRequest request = attrs.getRequest();
+        return request.getHeader(TOKEN_HEADER);
     }
 }
@@ -0,0 +1,30 @@
+package com.cloudnative.apps.http;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.alibaba.fastjson2.JSON;
+import com.cloudnative.idm.enums.IdempotentFingerprintEnum;
+import com.cloudnative.idm.key.IdempotentFingerprinter;
+
+/**
+ * MD5 over the JSON serialization of the arguments.
+ * <p>
+ * Kept for keys that must stay compatible with the ones written before streaming
+ * fingerprints were introduced, prefer {@link IdempotentFingerprintEnum#MURMUR3_128}.
+ */
+public class Md5JsonFingerprinter implements IdempotentFingerprinter {
+
+    @Override
+    public IdempotentFingerprintEnum algorithm() {
+        return IdempotentFingerprintEnum.MD5;
+    }
+
+    @Override
+    public String tag() {
+        return "md5";
+    }
+
+    @Override
+    public byte[] fingerprint(Object[] args) {
+        return DigestUtil.md5(JSON.toJSONBytes(args));
+    }
+}
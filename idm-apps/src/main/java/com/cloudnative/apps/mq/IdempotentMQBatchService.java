@@ -0,0 +1,103 @@
+package com.cloudnative.apps.mq;
+
+import com.cloudnative.idm.enums.IdempotentKeyFormatEnum;
+import com.cloudnative.idm.key.IdempotentKeyTemplate;
+import com.cloudnative.idm.service.IdempotentBatchClaim;
+import com.cloudnative.idm.service.IdempotentBatchService;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * {@link IdempotentBatchService} for MQ batch consumers, backed by an
+ * {@link IdempotentStore}.
+ *
+ * <p>
+ * A batch costs one {@link IdempotentStore#claimAll} and at most one
+ * {@link IdempotentStore#markAllCompleted} plus one {@link IdempotentStore#releaseAll},
+ * each a single pipelined round trip with {@link com.cloudnative.apps.store.RedisSetNxIdempotentStore}.
+ * Keys are {@code <keyPrefix>:<business key>}.
+ * </p>
+ */
+public class IdempotentMQBatchService implements IdempotentBatchService {
+    public static final String DEFAULT_KEY_PREFIX = "idempotent:mq";
+
+    public static final Duration DEFAULT_LEASE_TIME = Duration.ofSeconds(30);
+
+    public static final Duration DEFAULT_KEEP_AFTER_CONSUMED = Duration.ofHours(1);
+
+    private final IdempotentStore store;
+
+    private final IdempotentKeyTemplate keyTemplate;
+
+    private final Duration leaseTime;
+
+    private final Duration keepAfterConsumed;
+
+    public IdempotentMQBatchService(IdempotentStore store) {
+        this(store, DEFAULT_KEY_PREFIX, IdempotentKeyFormatEnum.READABLE, DEFAULT_LEASE_TIME,
+                DEFAULT_KEEP_AFTER_CONSUMED);
+    }
+
+    /**
+     * @param store             store holding the keys
+     * @param keyPrefix         namespace of the keys
+     * @param keyFormat         encoding of the keys
+     * @param leaseTime         how long a claim is held while its message is processed
+     * @param keepAfterConsumed how long a consumed message keeps being rejected
+     */
+    public IdempotentMQBatchService(IdempotentStore store, String keyPrefix, IdempotentKeyFormatEnum keyFormat,
+                                    Duration leaseTime, Duration keepAfterConsumed) {
+        this.store = store;
+        this.keyTemplate = IdempotentKeyTemplate.compile(keyPrefix + ":{}", keyFormat);
+        this.leaseTime = leaseTime;
+        this.keepAfterConsumed = keepAfterConsumed;
+    }
+
+    @Override
+    public <T> IdempotentBatchClaim<T> claimAll(List<T> messages, Function<? super T, String> keyExtractor) {
+        List<String> keys = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            String key = keyExtractor.apply(messages.get(i));
+            if (key == null) {
+                throw new IllegalArgumentException(String.format("Null idempotent key for message at index [%s]", i));
+            }
+            keys.add(keyTemplate.render(key));
+        }
+        List<IdempotentClaim> claims = keys.isEmpty() ? List.of() : store.claimAll(keys, leaseTime);
+        return new IdempotentBatchClaim<>(messages, keys, claims);
+    }
+
+    @Override
+    public void complete(IdempotentBatchClaim<?> batch, BitSet consumed) {
+        List<String> consumedKeys = new ArrayList<>();
+        List<String> consumedOwners = new ArrayList<>();
+        List<String> failedKeys = new ArrayList<>();
+        List<String> failedOwners = new ArrayList<>();
+        BitSet claimed = batch.getNewIndexes();
+        for (int i = claimed.nextSetBit(0); i >= 0; i = claimed.nextSetBit(i + 1)) {
+            if (consumed.get(i)) {
+                consumedKeys.add(batch.getKeys().get(i));
+                consumedOwners.add(batch.getOwner(i));
+            } else {
+                failedKeys.add(batch.getKeys().get(i));
+                failedOwners.add(batch.getOwner(i));
+            }
+        }
+        if (!consumedKeys.isEmpty()) {
+            store.markAllCompleted(consumedKeys, consumedOwners, keepAfterConsumed);
+        }
+        if (!failedKeys.isEmpty()) {
+            store.releaseAll(failedKeys, failedOwners);
+        }
+    }
+
+    public IdempotentStore getStore() {
+        return store;
+    }
+}
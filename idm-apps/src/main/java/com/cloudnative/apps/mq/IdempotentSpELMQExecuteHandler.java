@@ -0,0 +1,76 @@
+package com.cloudnative.apps.mq;
+
+import cn.hutool.core.util.StrUtil;
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.handler.AbstractStoreIdempotentExecuteHandler;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
+import com.cloudnative.idm.aspect.wrapper.AbstractIdempotentWrapper;
+import com.cloudnative.idm.aspect.wrapper.IdempotentSpelWrapper;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.enums.IdempotentMQConsumeStatusEnum;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.exception.RepeatConsumptionException;
+import com.cloudnative.idm.key.IdempotentKeyTemplate;
+import com.cloudnative.idm.service.IdempotentSpELMQService;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+
+/**
+ * MQ consumer idempotency, keyed by a SpEL expression over the message.
+ *
+ * <p>
+ * Drives the {@link IdempotentMQConsumeStatusEnum} state machine on the store:
+ * <ul>
+ *     <li>the key is set to CONSUMING for the lease time, atomically with the check of its
+ *     current state</li>
+ *     <li>a successful consumption moves it to CONSUMED for {@code keyTimeout}</li>
+ *     <li>a failed one deletes it, so that the redelivery is consumed again</li>
+ * </ul>
+ * A duplicate raises {@link RepeatConsumptionException}: the message is acknowledged when
+ * it was already consumed, and retried while it is still being consumed elsewhere.
+ * With {@link com.cloudnative.apps.store.RedisSetNxIdempotentStore} the check, the claim
+ * and the ack-or-retry decision are one scripted round trip. The store must report
+ * completed keys, a plain lock store makes every duplicate a retry.
+ * </p>
+ */
+public class IdempotentSpELMQExecuteHandler extends AbstractStoreIdempotentExecuteHandler
+        implements IdempotentSpELMQService {
+
+    public IdempotentSpELMQExecuteHandler(IdempotentStore defaultStore) {
+        super(defaultStore);
+    }
+
+    @Override
+    public AbstractIdempotentWrapper buildWrapper(IdempotentInvocationContext context) {
+        IdempotentMethodPlan plan = context.getPlan();
+        Idempotent idempotent = plan.getIdempotent();
+
+        if (idempotent == null || plan.getType() != IdempotentTypeEnum.SPEL) {
+            throw new IllegalStateException("Missing or invalid @Idempotent(scene=MQ, type=SPEL) " +
+                    "annotation");
+        }
+
+        String evaluatedKey = plan.getKeyExtractor().extract(context.getJoinPoint().getArgs());
+        return IdempotentSpelWrapper.builder()
+                .idempotent(idempotent)
+                .joinPoint(context.getJoinPoint())
+                .spelKey(plan.getKeyTemplate())
+                .lockKey(lockKeyTemplate(plan).render(evaluatedKey))
+                .build();
+    }
+
+    @Override
+    public IdempotentKeyTemplate createLockKeyTemplate(Idempotent idempotent) {
+        String prefix = StrUtil.blankToDefault(idempotent.uniqueKeyPrefix(),
+                IdempotentMQBatchService.DEFAULT_KEY_PREFIX);
+        return IdempotentKeyTemplate.compile(prefix + ":{}", idempotent.keyFormat());
+    }
+
+    @Override
+    protected RuntimeException duplicateException(AbstractIdempotentWrapper wrapper, IdempotentClaim claim) {
+        IdempotentMQConsumeStatusEnum status = claim.getPreviousState() == IdempotentKeyStateEnum.COMPLETED
+                ? IdempotentMQConsumeStatusEnum.CONSUMED : IdempotentMQConsumeStatusEnum.CONSUMING;
+        return new RepeatConsumptionException(IdempotentMQConsumeStatusEnum.isError(status.getCode()));
+    }
+}
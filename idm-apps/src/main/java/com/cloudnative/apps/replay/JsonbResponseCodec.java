@@ -0,0 +1,115 @@
+package com.cloudnative.apps.replay;
+
+import com.alibaba.fastjson2.JSONB;
+import com.cloudnative.idm.replay.IdempotentResponseCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link IdempotentResponseCodec} writing responses in fastjson2 JSONB, a compact binary
+ * JSON.
+ *
+ * <p>
+ * The first byte tells whether the payload is deflated: responses of at least
+ * {@code compressThreshold} bytes are compressed when that makes them smaller. Responses
+ * still larger than {@code maxBytes} are not stored, their duplicates then fail as if
+ * replay was off instead of bloating the store.
+ * </p>
+ */
+public class JsonbResponseCodec implements IdempotentResponseCodec {
+    public static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 512;
+
+    private static final byte RAW = 0;
+
+    private static final byte DEFLATED = 1;
+
+    private final int maxBytes;
+
+    private final int compressThreshold;
+
+    public JsonbResponseCodec() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_COMPRESS_THRESHOLD);
+    }
+
+    /**
+     * @param maxBytes          largest encoded response stored
+     * @param compressThreshold smallest response compressed, {@link Integer#MAX_VALUE} to
+     *                          never compress
+     */
+    public JsonbResponseCodec(int maxBytes, int compressThreshold) {
+        this.maxBytes = maxBytes;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] encode(Object response) {
+        byte[] payload = JSONB.toBytes(response);
+        byte[] encoded = null;
+        if (payload.length >= compressThreshold) {
+            encoded = deflate(payload);
+        }
+        if (encoded == null) {
+            encoded = new byte[payload.length + 1];
+            encoded[0] = RAW;
+            System.arraycopy(payload, 0, encoded, 1, payload.length);
+        }
+        return encoded.length <= maxBytes ? encoded : null;
+    }
+
+    @Override
+    public Object decode(byte[] bytes, Type type) {
+        byte[] payload = bytes[0] == DEFLATED ? inflate(bytes) : Arrays.copyOfRange(bytes, 1, bytes.length);
+        return JSONB.parseObject(payload, type);
+    }
+
+    /**
+     * The flagged deflated payload, null if it does not shrink.
+     */
+    private static byte[] deflate(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + 16);
+            out.write(DEFLATED);
+            byte[] buffer = new byte[Math.min(payload.length, 8192)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() > payload.length) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated idempotent response");
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupted idempotent response", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+}
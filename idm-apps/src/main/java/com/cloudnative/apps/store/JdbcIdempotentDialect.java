@@ -0,0 +1,43 @@
+package com.cloudnative.apps.store;
+
+/**
+ * How {@link JdbcIdempotentStore} inserts keys that may already exist.
+ */
+public enum JdbcIdempotentDialect {
+    /**
+     * Plain {@code INSERT}, an existing key is detected by the duplicate key error. Claims
+     * are sent one row at a time.
+     */
+    GENERIC("INSERT INTO ", ""),
+
+    /**
+     * {@code INSERT ... ON CONFLICT DO NOTHING}, also understood by H2 in PostgreSQL mode.
+     */
+    POSTGRESQL("INSERT INTO ", " ON CONFLICT DO NOTHING"),
+
+    /**
+     * {@code INSERT IGNORE}, also understood by H2 in MySQL mode. MySQL downgrades every
+     * row error to a warning with it, not only duplicate keys.
+     */
+    MYSQL("INSERT IGNORE INTO ", "");
+
+    private final String insertPrefix;
+
+    private final String insertSuffix;
+
+    JdbcIdempotentDialect(String insertPrefix, String insertSuffix) {
+        this.insertPrefix = insertPrefix;
+        this.insertSuffix = insertSuffix;
+    }
+
+    /**
+     * Whether existing keys are skipped silently, allowing multi-row claims.
+     */
+    public boolean isInsertIgnore() {
+        return this != GENERIC;
+    }
+
+    String insert(String table, String columns, String values) {
+        return insertPrefix + table + " " + columns + " VALUES " + values + insertSuffix;
+    }
+}
@@ -0,0 +1,420 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.key.Murmur3Hasher;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link IdempotentStore} backed by a relational table, the natural choice when the guarded
+ * operation writes to the same database.
+ *
+ * <p>
+ * Keys are stored as their 128-bit MurmurHash3, so the primary key index stays small and
+ * fixed-size whatever the key length. The primary key makes claims atomic: a claim is an
+ * {@code INSERT} that skips existing keys, and an expired row is taken over with a
+ * conditional {@code UPDATE}. Expected schema:
+ * <pre>
+ * CREATE TABLE idempotent_key (
+ *     key_hash   BINARY(16)  PRIMARY KEY, -- BYTEA on PostgreSQL
+ *     state      VARCHAR(16) NOT NULL,
+ *     owner      VARCHAR(64) NOT NULL,
+ *     expires_at BIGINT      NOT NULL,    -- epoch millis
+ *     response   VARBINARY(65535)         -- BYTEA on PostgreSQL, BLOB on MySQL
+ * );
+ * CREATE INDEX idx_idempotent_key_expires_at ON idempotent_key (expires_at);
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * With a {@link JdbcIdempotentDialect#isInsertIgnore() skipping} dialect, claims made
+ * concurrently by several threads are grouped: while one thread runs its statements, the
+ * others queue their claims, and the next one to run sends all of them as one multi-row
+ * {@code INSERT}, up to {@code maxBatchSize} keys, followed by one {@code SELECT} only if
+ * some keys already existed. A claim made inside a transaction is never grouped, so it
+ * commits or rolls back with it.
+ * </p>
+ *
+ * <p>
+ * Expired rows are not deleted by claims; {@link #purgeExpired} removes them in bounded
+ * batches and is meant to run periodically. Tables partitioned by {@code expires_at} can
+ * drop old partitions instead.
+ * </p>
+ */
+public class JdbcIdempotentStore implements IdempotentStore {
+    public static final String NAME = "jdbc";
+
+    public static final String DEFAULT_TABLE = "idempotent_key";
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    /**
+     * Expiration of keys claimed or completed without a TTL.
+     */
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private static final String COLUMNS = "(key_hash, state, owner, expires_at)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String table;
+
+    private final JdbcIdempotentDialect dialect;
+
+    private final int maxBatchSize;
+
+    private final String takeOverSql;
+
+    private final String completeSql;
+
+    private final String releaseSql;
+
+    private final String lookupSql;
+
+    private final String expiredSql;
+
+    /**
+     * Random per instance, so owners stay unique across nodes and restarts.
+     */
+    private final String ownerPrefix = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36) + "-";
+
+    private final AtomicLong ownerSequence = new AtomicLong();
+
+    /**
+     * Held by the thread sending the grouped claims.
+     */
+    private final ReentrantLock combiner = new ReentrantLock();
+
+    private final ConcurrentLinkedQueue<PendingClaim> pending = new ConcurrentLinkedQueue<>();
+
+    public JdbcIdempotentStore(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, DEFAULT_TABLE);
+    }
+
+    public JdbcIdempotentStore(JdbcTemplate jdbcTemplate, String table) {
+        this(jdbcTemplate, table, JdbcIdempotentDialect.GENERIC, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public JdbcIdempotentStore(JdbcTemplate jdbcTemplate, String table, JdbcIdempotentDialect dialect,
+                               int maxBatchSize) {
+        if (!table.matches("[A-Za-z_][A-Za-z0-9_.]*")) {
+            throw new IllegalArgumentException(String.format("Invalid table name [%s]", table));
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException(String.format("Batch size must be positive [%s]", maxBatchSize));
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.dialect = dialect;
+        this.maxBatchSize = maxBatchSize;
+        this.takeOverSql = "UPDATE " + table + " SET state = ?, owner = ?, expires_at = ?, response = NULL"
+                + " WHERE key_hash = ? AND expires_at <= ?";
+        this.completeSql = "UPDATE " + table + " SET state = ?, expires_at = ?, response = ?"
+                + " WHERE key_hash = ? AND owner = ?";
+        this.releaseSql = "DELETE FROM " + table + " WHERE key_hash = ? AND owner = ?";
+        this.lookupSql = "SELECT key_hash, state, owner, expires_at, response FROM " + table + " WHERE key_hash = ?";
+        this.expiredSql = "SELECT key_hash FROM " + table + " WHERE expires_at <= ?";
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        PendingClaim claim = new PendingClaim(hash(key), nextOwner(),
+                expiresAt(System.currentTimeMillis(), leaseTime));
+        if (!dialect.isInsertIgnore()) {
+            return insertOne(claim);
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            insertAll(Collections.singletonList(claim));
+            return claim.result;
+        }
+        pending.add(claim);
+        combiner.lock();
+        try {
+            // Claims queued while the previous holder was busy, ours included unless it
+            // already sent it or more than a batch is waiting
+            while (claim.result == null && claim.failure == null) {
+                List<PendingClaim> batch = new ArrayList<>(Math.min(maxBatchSize, pending.size()));
+                PendingClaim next;
+                while (batch.size() < maxBatchSize && (next = pending.poll()) != null) {
+                    batch.add(next);
+                }
+                try {
+                    insertAll(batch);
+                } catch (RuntimeException ex) {
+                    for (PendingClaim each : batch) {
+                        each.failure = ex;
+                    }
+                }
+            }
+        } finally {
+            combiner.unlock();
+        }
+        if (claim.failure != null) {
+            throw claim.failure;
+        }
+        return claim.result;
+    }
+
+    /**
+     * Claims the keys with one multi-row {@code INSERT} and at most one {@code SELECT} per
+     * {@code maxBatchSize} keys, or one by one with the generic dialect.
+     */
+    @Override
+    public List<IdempotentClaim> claimAll(List<String> keys, Duration leaseTime) {
+        if (!dialect.isInsertIgnore()) {
+            return IdempotentStore.super.claimAll(keys, leaseTime);
+        }
+        long expiresAt = expiresAt(System.currentTimeMillis(), leaseTime);
+        List<IdempotentClaim> claims = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += maxBatchSize) {
+            List<PendingClaim> batch = new ArrayList<>();
+            for (String key : keys.subList(from, Math.min(keys.size(), from + maxBatchSize))) {
+                batch.add(new PendingClaim(hash(key), nextOwner(), expiresAt));
+            }
+            insertAll(batch);
+            for (PendingClaim each : batch) {
+                claims.add(each.result);
+            }
+        }
+        return claims;
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        return markCompleted(key, owner, retention, null);
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+        return jdbcTemplate.update(completeSql, IdempotentKeyStateEnum.COMPLETED.name(),
+                expiresAt(System.currentTimeMillis(), retention), response, hash(key), owner) > 0;
+    }
+
+    @Override
+    public void markAllCompleted(List<String> keys, List<String> owners, Duration retention) {
+        long expiresAt = expiresAt(System.currentTimeMillis(), retention);
+        List<Object[]> args = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            args.add(new Object[]{IdempotentKeyStateEnum.COMPLETED.name(), expiresAt, null, hash(keys.get(i)),
+                    owners.get(i)});
+        }
+        jdbcTemplate.batchUpdate(completeSql, args);
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        jdbcTemplate.update(releaseSql, hash(key), owner);
+    }
+
+    @Override
+    public void releaseAll(List<String> keys, List<String> owners) {
+        List<Object[]> args = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            args.add(new Object[]{hash(keys.get(i)), owners.get(i)});
+        }
+        jdbcTemplate.batchUpdate(releaseSql, args);
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        Row row = lookupRow(hash(key));
+        return row == null || row.expiresAt <= System.currentTimeMillis() ? IdempotentKeyStateEnum.ABSENT
+                : IdempotentKeyStateEnum.valueOf(row.state);
+    }
+
+    /**
+     * Delete expired keys, at most {@code batchSize} rows per statement so that locks and
+     * undo logs stay small, and at most {@code maxBatches} statements per call.
+     *
+     * @return number of rows deleted
+     */
+    public int purgeExpired(int batchSize, int maxBatches) {
+        long now = System.currentTimeMillis();
+        int purged = 0;
+        for (int i = 0; i < maxBatches; i++) {
+            List<byte[]> expired = jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(expiredSql);
+                statement.setLong(1, now);
+                statement.setMaxRows(batchSize);
+                return statement;
+            }, (rs, rowNum) -> rs.getBytes(1));
+            if (expired.isEmpty()) {
+                break;
+            }
+            Object[] args = new Object[expired.size() + 1];
+            expired.toArray(args);
+            args[expired.size()] = now;
+            // Expiration checked again, a key may have been taken over since the SELECT
+            purged += jdbcTemplate.update("DELETE FROM " + table + " WHERE key_hash IN ("
+                    + placeholders(expired.size()) + ") AND expires_at <= ?", args);
+            if (expired.size() < batchSize) {
+                break;
+            }
+        }
+        return purged;
+    }
+
+    private IdempotentClaim insertOne(PendingClaim claim) {
+        try {
+            jdbcTemplate.update(dialect.insert(table, COLUMNS, "(?, ?, ?, ?)"), claim.hash,
+                    IdempotentKeyStateEnum.IN_PROGRESS.name(), claim.owner, claim.expiresAt);
+            return IdempotentClaim.acquired(claim.owner);
+        } catch (DuplicateKeyException ex) {
+            return takeOver(claim, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Insert the claims skipping existing keys, then read back which ones were inserted
+     * unless all of them were.
+     */
+    private void insertAll(List<PendingClaim> claims) {
+        if (claims.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Object[] insertArgs = new Object[claims.size() * 4];
+        Object[] selectArgs = new Object[claims.size()];
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < claims.size(); i++) {
+            PendingClaim claim = claims.get(i);
+            values.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+            insertArgs[i * 4] = claim.hash;
+            insertArgs[i * 4 + 1] = IdempotentKeyStateEnum.IN_PROGRESS.name();
+            insertArgs[i * 4 + 2] = claim.owner;
+            insertArgs[i * 4 + 3] = claim.expiresAt;
+            selectArgs[i] = claim.hash;
+        }
+        int inserted = jdbcTemplate.update(dialect.insert(table, COLUMNS, values.toString()), insertArgs);
+        if (inserted == claims.size()) {
+            // Every row went in, the common case, nothing to read back
+            for (PendingClaim claim : claims) {
+                claim.result = IdempotentClaim.acquired(claim.owner);
+            }
+            return;
+        }
+
+        Map<ByteBuffer, Row> rows = new HashMap<>();
+        jdbcTemplate.query("SELECT key_hash, state, owner, expires_at, response FROM " + table
+                        + " WHERE key_hash IN (" + placeholders(claims.size()) + ")", ROW_MAPPER, selectArgs)
+                .forEach(row -> rows.put(ByteBuffer.wrap(row.hash), row));
+        for (PendingClaim claim : claims) {
+            Row row = rows.get(ByteBuffer.wrap(claim.hash));
+            if (row != null && row.owner.equals(claim.owner)) {
+                claim.result = IdempotentClaim.acquired(claim.owner);
+            } else if (row != null && row.expiresAt <= now) {
+                claim.result = takeOver(claim, now);
+            } else {
+                claim.result = rejected(row);
+            }
+        }
+    }
+
+    private IdempotentClaim takeOver(PendingClaim claim, long now) {
+        int takenOver = jdbcTemplate.update(takeOverSql, IdempotentKeyStateEnum.IN_PROGRESS.name(),
+                claim.owner, claim.expiresAt, claim.hash, now);
+        if (takenOver == 1) {
+            return IdempotentClaim.acquired(claim.owner);
+        }
+        return rejected(lookupRow(claim.hash));
+    }
+
+    private static IdempotentClaim rejected(Row row) {
+        // Deleted in between: report it as busy rather than claiming it without a row lock
+        if (row == null) {
+            return IdempotentClaim.rejected(IdempotentKeyStateEnum.IN_PROGRESS);
+        }
+        return IdempotentClaim.rejected(IdempotentKeyStateEnum.valueOf(row.state), row.response,
+                row.expiresAt == NEVER ? ChronoUnit.FOREVER.getDuration()
+                        : Duration.ofMillis(row.expiresAt - System.currentTimeMillis()));
+    }
+
+    private Row lookupRow(byte[] hash) {
+        List<Row> rows = jdbcTemplate.query(lookupSql, ROW_MAPPER, (Object) hash);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private String nextOwner() {
+        return ownerPrefix + Long.toString(ownerSequence.incrementAndGet(), 36);
+    }
+
+    private static byte[] hash(String key) {
+        long[] hash = new Murmur3Hasher().putChars(key).finish();
+        return ByteBuffer.allocate(16).putLong(hash[0]).putLong(hash[1]).array();
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static long expiresAt(long now, Duration ttl) {
+        return ttl == null ? NEVER : now + ttl.toMillis();
+    }
+
+    private static final RowMapper<Row> ROW_MAPPER = (rs, rowNum) -> new Row(rs.getBytes("key_hash"),
+            rs.getString("state"), rs.getString("owner"), rs.getLong("expires_at"), rs.getBytes("response"));
+
+    private static final class Row {
+        private final byte[] hash;
+
+        private final String state;
+
+        private final String owner;
+
+        private final long expiresAt;
+
+        private final byte[] response;
+
+        private Row(byte[] hash, String state, String owner, long expiresAt, byte[] response) {
+            this.hash = hash;
+            this.state = state;
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+            this.response = response;
+        }
+    }
+
+    /**
+     * A claim waiting to be sent, completed by whichever thread sends it.
+     */
+    private static final class PendingClaim {
+        private final byte[] hash;
+
+        private final String owner;
+
+        private final long expiresAt;
+
+        private volatile IdempotentClaim result;
+
+        private volatile RuntimeException failure;
+
+        private PendingClaim(byte[] hash, String owner, long expiresAt) {
+            this.hash = hash;
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
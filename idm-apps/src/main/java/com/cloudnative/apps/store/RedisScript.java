@@ -0,0 +1,140 @@
+package com.cloudnative.apps.store;
+
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScript;
+import org.redisson.api.RScriptAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.IntFunction;
+
+/**
+ * Lua script run on a single key with {@code EVALSHA}.
+ *
+ * <p>
+ * The SHA1 digest Redis uses to name the script is computed locally, so running a script
+ * never waits for a {@code SCRIPT LOAD}. A server that does not know the script yet, after
+ * a {@code SCRIPT FLUSH} or a failover, answers {@code NOSCRIPT}: synchronous calls then
+ * load it and retry, asynchronous ones send its source with {@code EVAL} instead, which
+ * does not block the calling event loop. Instances are immutable and shared by every
+ * store.
+ * </p>
+ */
+final class RedisScript {
+    private final String source;
+
+    private final String sha;
+
+    RedisScript(String source) {
+        this.source = source;
+        this.sha = sha1(source);
+    }
+
+    Object eval(RedissonClient redissonClient, RScript.ReturnType returnType, String key, Object... args) {
+        RScript rScript = redissonClient.getScript(StringCodec.INSTANCE);
+        List<Object> keys = Collections.singletonList(key);
+        try {
+            return rScript.evalSha(RScript.Mode.READ_WRITE, sha, returnType, keys, args);
+        } catch (RedisException ex) {
+            if (!isNoScript(ex)) {
+                throw ex;
+            }
+            rScript.scriptLoad(source);
+            return rScript.evalSha(RScript.Mode.READ_WRITE, sha, returnType, keys, args);
+        }
+    }
+
+    CompletionStage<Object> evalAsync(RedissonClient redissonClient, RScript.ReturnType returnType, String key,
+                                      Object... args) {
+        RScript rScript = redissonClient.getScript(StringCodec.INSTANCE);
+        List<Object> keys = Collections.singletonList(key);
+        return rScript.evalShaAsync(RScript.Mode.READ_WRITE, sha, returnType, keys, args)
+                .toCompletableFuture()
+                .exceptionallyCompose(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (!isNoScript(cause)) {
+                        return CompletableFuture.failedFuture(cause);
+                    }
+                    // EVAL also caches the script on the server for the next EVALSHA
+                    return rScript.evalAsync(RScript.Mode.READ_WRITE, source, returnType, keys, args);
+                });
+    }
+
+    /**
+     * Run the script once per key in a single pipelined batch.
+     *
+     * @param args arguments of the script for the key at each index
+     * @return one response per key, in the order of {@code keys}
+     */
+    List<?> evalBatch(RedissonClient redissonClient, RScript.ReturnType returnType, List<String> keys,
+                      IntFunction<Object[]> args) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        Object[][] batchArgs = new Object[keys.size()][];
+        for (int i = 0; i < batchArgs.length; i++) {
+            batchArgs[i] = args.apply(i);
+        }
+        try {
+            return executeBatch(redissonClient, returnType, keys, batchArgs);
+        } catch (RedisException ex) {
+            if (!isNoScript(ex)) {
+                throw ex;
+            }
+            redissonClient.getScript(StringCodec.INSTANCE).scriptLoad(source);
+            return executeBatch(redissonClient, returnType, keys, batchArgs);
+        }
+    }
+
+    private List<?> executeBatch(RedissonClient redissonClient, RScript.ReturnType returnType, List<String> keys,
+                                 Object[][] args) {
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+        RScriptAsync rScript = batch.getScript(StringCodec.INSTANCE);
+        for (int i = 0; i < args.length; i++) {
+            rScript.evalShaAsync(RScript.Mode.READ_WRITE, sha, returnType,
+                    Collections.singletonList(keys.get(i)), args[i]);
+        }
+        return batch.execute().getResponses();
+    }
+
+    /**
+     * Whether an integer reply is 1, the reply of scripts that applied their write.
+     */
+    static boolean isOne(Object result) {
+        return result instanceof Number && ((Number) result).longValue() == 1;
+    }
+
+    private static boolean isNoScript(Throwable ex) {
+        // Batches report the failing command wrapped in their own exception
+        for (Throwable each = ex; each != null; each = each.getCause()) {
+            if (each instanceof RedisException && each.getMessage() != null && each.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String sha1(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        }
+    }
+
+    String getSha() {
+        return sha;
+    }
+}
@@ -0,0 +1,199 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IdempotentStore} claiming keys with a single atomic {@code SET NX PX}.
+ *
+ * <p>
+ * The value of a key is a state byte, {@code P} for in progress or {@code C} for completed,
+ * followed by the owner token of the claim, and for completed keys optionally {@code |} and
+ * the base64 encoded response kept for replay. Every operation is one Lua {@link RedisScript}
+ * run with {@code EVALSHA}, so a claim costs one round trip and one command, and a
+ * rejected claim also reports whether the key is in progress or completed, and for how
+ * long it is still kept.
+ * </p>
+ *
+ * <p>
+ * Unlike {@link RedissonLockIdempotentStore} a claim is never renewed and a rejected claim
+ * needs no second read: it expires after its lease time, the store default when none is
+ * given.
+ * </p>
+ */
+public class RedisSetNxIdempotentStore implements IdempotentStore {
+    public static final String NAME = "redis-setnx";
+
+    public static final Duration DEFAULT_LEASE_TIME = Duration.ofSeconds(30);
+
+    public static final Duration DEFAULT_RETENTION = Duration.ofHours(1);
+
+    private static final char IN_PROGRESS = 'P';
+
+    private static final char COMPLETED = 'C';
+
+    private static final char RESPONSE_SEPARATOR = '|';
+
+    /**
+     * Returns the remaining TTL in millis, {@code :} and the current value when the key
+     * exists, otherwise sets it and returns nil.
+     */
+    private static final RedisScript CLAIM = new RedisScript(
+            "local v = redis.call('get', KEYS[1]) "
+                    + "if v then return redis.call('pttl', KEYS[1]) .. ':' .. v end "
+                    + "redis.call('set', KEYS[1], ARGV[1], 'px', ARGV[2]) "
+                    + "return nil");
+
+    private static final RedisScript COMPLETE = new RedisScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "redis.call('set', KEYS[1], ARGV[2], 'px', ARGV[3]) return 1 end "
+                    + "return 0");
+
+    private static final RedisScript RELEASE = new RedisScript(
+            "local v = redis.call('get', KEYS[1]) "
+                    + "if v and string.sub(v, 2, #ARGV[1] + 1) == ARGV[1] "
+                    + "and (#v == #ARGV[1] + 1 or string.sub(v, #ARGV[1] + 2, #ARGV[1] + 2) == '|') then "
+                    + "return redis.call('del', KEYS[1]) end "
+                    + "return 0");
+
+    private final RedissonClient redissonClient;
+
+    private final Duration defaultLeaseTime;
+
+    private final Duration defaultRetention;
+
+    /**
+     * Random per instance, so owners stay unique across nodes and restarts.
+     */
+    private final String ownerPrefix = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36) + "-";
+
+    private final AtomicLong ownerSequence = new AtomicLong();
+
+    public RedisSetNxIdempotentStore(RedissonClient redissonClient) {
+        this(redissonClient, DEFAULT_LEASE_TIME, DEFAULT_RETENTION);
+    }
+
+    public RedisSetNxIdempotentStore(RedissonClient redissonClient, Duration defaultLeaseTime,
+                                     Duration defaultRetention) {
+        this.redissonClient = redissonClient;
+        this.defaultLeaseTime = defaultLeaseTime;
+        this.defaultRetention = defaultRetention;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        String owner = nextOwner();
+        Object current = CLAIM.eval(redissonClient, RScript.ReturnType.VALUE, key,
+                IN_PROGRESS + owner, ttlMillis(leaseTime, defaultLeaseTime));
+        return toClaim(current, owner);
+    }
+
+    @Override
+    public CompletionStage<IdempotentClaim> claimAsync(String key, Duration leaseTime) {
+        String owner = nextOwner();
+        return CLAIM.evalAsync(redissonClient, RScript.ReturnType.VALUE, key,
+                IN_PROGRESS + owner, ttlMillis(leaseTime, defaultLeaseTime))
+                .thenApply(current -> toClaim(current, owner));
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        return markCompleted(key, owner, retention, null);
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+        String completed = response == null ? COMPLETED + owner
+                : COMPLETED + owner + RESPONSE_SEPARATOR + Base64.getEncoder().encodeToString(response);
+        return RedisScript.isOne(COMPLETE.eval(redissonClient, RScript.ReturnType.INTEGER, key,
+                IN_PROGRESS + owner, completed, ttlMillis(retention, defaultRetention)));
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        RELEASE.eval(redissonClient, RScript.ReturnType.INTEGER, key, owner);
+    }
+
+    /**
+     * Claims every key with one pipelined {@code EVALSHA} per key, in a single round trip.
+     */
+    @Override
+    public List<IdempotentClaim> claimAll(List<String> keys, Duration leaseTime) {
+        String[] owners = new String[keys.size()];
+        String ttl = ttlMillis(leaseTime, defaultLeaseTime);
+        List<?> responses = CLAIM.evalBatch(redissonClient, RScript.ReturnType.VALUE, keys, i -> {
+            owners[i] = nextOwner();
+            return new Object[]{IN_PROGRESS + owners[i], ttl};
+        });
+        List<IdempotentClaim> claims = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            claims.add(toClaim(responses.get(i), owners[i]));
+        }
+        return claims;
+    }
+
+    @Override
+    public void markAllCompleted(List<String> keys, List<String> owners, Duration retention) {
+        String ttl = ttlMillis(retention, defaultRetention);
+        COMPLETE.evalBatch(redissonClient, RScript.ReturnType.INTEGER, keys,
+                i -> new Object[]{IN_PROGRESS + owners.get(i), COMPLETED + owners.get(i), ttl});
+    }
+
+    @Override
+    public void releaseAll(List<String> keys, List<String> owners) {
+        RELEASE.evalBatch(redissonClient, RScript.ReturnType.INTEGER, keys, i -> new Object[]{owners.get(i)});
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        return stateOf(redissonClient.<String>getBucket(key, StringCodec.INSTANCE).get());
+    }
+
+    private IdempotentClaim toClaim(Object current, String owner) {
+        if (current == null) {
+            return IdempotentClaim.acquired(owner);
+        }
+        String reply = current.toString();
+        int ttlEnd = reply.indexOf(':');
+        long ttl = Long.parseLong(reply.substring(0, ttlEnd));
+        String value = reply.substring(ttlEnd + 1);
+        int separator = value.indexOf(RESPONSE_SEPARATOR);
+        byte[] response = separator < 0 ? null : Base64.getDecoder().decode(value.substring(separator + 1));
+        return IdempotentClaim.rejected(stateOf(value), response,
+                ttl < 0 ? ChronoUnit.FOREVER.getDuration() : Duration.ofMillis(ttl));
+    }
+
+    private static IdempotentKeyStateEnum stateOf(Object value) {
+        if (value == null) {
+            return IdempotentKeyStateEnum.ABSENT;
+        }
+        return value.toString().charAt(0) == COMPLETED ? IdempotentKeyStateEnum.COMPLETED
+                : IdempotentKeyStateEnum.IN_PROGRESS;
+    }
+
+    private String nextOwner() {
+        return ownerPrefix + Long.toString(ownerSequence.incrementAndGet(), 36);
+    }
+
+    private static String ttlMillis(Duration ttl, Duration defaultTtl) {
+        return Long.toString(Math.max(1L, (ttl != null ? ttl : defaultTtl).toMillis()));
+    }
+}
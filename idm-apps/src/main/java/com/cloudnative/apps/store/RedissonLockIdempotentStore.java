@@ -0,0 +1,174 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IdempotentStore} claiming keys with Redisson {@link RLock}s.
+ *
+ * <p>
+ * A claim is a non-blocking {@code tryLock} with a lease, so no watchdog renews it; only
+ * a claim without lease time falls back to the watchdog. Every claim locks on behalf of
+ * its own owner id, drawn from a per-instance sequence, and never of the calling thread:
+ * {@link RLock} is reentrant per thread id, so a pooled or event loop thread would
+ * otherwise acquire again a key it already holds. Owner ids are negative and never
+ * collide with the ids of real threads locking through the same client.
+ * </p>
+ *
+ * <p>
+ * A completed key is not a held lock: the completion replaces the lock hash, in one
+ * script checking the owner still holds it, with a hash holding only a {@code completed}
+ * field, kept for the retention. {@code tryLock} refuses it like any lock held by another
+ * owner, the watchdog stops renewing it, and {@link #lookup} tells it apart. A rejected
+ * claim costs a second round trip to read the state of the key.
+ * </p>
+ */
+public class RedissonLockIdempotentStore implements IdempotentStore {
+    public static final String NAME = "redis";
+
+    public static final Duration DEFAULT_RETENTION = Duration.ofHours(1);
+
+    private static final String COMPLETED_FIELD = "completed";
+
+    /**
+     * Replaces the lock hash held by {@code ARGV[1]} with the completed marker.
+     */
+    private static final RedisScript COMPLETE = new RedisScript(
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return 0 end "
+                    + "redis.call('del', KEYS[1]) "
+                    + "redis.call('hset', KEYS[1], '" + COMPLETED_FIELD + "', ARGV[1]) "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "return 1");
+
+    /**
+     * State of the key, 0 absent, 1 locked or 2 completed, and its remaining TTL in millis.
+     */
+    private static final RedisScript STATE = new RedisScript(
+            "local ttl = redis.call('pttl', KEYS[1]) "
+                    + "if redis.call('hexists', KEYS[1], '" + COMPLETED_FIELD + "') == 1 then return {2, ttl} end "
+                    + "return {redis.call('exists', KEYS[1]), ttl}");
+
+    private final RedissonClient redissonClient;
+
+    private final Duration defaultRetention;
+
+    private final AtomicLong ownerSequence = new AtomicLong();
+
+    public RedissonLockIdempotentStore(RedissonClient redissonClient) {
+        this(redissonClient, DEFAULT_RETENTION);
+    }
+
+    public RedissonLockIdempotentStore(RedissonClient redissonClient, Duration defaultRetention) {
+        this.redissonClient = redissonClient;
+        this.defaultRetention = defaultRetention;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        long owner = nextOwner();
+        if (join(tryLock(key, leaseTime, owner))) {
+            return IdempotentClaim.acquired(Long.toString(owner));
+        }
+        return rejected(STATE.eval(redissonClient, RScript.ReturnType.MULTI, key));
+    }
+
+    @Override
+    public CompletionStage<IdempotentClaim> claimAsync(String key, Duration leaseTime) {
+        long owner = nextOwner();
+        return tryLock(key, leaseTime, owner).thenCompose(acquired -> {
+            if (acquired) {
+                return CompletableFuture.completedFuture(IdempotentClaim.acquired(Long.toString(owner)));
+            }
+            return STATE.evalAsync(redissonClient, RScript.ReturnType.MULTI, key)
+                    .thenApply(RedissonLockIdempotentStore::rejected);
+        });
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        // Ignored when the lease expired, the key is not ours to complete anymore
+        return RedisScript.isOne(COMPLETE.eval(redissonClient, RScript.ReturnType.INTEGER, key, lockField(owner),
+                Long.toString(Math.max(1L, (retention != null ? retention : defaultRetention).toMillis()))));
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        try {
+            join(redissonClient.getLock(key).unlockAsync(Long.parseLong(owner)));
+        } catch (IllegalMonitorStateException ex) {
+            // Not held anymore (expired lease, other owner, completed) is not an error
+        }
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        return stateOf(STATE.eval(redissonClient, RScript.ReturnType.MULTI, key));
+    }
+
+    private RFuture<Boolean> tryLock(String key, Duration leaseTime, long owner) {
+        RLock lock = redissonClient.getLock(key);
+        return leaseTime == null ? lock.tryLockAsync(owner)
+                : lock.tryLockAsync(0, leaseTime.toMillis(), TimeUnit.MILLISECONDS, owner);
+    }
+
+    private long nextOwner() {
+        return -ownerSequence.incrementAndGet();
+    }
+
+    /**
+     * Field of the lock hash held by an owner, as named by Redisson.
+     */
+    private String lockField(String owner) {
+        return redissonClient.getId() + ":" + owner;
+    }
+
+    private static IdempotentKeyStateEnum stateOf(Object reply) {
+        long value = reply == null ? 0 : ((Number) ((List<?>) reply).get(0)).longValue();
+        return value == 2 ? IdempotentKeyStateEnum.COMPLETED
+                : value == 1 ? IdempotentKeyStateEnum.IN_PROGRESS : IdempotentKeyStateEnum.ABSENT;
+    }
+
+    /**
+     * A key found absent right after its lock was refused was released in between, the
+     * claim was still refused while it was in progress.
+     */
+    private static IdempotentClaim rejected(Object reply) {
+        IdempotentKeyStateEnum current = stateOf(reply);
+        if (current != IdempotentKeyStateEnum.COMPLETED) {
+            return IdempotentClaim.rejected(IdempotentKeyStateEnum.IN_PROGRESS);
+        }
+        long ttl = ((Number) ((List<?>) reply).get(1)).longValue();
+        return IdempotentClaim.rejected(current, null,
+                ttl < 0 ? ChronoUnit.FOREVER.getDuration() : Duration.ofMillis(ttl));
+    }
+
+    private static <T> T join(RFuture<T> future) {
+        try {
+            return future.toCompletableFuture().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+}
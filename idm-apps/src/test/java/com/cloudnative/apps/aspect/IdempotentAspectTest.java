@@ -0,0 +1,232 @@
+package com.cloudnative.apps.aspect;
+
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.IdempotentAspect;
+import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlanResolver;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.exception.RepeatConsumptionException;
+import com.cloudnative.idm.factory.IdempotentExecuteHandlerRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IdempotentAspectTest {
+    private IdempotentExecuteHandler handler;
+    private IdempotentMethodPlanResolver planResolver;
+    private IdempotentAspect aspect;
+    private ProceedingJoinPoint joinPoint;
+
+    @BeforeEach
+    void setUp() {
+        handler = mock(IdempotentExecuteHandler.class);
+        planResolver = mock(IdempotentMethodPlanResolver.class);
+        aspect = new IdempotentAspect(planResolver);
+        joinPoint = mock(ProceedingJoinPoint.class);
+        when(handler.executeAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    private void givenPlan(String methodName, IdempotentMethodPlan.ReturnKind returnKind)
+            throws NoSuchMethodException {
+        Method method = TestService.class.getMethod(methodName);
+        IdempotentMethodPlan plan = IdempotentMethodPlan.builder()
+                .method(method)
+                .idempotent(method.getAnnotation(Idempotent.class))
+                .handler(handler)
+                .type(IdempotentTypeEnum.SPEL)
+                .returnKind(returnKind)
+                .build();
+        when(planResolver.resolve(joinPoint)).thenReturn(plan);
+    }
+
+    @Test
+    void testSyncMethodRunsPostProcessing() throws Throwable {
+        givenPlan("sync", IdempotentMethodPlan.ReturnKind.SYNC);
+        when(joinPoint.proceed()).thenReturn("done");
+
+        assertEquals("done", aspect.idempotentHandler(joinPoint));
+        verify(handler).execute(any());
+        verify(handler).postProcessing(any());
+        verify(handler, never()).exceptionProcessing(any());
+    }
+
+    @Test
+    void testMonoClaimsOnlyOnSubscribe() throws Throwable {
+        givenPlan("mono", IdempotentMethodPlan.ReturnKind.REACTIVE);
+        when(joinPoint.proceed()).thenReturn(Mono.just("done"));
+
+        Mono<?> result = (Mono<?>) aspect.idempotentHandler(joinPoint);
+        verify(handler, never()).executeAsync(any());
+        verify(handler, never()).postProcessing(any());
+
+        assertEquals("done", result.block());
+        verify(handler).executeAsync(any());
+        verify(handler).postProcessing(any());
+        verify(handler, never()).execute(any());
+    }
+
+    @Test
+    void testMonoErrorRunsExceptionProcessing() throws Throwable {
+        givenPlan("mono", IdempotentMethodPlan.ReturnKind.REACTIVE);
+        when(joinPoint.proceed()).thenReturn(Mono.error(new IllegalStateException("boom")));
+
+        Mono<?> result = (Mono<?>) aspect.idempotentHandler(joinPoint);
+        assertThrows(IllegalStateException.class, result::block);
+        verify(handler).exceptionProcessing(any());
+        verify(handler, never()).postProcessing(any());
+    }
+
+    @Test
+    void testFluxPostProcessingRunsOnComplete() throws Throwable {
+        givenPlan("flux", IdempotentMethodPlan.ReturnKind.REACTIVE);
+        when(joinPoint.proceed()).thenReturn(Flux.just(1, 2, 3));
+
+        Flux<?> result = (Flux<?>) aspect.idempotentHandler(joinPoint);
+        assertEquals(List.of(1, 2, 3), result.collectList().block());
+        verify(handler, times(1)).postProcessing(any());
+    }
+
+    @Test
+    void testFluxCancelLeavesClaimToItsLease() throws Throwable {
+        givenPlan("flux", IdempotentMethodPlan.ReturnKind.REACTIVE);
+        when(joinPoint.proceed()).thenReturn(Flux.just(1, 2, 3));
+
+        Flux<?> result = (Flux<?>) aspect.idempotentHandler(joinPoint);
+        assertEquals(1, result.take(1).collectList().block().size());
+        verify(handler, never()).exceptionProcessing(any());
+        verify(handler, never()).postProcessing(any());
+    }
+
+    @Test
+    void testReactiveCallerIsReadFromTheReactorContext() throws Throwable {
+        givenPlan("mono", IdempotentMethodPlan.ReturnKind.REACTIVE);
+        when(joinPoint.proceed()).thenReturn(Mono.just("done"));
+        ArgumentCaptor<IdempotentInvocationContext> context = ArgumentCaptor.forClass(IdempotentInvocationContext.class);
+
+        Mono<?> result = (Mono<?>) aspect.idempotentHandler(joinPoint);
+        result.contextWrite(ReactiveSecurityContextHolder.withAuthentication(
+                new TestingAuthenticationToken("alice", null, "ROLE_USER"))).block();
+        ((Mono<?>) aspect.idempotentHandler(joinPoint)).block();
+
+        verify(handler, times(2)).executeAsync(context.capture());
+        assertEquals("alice", context.getAllValues().get(0).getUserId());
+        assertEquals("anonymous", context.getAllValues().get(1).getUserId());
+    }
+
+    @Test
+    void testReactiveDuplicateAlreadyConsumedCompletesEmpty() throws Throwable {
+        givenPlan("mono", IdempotentMethodPlan.ReturnKind.REACTIVE);
+        when(handler.executeAsync(any()))
+                .thenReturn(CompletableFuture.failedFuture(new RepeatConsumptionException(false)));
+
+        Mono<?> result = (Mono<?>) aspect.idempotentHandler(joinPoint);
+        assertNull(result.block());
+        verify(joinPoint, never()).proceed();
+        verify(handler, never()).exceptionProcessing(any());
+    }
+
+    @Test
+    void testRequestBoundTypesAreRejectedForReactiveMethods() throws NoSuchMethodException {
+        IdempotentMethodPlanResolver resolver = new IdempotentMethodPlanResolver(
+                new IdempotentExecuteHandlerRegistry(List.of()));
+
+        assertThrows(IllegalStateException.class, () -> resolver.resolve(
+                TestService.class.getMethod("pay"), TestService.class));
+        assertThrows(IllegalStateException.class, () -> resolver.resolve(
+                TestService.class.getMethod("refund"), TestService.class));
+    }
+
+    @Test
+    void testFutureKeepsClaimUntilCompletion() throws Throwable {
+        givenPlan("future", IdempotentMethodPlan.ReturnKind.COMPLETION_STAGE);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        when(joinPoint.proceed()).thenReturn(pending);
+
+        CompletableFuture<?> result = (CompletableFuture<?>) aspect.idempotentHandler(joinPoint);
+        verify(handler).execute(any());
+        verify(handler, never()).postProcessing(any());
+
+        pending.complete("done");
+        assertEquals("done", result.join());
+        verify(handler).postProcessing(any());
+        verify(handler, never()).exceptionProcessing(any());
+    }
+
+    @Test
+    void testFutureFailureRunsExceptionProcessing() throws Throwable {
+        givenPlan("future", IdempotentMethodPlan.ReturnKind.COMPLETION_STAGE);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        when(joinPoint.proceed()).thenReturn(pending);
+
+        CompletableFuture<?> result = (CompletableFuture<?>) aspect.idempotentHandler(joinPoint);
+        pending.completeExceptionally(new IllegalStateException("boom"));
+
+        assertTrue(result.isCompletedExceptionally());
+        verify(handler).exceptionProcessing(any());
+        verify(handler, never()).postProcessing(any());
+    }
+
+    @Test
+    void testContextFinishesOnlyOnce() {
+        IdempotentInvocationContext context = new IdempotentInvocationContext(null, null);
+        context.claimed("key", null, null);
+
+        assertEquals(true, context.finish(IdempotentInvocationContext.State.COMPLETED));
+        assertEquals(false, context.finish(IdempotentInvocationContext.State.FAILED));
+        assertEquals(IdempotentInvocationContext.State.COMPLETED, context.getState());
+    }
+
+    static class TestService {
+        @Idempotent(type = IdempotentTypeEnum.SPEL, key = "'sync'")
+        public String sync() {
+            return "done";
+        }
+
+        @Idempotent(type = IdempotentTypeEnum.SPEL, key = "'mono'")
+        public Mono<String> mono() {
+            return Mono.just("done");
+        }
+
+        @Idempotent(type = IdempotentTypeEnum.SPEL, key = "'future'")
+        public CompletableFuture<String> future() {
+            return CompletableFuture.completedFuture("done");
+        }
+
+        @Idempotent(type = IdempotentTypeEnum.SPEL, key = "'flux'")
+        public Flux<Integer> flux() {
+            return Flux.just(1, 2, 3);
+        }
+
+        @Idempotent(type = IdempotentTypeEnum.PARAM)
+        public Mono<String> pay() {
+            return Mono.just("done");
+        }
+
+        @Idempotent(type = IdempotentTypeEnum.TOKEN)
+        public Mono<String> refund() {
+            return Mono.just("done");
+        }
+    }
+}
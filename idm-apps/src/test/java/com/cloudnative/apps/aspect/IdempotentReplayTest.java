@@ -0,0 +1,149 @@
+package com.cloudnative.apps.aspect;
+
+import com.cloudnative.apps.http.IdempotentSpELExecuteHandler;
+import com.cloudnative.apps.replay.JsonbResponseCodec;
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.IdempotentAspect;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlanResolver;
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.exception.IdempotentInProgressException;
+import com.cloudnative.idm.factory.IdempotentExecuteHandlerRegistry;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IdempotentReplayTest {
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final OrderService service = new OrderService();
+    private final InMemoryIdempotentStore store = spy(new InMemoryIdempotentStore());
+    private IdempotentSpELExecuteHandler handler;
+    private IdempotentAspect aspect;
+    private IdempotentMethodPlanResolver planResolver;
+
+    @BeforeEach
+    void setUp() {
+        handler = new IdempotentSpELExecuteHandler(store);
+        handler.setResponseCodec(new JsonbResponseCodec());
+        planResolver = new IdempotentMethodPlanResolver(new IdempotentExecuteHandlerRegistry(List.of(handler)));
+        aspect = new IdempotentAspect(planResolver);
+    }
+
+    @Test
+    void testDuplicateGetsTheOriginalResponse() throws Throwable {
+        assertEquals("order-1-created", aspect.idempotentHandler(joinPoint("create", "1")));
+        assertEquals("order-1-created", aspect.idempotentHandler(joinPoint("create", "1")));
+        assertEquals("order-2-created", aspect.idempotentHandler(joinPoint("create", "2")));
+
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    void testDuplicateOfAsyncCallGetsACompletedStage() throws Throwable {
+        Object first = aspect.idempotentHandler(joinPoint("createAsync", "1"));
+        assertEquals(7, ((CompletionStage<?>) first).toCompletableFuture().join());
+
+        Object replayed = aspect.idempotentHandler(joinPoint("createAsync", "1"));
+        assertEquals(7, ((CompletionStage<?>) replayed).toCompletableFuture().join());
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    void testDuplicateWhileInProgressFailsFast() throws Throwable {
+        ProceedingJoinPoint original = joinPoint("create", "1");
+        when(original.proceed()).thenAnswer(invocation -> {
+            assertThrows(IdempotentInProgressException.class,
+                    () -> aspect.idempotentHandler(joinPoint("create", "1")));
+            return service.create("1");
+        });
+
+        assertEquals("order-1-created", aspect.idempotentHandler(original));
+    }
+
+    @Test
+    void testUnencodableResponseCompletesWithoutIt() throws Throwable {
+        handler.setResponseCodec(new JsonbResponseCodec() {
+            @Override
+            public byte[] encode(Object response) {
+                throw new IllegalArgumentException("not serializable");
+            }
+        });
+
+        assertEquals("order-1-created", aspect.idempotentHandler(joinPoint("create", "1")));
+
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("idempotent:spel:1:user:anonymous"));
+        assertThrows(RuntimeException.class, () -> aspect.idempotentHandler(joinPoint("create", "1")));
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    void testFailingCompletionDoesNotFailTheCall() throws Throwable {
+        doThrow(new IllegalStateException("store down")).when(store)
+                .markCompleted(anyString(), anyString(), any(), any());
+
+        assertEquals("order-1-created", aspect.idempotentHandler(joinPoint("create", "1")));
+        Object stage = aspect.idempotentHandler(joinPoint("createAsync", "1"));
+        assertEquals(7, ((CompletionStage<?>) stage).toCompletableFuture().join());
+
+        // Left to its lease, not released for a duplicate to run again
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("idempotent:spel:1:user:anonymous"));
+        verify(store, never()).release(anyString(), anyString());
+    }
+
+    @Test
+    void testReplayIsRejectedForReactiveMethods() throws NoSuchMethodException {
+        assertThrows(IllegalStateException.class, () -> planResolver.resolve(
+                ReactiveService.class.getMethod("create", String.class), ReactiveService.class));
+    }
+
+    private ProceedingJoinPoint joinPoint(String methodName, String orderId) throws Throwable {
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        MethodSignature signature = mock(MethodSignature.class);
+        when(signature.getMethod()).thenReturn(OrderService.class.getMethod(methodName, String.class));
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(joinPoint.getTarget()).thenReturn(service);
+        when(joinPoint.getArgs()).thenReturn(new Object[]{orderId});
+        when(joinPoint.proceed()).thenAnswer(invocation -> methodName.equals("create")
+                ? service.create(orderId) : service.createAsync(orderId));
+        return joinPoint;
+    }
+
+    class OrderService {
+        @Idempotent(type = IdempotentTypeEnum.SPEL, key = "#orderId", replay = true)
+        public String create(String orderId) {
+            invocations.incrementAndGet();
+            return "order-" + orderId + "-created";
+        }
+
+        @Idempotent(type = IdempotentTypeEnum.SPEL, key = "'async:' + #orderId", replay = true)
+        public CompletableFuture<Integer> createAsync(String orderId) {
+            invocations.incrementAndGet();
+            return CompletableFuture.completedFuture(7);
+        }
+    }
+
+    static class ReactiveService {
+        @Idempotent(type = IdempotentTypeEnum.SPEL, key = "#orderId", replay = true)
+        public reactor.core.publisher.Mono<String> create(String orderId) {
+            return reactor.core.publisher.Mono.just(orderId);
+        }
+    }
+}
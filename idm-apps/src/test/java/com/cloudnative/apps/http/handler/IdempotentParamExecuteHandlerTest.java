@@ -3,15 +3,22 @@ package com.cloudnative.apps.http.handler;
 import cn.hutool.crypto.digest.DigestUtil;
 import com.alibaba.fastjson2.JSON;
 import com.cloudnative.apps.http.IdempotentParamExecuteHandler;
+import com.cloudnative.apps.store.RedissonLockIdempotentStore;
 import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
 import com.cloudnative.idm.aspect.wrapper.IdempotentParamWrapper;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.enums.IdempotentFingerprintEnum;
 import com.cloudnative.idm.enums.IdempotentTypeEnum;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.redisson.api.RLock;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.misc.CompletableFutureWrapper;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -25,6 +32,7 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -36,7 +44,8 @@ public class IdempotentParamExecuteHandlerTest {
     @BeforeEach
     void setUp() {
         redissonClient = mock(RedissonClient.class);
-        handler = new IdempotentParamExecuteHandler(redissonClient);
+        when(redissonClient.getScript(StringCodec.INSTANCE)).thenReturn(mock(RScript.class));
+        handler = new IdempotentParamExecuteHandler(new RedissonLockIdempotentStore(redissonClient));
 
         // Mock current user
         TestingAuthenticationToken auth = new TestingAuthenticationToken("user123", null);
@@ -55,7 +64,9 @@ public class IdempotentParamExecuteHandlerTest {
         Object[] args = new Object[]{"foo", 123};
         when(joinPoint.getArgs()).thenReturn(args);
 
-        IdempotentParamWrapper wrapper = (IdempotentParamWrapper) handler.buildWrapper(joinPoint);
+        IdempotentParamWrapper wrapper = (IdempotentParamWrapper) handler.buildWrapper(
+                new IdempotentInvocationContext(IdempotentMethodPlan.builder()
+                        .fingerprint(IdempotentFingerprintEnum.MD5).build(), joinPoint));
 
         String expectedMd5 = DigestUtil.md5Hex(JSON.toJSONBytes(args));
         String expectedKey = "idempotent:path:/test/path:currentUserId:anonymous:md5:" + expectedMd5;
@@ -67,7 +78,7 @@ public class IdempotentParamExecuteHandlerTest {
     @Test
     void testHandler_AcquiresLockSuccessfully() {
         RLock lock = mock(RLock.class);
-        when(lock.tryLock()).thenReturn(true);
+        when(lock.tryLockAsync(anyLong())).thenReturn(new CompletableFutureWrapper<>(true));
         when(redissonClient.getLock(anyString())).thenReturn(lock);
 
         Idempotent annotation = mock(Idempotent.class);
@@ -76,6 +87,7 @@ public class IdempotentParamExecuteHandlerTest {
         IdempotentParamWrapper wrapper = IdempotentParamWrapper.builder()
                 .lockKey("test-lock-key")
                 .idempotent(annotation)
+                .context(new IdempotentInvocationContext(null, null))
                 .build();
 
         assertDoesNotThrow(() -> handler.handler(wrapper));
@@ -84,7 +96,7 @@ public class IdempotentParamExecuteHandlerTest {
     @Test
     void testHandler_ThrowsExceptionWhenLockFails() {
         RLock lock = mock(RLock.class);
-        when(lock.tryLock()).thenReturn(false);
+        when(lock.tryLockAsync(anyLong())).thenReturn(new CompletableFutureWrapper<>(false));
         when(redissonClient.getLock(anyString())).thenReturn(lock);
 
         Idempotent annotation = mock(Idempotent.class);
@@ -109,11 +121,50 @@ public class IdempotentParamExecuteHandlerTest {
         when(joinPoint.getSignature()).thenReturn(signature);
         when(joinPoint.getArgs()).thenReturn(new Object[]{"hello", 42});
 
-        IdempotentParamWrapper wrapper = (IdempotentParamWrapper) handler.buildWrapper(joinPoint);
+        Idempotent annotation = method.getAnnotation(Idempotent.class);
+        IdempotentMethodPlan plan = IdempotentMethodPlan.builder()
+                .method(method)
+                .idempotent(annotation)
+                .type(annotation.type())
+                .fingerprint(annotation.fingerprint())
+                .build();
+
+        IdempotentParamWrapper wrapper = (IdempotentParamWrapper) handler.buildWrapper(
+                new IdempotentInvocationContext(plan, joinPoint));
         assertTrue(wrapper.getLockKey().contains("/test/path"));
         assertTrue(wrapper.getLockKey().contains("anonymous"));
+        assertTrue(wrapper.getLockKey().contains(":m3:"));
     }
 
+    @Test
+    void testBuildWrapper_DefaultFingerprintIsStableAcrossCalls() {
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getArgs()).thenReturn(new Object[]{"foo", 123});
+        IdempotentMethodPlan plan = IdempotentMethodPlan.builder()
+                .fingerprint(IdempotentFingerprintEnum.MURMUR3_128).build();
+
+        String first = handler.buildWrapper(new IdempotentInvocationContext(plan, joinPoint)).getLockKey();
+        String second = handler.buildWrapper(new IdempotentInvocationContext(plan, joinPoint)).getLockKey();
+
+        assertEquals(first, second);
+        assertTrue(first.matches("idempotent:path:/test/path:currentUserId:anonymous:m3:[0-9a-f]{32}"));
+    }
+
+    @Test
+    void testBuildWrapper_SkipsIgnoredArguments() {
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        IdempotentMethodPlan plan = IdempotentMethodPlan.builder()
+                .fingerprint(IdempotentFingerprintEnum.MURMUR3_128)
+                .keyArgumentIndexes(new int[]{0})
+                .build();
+
+        when(joinPoint.getArgs()).thenReturn(new Object[]{"foo", "trace-1"});
+        String first = handler.buildWrapper(new IdempotentInvocationContext(plan, joinPoint)).getLockKey();
+        when(joinPoint.getArgs()).thenReturn(new Object[]{"foo", "trace-2"});
+        String retry = handler.buildWrapper(new IdempotentInvocationContext(plan, joinPoint)).getLockKey();
+
+        assertEquals(first, retry);
+    }
 
     /**
      * TestService.process(...)   <-- method is annotated
@@ -1,16 +1,22 @@
 package com.cloudnative.apps.http.handler;
 
 import com.cloudnative.apps.http.IdempotentSpELExecuteHandler;
+import com.cloudnative.apps.store.RedissonLockIdempotentStore;
 import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
 import com.cloudnative.idm.aspect.wrapper.AbstractIdempotentWrapper;
-import com.cloudnative.idm.context.IdempotentContext;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
 import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.key.SpelKeyExtractor;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.redisson.api.RLock;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.misc.CompletableFutureWrapper;
 
 import java.lang.reflect.Method;
 
@@ -19,6 +25,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -29,8 +36,8 @@ public class IdempotentSpELExecuteHandlerTest {
     @BeforeEach
     void setUp() {
         redissonClient = mock(RedissonClient.class);
-        handler = new IdempotentSpELExecuteHandler(redissonClient);
-        IdempotentContext.clean();
+        when(redissonClient.getScript(StringCodec.INSTANCE)).thenReturn(mock(RScript.class));
+        handler = new IdempotentSpELExecuteHandler(new RedissonLockIdempotentStore(redissonClient));
     }
 
     @Test
@@ -44,7 +51,18 @@ public class IdempotentSpELExecuteHandlerTest {
         when(pjp.getSignature()).thenReturn(signature);
         when(pjp.getArgs()).thenReturn(new Object []{"testUser"});
 
-        AbstractIdempotentWrapper wrapper = handler.buildWrapper(pjp);
+        Idempotent annotation = method.getAnnotation(Idempotent.class);
+        IdempotentMethodPlan plan = IdempotentMethodPlan.builder()
+                .method(method)
+                .idempotent(annotation)
+                .type(annotation.type())
+                .keyTemplate(annotation.key())
+                .keyExtractor(SpelKeyExtractor.of(annotation.key(), new String[]{"name"}))
+                .parameterNames(new String[]{"name"})
+                .build();
+
+        AbstractIdempotentWrapper wrapper = handler.buildWrapper(
+                new IdempotentInvocationContext(plan, pjp));
         assertNotNull(wrapper);
         assertTrue(wrapper.getLockKey().contains("testUser"));
         assertTrue(wrapper.getLockKey().contains("user:"));
@@ -54,26 +72,32 @@ public class IdempotentSpELExecuteHandlerTest {
     void testHandlerSuccessLockAcquired() {
         AbstractIdempotentWrapper wrapper = mock(AbstractIdempotentWrapper.class);
         when(wrapper.getLockKey()).thenReturn("lock:test:key");
+        IdempotentInvocationContext context = new IdempotentInvocationContext(null, null);
+        when(wrapper.getContext()).thenReturn(context);
         when(wrapper.getIdempotent()).thenThrow(new RuntimeException("Duplicate"));
 
         RLock lock = mock(RLock.class);
         when(redissonClient.getLock("lock:test:key")).thenReturn(lock);
-        when(lock.tryLock()).thenReturn(true);
+        when(lock.tryLockAsync(anyLong())).thenReturn(new CompletableFutureWrapper<>(true));
 
         assertDoesNotThrow(() -> handler.handler(wrapper));
-        assertEquals(lock, IdempotentContext.getKey("lock:http:spel"));
+        assertEquals(handler.getDefaultStore(), context.getStore());
+        assertTrue(Long.parseLong(context.getOwner()) < 0);
+        assertEquals(IdempotentInvocationContext.State.CLAIMED, context.getState());
     }
 
     @Test
     void testHandlerFailsWhenLockNotAcquired() {
         AbstractIdempotentWrapper wrapper = mock(AbstractIdempotentWrapper.class);
         when(wrapper.getLockKey()).thenReturn("lock:fail:key");
+        IdempotentInvocationContext context = new IdempotentInvocationContext(null, null);
+        when(wrapper.getContext()).thenReturn(context);
         when(wrapper.getIdempotent()).thenThrow(new RuntimeException("Already running"));
 
 
         RLock lock = mock(RLock.class);
         when(redissonClient.getLock("lock:fail:key")).thenReturn(lock);
-        when(lock.tryLock()).thenReturn(false);
+        when(lock.tryLockAsync(anyLong())).thenReturn(new CompletableFutureWrapper<>(false));
 
         RuntimeException ex = assertThrows(RuntimeException.class, () -> handler.handler(wrapper));
         assertEquals("Already running", ex.getMessage());
@@ -1,24 +1,39 @@
 package com.cloudnative.apps.http.handler;
 
 import com.cloudnative.apps.http.IdempotentTokenExecuteHandler;
+import com.cloudnative.apps.store.RedissonLockIdempotentStore;
 import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
 import com.cloudnative.idm.aspect.wrapper.AbstractIdempotentWrapper;
-import com.cloudnative.idm.context.IdempotentContext;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
 import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.key.IdempotentTokenSigner;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.redisson.api.RLock;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.misc.CompletableFutureWrapper;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class IdempotentTokenExecuteHandlerTest {
@@ -28,8 +43,8 @@ public class IdempotentTokenExecuteHandlerTest {
     @BeforeEach
     void setUp() {
         redissonClient = mock(RedissonClient.class);
-        handler = new IdempotentTokenExecuteHandler(redissonClient);
-        IdempotentContext.clean();
+        when(redissonClient.getScript(StringCodec.INSTANCE)).thenReturn(mock(RScript.class));
+        handler = new IdempotentTokenExecuteHandler(new RedissonLockIdempotentStore(redissonClient));
 
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader("Idempotent-Token", "token-xyz-123");
@@ -46,7 +61,15 @@ public class IdempotentTokenExecuteHandlerTest {
         when(pjp.getSignature()).thenReturn(signature);
         when(pjp.getArgs()).thenReturn(new Object[]{"payload"});
 
-        AbstractIdempotentWrapper wrapper = handler.buildWrapper(pjp);
+        Idempotent annotation = method.getAnnotation(Idempotent.class);
+        IdempotentMethodPlan plan = IdempotentMethodPlan.builder()
+                .method(method)
+                .idempotent(annotation)
+                .type(annotation.type())
+                .build();
+
+        AbstractIdempotentWrapper wrapper = handler.buildWrapper(
+                new IdempotentInvocationContext(plan, pjp));
         assertNotNull(wrapper);
         assertEquals("idempotent:token:null", wrapper.getLockKey());
     }
@@ -55,30 +78,139 @@ public class IdempotentTokenExecuteHandlerTest {
     void testHandlerSuccessLockAcquired() {
         AbstractIdempotentWrapper wrapper = mock(AbstractIdempotentWrapper.class);
         when(wrapper.getLockKey()).thenReturn("idempotent:token:token-xyz-123");
+        IdempotentInvocationContext context = new IdempotentInvocationContext(null, null);
+        when(wrapper.getContext()).thenReturn(context);
         when(wrapper.getIdempotent()).thenThrow(new RuntimeException("Duplicate token"));
 
         RLock lock = mock(RLock.class);
         when(redissonClient.getLock("idempotent:token:token-xyz-123")).thenReturn(lock);
-        when(lock.tryLock()).thenReturn(true);
+        when(lock.tryLockAsync(anyLong())).thenReturn(new CompletableFutureWrapper<>(true));
 
         assertDoesNotThrow(() -> handler.handler(wrapper));
-        assertEquals(lock, IdempotentContext.getKey("lock:http:token"));
+        assertEquals(handler.getDefaultStore(), context.getStore());
+        assertTrue(Long.parseLong(context.getOwner()) < 0);
+        assertEquals(IdempotentInvocationContext.State.CLAIMED, context.getState());
     }
 
     @Test
     void testHandlerFailsWhenLockNotAcquired() {
         AbstractIdempotentWrapper wrapper = mock(AbstractIdempotentWrapper.class);
         when(wrapper.getLockKey()).thenReturn("idempotent:token:token-xyz-123");
+        IdempotentInvocationContext context = new IdempotentInvocationContext(null, null);
+        when(wrapper.getContext()).thenReturn(context);
         when(wrapper.getIdempotent()).thenThrow(new RuntimeException("Already used"));
 
         RLock lock = mock(RLock.class);
         when(redissonClient.getLock("idempotent:token:token-xyz-123")).thenReturn(lock);
-        when(lock.tryLock()).thenReturn(false);
+        when(lock.tryLockAsync(anyLong())).thenReturn(new CompletableFutureWrapper<>(false));
 
         RuntimeException ex = assertThrows(RuntimeException.class, () -> handler.handler(wrapper));
         assertEquals("Already used", ex.getMessage());
     }
 
+    @Test
+    void testSuccessKeepsCompletedMarkerAndFailureReleases() {
+        InMemoryIdempotentStore store = new InMemoryIdempotentStore();
+        IdempotentTokenExecuteHandler memoryHandler = new IdempotentTokenExecuteHandler(store);
+
+        IdempotentInvocationContext succeeded = claim(memoryHandler, "k1", Duration.ofHours(1));
+        memoryHandler.postProcessing(succeeded);
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("k1"));
+
+        IdempotentInvocationContext failed = claim(memoryHandler, "k2", Duration.ofHours(1));
+        memoryHandler.exceptionProcessing(failed);
+        assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("k2"));
+
+        IdempotentInvocationContext released = claim(memoryHandler, "k3", Duration.ZERO);
+        memoryHandler.postProcessing(released);
+        assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("k3"));
+    }
+
+    @Test
+    void testRejectedDuplicateDoesNotReleaseTheClaim() {
+        InMemoryIdempotentStore store = new InMemoryIdempotentStore();
+        IdempotentTokenExecuteHandler memoryHandler = new IdempotentTokenExecuteHandler(store);
+        claim(memoryHandler, "k1", Duration.ofHours(1));
+
+        IdempotentInvocationContext duplicate = new IdempotentInvocationContext(plan(Duration.ofHours(1)), null);
+        AbstractIdempotentWrapper wrapper = wrapper("k1", duplicate);
+        assertThrows(RuntimeException.class, () -> memoryHandler.handler(wrapper));
+        memoryHandler.exceptionProcessing(duplicate);
+
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("k1"));
+    }
+
+    @Test
+    void testClaimUsesPlanLeaseWithoutWatchdog() throws InterruptedException {
+        RLock lock = mock(RLock.class);
+        when(redissonClient.getLock("k1")).thenReturn(lock);
+        when(lock.tryLockAsync(eq(0L), eq(30_000L), eq(TimeUnit.MILLISECONDS), anyLong()))
+                .thenReturn(new CompletableFutureWrapper<>(true));
+
+        IdempotentInvocationContext context = new IdempotentInvocationContext(plan(Duration.ofHours(1)), null);
+        handler.handler(wrapper("k1", context));
+
+        verify(lock).tryLockAsync(eq(0L), eq(30_000L), eq(TimeUnit.MILLISECONDS), anyLong());
+        verify(lock, never()).tryLockAsync(anyLong());
+        assertEquals(IdempotentInvocationContext.State.CLAIMED, context.getState());
+    }
+
+    @Test
+    void testSignedTokensConsumedOnceAndForgedOnesRefused() throws NoSuchMethodException {
+        IdempotentTokenSigner signer = new IdempotentTokenSigner(
+                "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8), Duration.ofMinutes(10));
+        InMemoryIdempotentStore store = new InMemoryIdempotentStore();
+        IdempotentTokenExecuteHandler signedHandler = new IdempotentTokenExecuteHandler(store, signer);
+        String token = signedHandler.issueToken();
+
+        Method method = TestService.class.getMethod("submitWithToken", String.class);
+        IdempotentMethodPlan plan = IdempotentMethodPlan.builder()
+                .method(method)
+                .idempotent(method.getAnnotation(Idempotent.class))
+                .type(IdempotentTypeEnum.TOKEN)
+                .keepAfterSuccess(Duration.ofHours(1))
+                .build();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(IdempotentTokenExecuteHandler.TOKEN_HEADER, token);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        AbstractIdempotentWrapper wrapper = signedHandler.buildWrapper(new IdempotentInvocationContext(plan, null));
+        assertEquals("idempotent:token:" + token, wrapper.getLockKey());
+
+        IdempotentInvocationContext first = claim(signedHandler, wrapper.getLockKey(), Duration.ofHours(1));
+        signedHandler.postProcessing(first);
+        assertThrows(RuntimeException.class, () -> claim(signedHandler, wrapper.getLockKey(), Duration.ofHours(1)));
+
+        MockHttpServletRequest forged = new MockHttpServletRequest();
+        forged.addHeader(IdempotentTokenExecuteHandler.TOKEN_HEADER, "token-xyz-123");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(forged));
+        assertThrows(IllegalArgumentException.class,
+                () -> signedHandler.buildWrapper(new IdempotentInvocationContext(plan, null)));
+        assertThrows(IllegalStateException.class, () -> handler.issueToken());
+    }
+
+    private IdempotentInvocationContext claim(IdempotentTokenExecuteHandler memoryHandler, String key,
+                                              Duration keepAfterSuccess) {
+        IdempotentInvocationContext context = new IdempotentInvocationContext(plan(keepAfterSuccess), null);
+        memoryHandler.handler(wrapper(key, context));
+        return context;
+    }
+
+    private IdempotentMethodPlan plan(Duration keepAfterSuccess) {
+        return IdempotentMethodPlan.builder()
+                .leaseTime(Duration.ofSeconds(30))
+                .keepAfterSuccess(keepAfterSuccess)
+                .build();
+    }
+
+    private AbstractIdempotentWrapper wrapper(String key, IdempotentInvocationContext context) {
+        AbstractIdempotentWrapper wrapper = mock(AbstractIdempotentWrapper.class);
+        when(wrapper.getLockKey()).thenReturn(key);
+        when(wrapper.getContext()).thenReturn(context);
+        when(wrapper.getPlan()).thenReturn(context.getPlan());
+        when(wrapper.getIdempotent()).thenReturn(TestService.annotation());
+        return wrapper;
+    }
+
     // Simulated service with method annotation
     static class TestService {
         @Idempotent(
@@ -88,5 +220,13 @@ public class IdempotentTokenExecuteHandlerTest {
         public void submitWithToken(String payload) {
             // mocked logic
         }
+
+        static Idempotent annotation() {
+            try {
+                return TestService.class.getMethod("submitWithToken", String.class).getAnnotation(Idempotent.class);
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package com.cloudnative.apps.key;
+
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.key.GeneratedKeyExtractors;
+import com.cloudnative.idm.key.IdempotentKeyExtractor;
+import com.cloudnative.idm.key.SpelKeyExtractor;
+import com.cloudnative.idm.processor.IdempotentKeyExtractorProcessor;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GeneratedKeyExtractorTest {
+
+    @Test
+    void testGeneratedExtractorsMatchSpel() throws NoSuchMethodException {
+        Order order = new Order("ORD1", new Customer("C1"), 3, Status.PAID);
+        assertSameAsSpel(method("composite"), new Object[]{order, 7});
+        assertSameAsSpel(method("nested"), new Object[]{order});
+        assertSameAsSpel(method("nested"), new Object[]{new Order("ORD2", null, 1, Status.NEW)});
+        assertSameAsSpel(method("nested"), new Object[]{null});
+        assertSameAsSpel(method("composite"), new Object[]{new Order(null, null, 0, null), 0});
+    }
+
+    @Test
+    void testGeneratedExtractorRejectsNullTargetLikeSpel() throws NoSuchMethodException {
+        IdempotentKeyExtractor extractor = generated(method("composite"));
+        assertThrows(IllegalStateException.class, () -> extractor.extract(new Object[]{null, 1}));
+    }
+
+    @Test
+    void testStaleTemplateIsIgnored() throws NoSuchMethodException {
+        assertNull(GeneratedKeyExtractors.find(method("composite"), "#order.orderId"));
+    }
+
+    @Test
+    void testUnsupportedExpressionFailsCompilation() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        String source = "package sample;\n"
+                + "import com.cloudnative.idm.annotation.Idempotent;\n"
+                + "import com.cloudnative.idm.enums.IdempotentTypeEnum;\n"
+                + "public class Sample {\n"
+                + "    @Idempotent(type = IdempotentTypeEnum.SPEL, key = \"#name.toUpperCase()\")\n"
+                + "    public void handle(String name) {\n"
+                + "    }\n"
+                + "}\n";
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///sample/Sample.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        Path output = Files.createTempDirectory("idm-processor");
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                List.of("-proc:only", "-d", output.toString(),
+                        "-classpath", System.getProperty("java.class.path")),
+                null, List.of(file));
+        task.setProcessors(List.of(new IdempotentKeyExtractorProcessor()));
+
+        assertFalse(task.call());
+        assertTrue(diagnostics.getDiagnostics().stream().anyMatch(diagnostic ->
+                diagnostic.getKind() == Diagnostic.Kind.ERROR
+                        && diagnostic.getMessage(null).contains("Unsupported @Idempotent key")));
+    }
+
+    private void assertSameAsSpel(Method method, Object[] args) {
+        Idempotent idempotent = method.getAnnotation(Idempotent.class);
+        SpelKeyExtractor spel = SpelKeyExtractor.of(idempotent.key(),
+                new String[]{"order", "attempt"});
+        assertEquals(spel.extract(args), generated(method).extract(args));
+    }
+
+    private IdempotentKeyExtractor generated(Method method) {
+        IdempotentKeyExtractor extractor = GeneratedKeyExtractors.find(method,
+                method.getAnnotation(Idempotent.class).key());
+        assertNotNull(extractor);
+        return extractor;
+    }
+
+    private Method method(String name) throws NoSuchMethodException {
+        for (Method method : KeyedService.class.getDeclaredMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    static class KeyedService {
+        @Idempotent(type = IdempotentTypeEnum.SPEL,
+                key = "#order.orderId + ':' + #order.quantity + ':' + #order.status + ':' + #attempt")
+        public void composite(Order order, int attempt) {
+        }
+
+        @Idempotent(type = IdempotentTypeEnum.SPEL, key = "'order:' + #order?.customer?.customerId")
+        public void nested(Order order) {
+        }
+    }
+
+    public enum Status {
+        NEW, PAID
+    }
+
+    public static class Order {
+        private final String orderId;
+        private final Customer customer;
+        private final int quantity;
+        private final Status status;
+
+        public Order(String orderId, Customer customer, int quantity, Status status) {
+            this.orderId = orderId;
+            this.customer = customer;
+            this.quantity = quantity;
+            this.status = status;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public Customer getCustomer() {
+            return customer;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+    }
+
+    public static class Customer {
+        public final String customerId;
+
+        public Customer(String customerId) {
+            this.customerId = customerId;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.cloudnative.apps.key;
+
+import com.cloudnative.idm.enums.IdempotentKeyFormatEnum;
+import com.cloudnative.idm.key.IdempotentKeyTemplate;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdempotentKeyTemplateTest {
+
+    @Test
+    void testReadableKeyMatchesPattern() {
+        IdempotentKeyTemplate template = IdempotentKeyTemplate.compile(
+                "idempotent:path:{}:currentUserId:{}:{}:{}", IdempotentKeyFormatEnum.READABLE);
+
+        String key = template.newKey()
+                .add("/orders")
+                .add("u1")
+                .add("m3")
+                .add(new byte[]{0x0f, (byte) 0xa0})
+                .build();
+
+        assertEquals("idempotent:path:/orders:currentUserId:u1:m3:0fa0", key);
+        assertEquals("idempotent:token:null", IdempotentKeyTemplate.compile("idempotent:token:{}", null)
+                .render((String) null));
+    }
+
+    @Test
+    void testCompactKeyHasFixedSize() {
+        IdempotentKeyTemplate template = IdempotentKeyTemplate.compile("idempotent:spel:{}:user:{}",
+                IdempotentKeyFormatEnum.COMPACT);
+
+        String key = template.render("ORD-" + "x".repeat(200), "user-42");
+
+        assertEquals(29, key.length());
+        assertTrue(key.matches("[A-Za-z0-9_-]{6}:[A-Za-z0-9_-]{22}"));
+        assertEquals(key, template.render("ORD-" + "x".repeat(200), "user-42"));
+    }
+
+    @Test
+    void testCompactKeySeparatesPartsAndNamespaces() {
+        IdempotentKeyTemplate first = IdempotentKeyTemplate.compile("a:{}:{}", IdempotentKeyFormatEnum.COMPACT);
+        IdempotentKeyTemplate second = IdempotentKeyTemplate.compile("b:{}:{}", IdempotentKeyFormatEnum.COMPACT);
+
+        assertNotEquals(first.render("ab", "c"), first.render("a", "bc"));
+        assertNotEquals(first.render("a", "b").substring(0, 6), second.render("a", "b").substring(0, 6));
+    }
+
+    @Test
+    void testMissingPartsAreRejected() {
+        IdempotentKeyTemplate template = IdempotentKeyTemplate.compile("x:{}:{}", null);
+        assertThrows(IllegalStateException.class, () -> template.render("only-one"));
+        assertThrows(IllegalStateException.class, () -> template.render("a", "b", "c"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.cloudnative.apps.key;
+
+import com.cloudnative.idm.key.IdempotentTokenSigner;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdempotentTokenSignerTest {
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testIssuedTokensVerifyOnEveryNode() {
+        IdempotentTokenSigner issuer = new IdempotentTokenSigner(SECRET, Duration.ofMinutes(5));
+        IdempotentTokenSigner other = new IdempotentTokenSigner(SECRET, Duration.ofMinutes(5));
+        List<String> tokens = issuer.issue(100);
+        assertEquals(100, new HashSet<>(tokens).size());
+        long now = System.currentTimeMillis();
+        for (String token : tokens) {
+            assertEquals(54, token.length());
+            long expiresAt = other.expiresAt(token);
+            assertTrue(expiresAt > now && expiresAt <= now + Duration.ofMinutes(5).toMillis());
+        }
+    }
+
+    @Test
+    void testForgedMalformedAndExpiredTokensRefused() {
+        Instant issuedAt = Instant.parse("2024-01-01T00:00:00Z");
+        IdempotentTokenSigner signer = new IdempotentTokenSigner(SECRET, Duration.ofMinutes(1),
+                Clock.fixed(issuedAt, ZoneOffset.UTC));
+        String token = signer.issue();
+        char last = token.charAt(10);
+        String forged = token.substring(0, 10) + (last == 'A' ? 'B' : 'A') + token.substring(11);
+        assertEquals(0, signer.expiresAt(forged));
+        assertEquals(0, signer.expiresAt("not-a-token"));
+        assertEquals(0, signer.expiresAt(null));
+        byte[] otherSecret = "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.UTF_8);
+        assertEquals(0, new IdempotentTokenSigner(otherSecret, Duration.ofMinutes(1)).expiresAt(token));
+
+        long expiresAt = issuedAt.plus(Duration.ofMinutes(1)).toEpochMilli();
+        assertEquals(expiresAt, signer.expiresAt(token));
+        assertEquals(expiresAt, verifierAt(issuedAt.plusSeconds(59)).expiresAt(token));
+        assertEquals(0, verifierAt(issuedAt.plusSeconds(60)).expiresAt(token));
+    }
+
+    private static IdempotentTokenSigner verifierAt(Instant now) {
+        return new IdempotentTokenSigner(SECRET, Duration.ofMinutes(1), Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    void testInvalidArgumentsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new IdempotentTokenSigner(new byte[8], Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> new IdempotentTokenSigner(SECRET, Duration.ZERO));
+        IdempotentTokenSigner signer = new IdempotentTokenSigner(SECRET, Duration.ofMinutes(1));
+        assertThrows(IllegalArgumentException.class, () -> signer.issue(IdempotentTokenSigner.MAX_BATCH + 1));
+    }
+}
@@ -0,0 +1,176 @@
+package com.cloudnative.apps.key;
+
+import com.cloudnative.idm.annotation.IdempotentIgnore;
+import com.cloudnative.idm.annotation.IdempotentKeyField;
+import com.cloudnative.idm.key.Murmur3Fingerprinter;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Murmur3FingerprinterTest {
+    private final Murmur3Fingerprinter fingerprinter = new Murmur3Fingerprinter();
+
+    @Test
+    void testMapOrderDoesNotChangeFingerprint() {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("a", 1);
+        first.put("b", List.of("x", "y"));
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("b", List.of("x", "y"));
+        second.put("a", 1);
+
+        assertArrayEquals(fingerprinter.fingerprint(new Object[]{first}),
+                fingerprinter.fingerprint(new Object[]{second}));
+    }
+
+    @Test
+    void testSetOrderDoesNotChangeFingerprint() {
+        Set<String> hashed = new HashSet<>(List.of("c", "a", "b"));
+        Set<String> sorted = new TreeSet<>(List.of("a", "b", "c"));
+
+        assertArrayEquals(fingerprinter.fingerprint(new Object[]{hashed}),
+                fingerprinter.fingerprint(new Object[]{sorted}));
+    }
+
+    @Test
+    void testListOrderAndBoundariesChangeFingerprint() {
+        assertFalse(Arrays.equals(fingerprinter.fingerprint(new Object[]{List.of("a", "b")}),
+                fingerprinter.fingerprint(new Object[]{List.of("b", "a")})));
+        assertFalse(Arrays.equals(fingerprinter.fingerprint(new Object[]{"ab", "c"}),
+                fingerprinter.fingerprint(new Object[]{"a", "bc"})));
+    }
+
+    @Test
+    void testBeansAreFingerprintedByValue() {
+        byte[] first = fingerprinter.fingerprint(new Object[]{new Order("ORD1", 2, null)});
+        byte[] second = fingerprinter.fingerprint(new Object[]{new Order("ORD1", 2, null)});
+        byte[] other = fingerprinter.fingerprint(new Object[]{new Order("ORD1", 3, null)});
+
+        assertEquals(16, first.length);
+        assertArrayEquals(first, second);
+        assertFalse(Arrays.equals(first, other));
+    }
+
+    @Test
+    void testCyclicGraphTerminates() {
+        Order order = new Order("ORD1", 1, null);
+        order.parent = order;
+
+        assertEquals(16, fingerprinter.fingerprint(new Object[]{order}).length);
+    }
+
+    @Test
+    void testCyclesAreHashedByWhereTheyClose() {
+        Order self = new Order("ORD1", 1, null);
+        self.parent = self;
+        Order sameSelf = new Order("ORD1", 1, null);
+        sameSelf.parent = sameSelf;
+        Order first = new Order("ORD1", 1, null);
+        Order second = new Order("ORD1", 1, first);
+        first.parent = second;
+
+        assertArrayEquals(fingerprinter.fingerprint(new Object[]{self}),
+                fingerprinter.fingerprint(new Object[]{sameSelf}));
+        assertFalse(Arrays.equals(fingerprinter.fingerprint(new Object[]{self}),
+                fingerprinter.fingerprint(new Object[]{first})));
+    }
+
+    @Test
+    void testHeavilySharedGraphIsRefused() {
+        List<Object> shared = List.of("leaf");
+        for (int i = 0; i < 30; i++) {
+            shared = List.of(shared, shared);
+        }
+        Object[] args = {shared};
+
+        assertThrows(IllegalArgumentException.class, () -> fingerprinter.fingerprint(args));
+    }
+
+    @Test
+    void testLargePrimitiveArraysAreFingerprinted() {
+        int[] values = new int[2_000_000];
+        values[values.length - 1] = 1;
+        byte[] payload = new byte[1 << 20];
+
+        assertEquals(16, fingerprinter.fingerprint(new Object[]{values, payload}).length);
+        assertFalse(Arrays.equals(fingerprinter.fingerprint(new Object[]{values}),
+                fingerprinter.fingerprint(new Object[]{new int[2_000_000]})));
+    }
+
+    @Test
+    void testPrimitiveArraysHashLikeTheirBoxedElements() {
+        assertArrayEquals(fingerprinter.fingerprint(new Object[]{new long[]{1, 2}}),
+                fingerprinter.fingerprint(new Object[]{new Long[]{1L, 2L}}));
+        assertArrayEquals(fingerprinter.fingerprint(new Object[]{new double[]{0.5}}),
+                fingerprinter.fingerprint(new Object[]{new Float[]{0.5f}}));
+        assertArrayEquals(fingerprinter.fingerprint(new Object[]{new char[]{'a'}}),
+                fingerprinter.fingerprint(new Object[]{new Character[]{'a'}}));
+    }
+
+    @Test
+    void testIgnoredFieldsDoNotChangeFingerprint() {
+        assertArrayEquals(fingerprinter.fingerprint(new Object[]{new TracedOrder("ORD1", 1L, "trace-a")}),
+                fingerprinter.fingerprint(new Object[]{new TracedOrder("ORD1", 2L, "trace-b")}));
+    }
+
+    @Test
+    void testOnlyKeyFieldsAreFingerprinted() {
+        byte[] first = fingerprinter.fingerprint(new Object[]{new Payment("PAY1", 100, new byte[]{1, 2})});
+        byte[] retry = fingerprinter.fingerprint(new Object[]{new Payment("PAY1", 100, new byte[]{3})});
+        byte[] other = fingerprinter.fingerprint(new Object[]{new Payment("PAY1", 200, new byte[]{1, 2})});
+
+        assertArrayEquals(first, retry);
+        assertFalse(Arrays.equals(first, other));
+    }
+
+    static class TracedOrder {
+        private final String orderId;
+        @IdempotentIgnore
+        private final long timestamp;
+        @IdempotentIgnore
+        private final String traceId;
+
+        TracedOrder(String orderId, long timestamp, String traceId) {
+            this.orderId = orderId;
+            this.timestamp = timestamp;
+            this.traceId = traceId;
+        }
+    }
+
+    static class Payment {
+        @IdempotentKeyField
+        private final String paymentId;
+        @IdempotentKeyField
+        private final int amount;
+        private final byte[] attachment;
+
+        Payment(String paymentId, int amount, byte[] attachment) {
+            this.paymentId = paymentId;
+            this.amount = amount;
+            this.attachment = attachment;
+        }
+    }
+
+    static class Order {
+        private final String orderId;
+        private final int quantity;
+        private Order parent;
+
+        Order(String orderId, int quantity, Order parent) {
+            this.orderId = orderId;
+            this.quantity = quantity;
+            this.parent = parent;
+        }
+    }
+}
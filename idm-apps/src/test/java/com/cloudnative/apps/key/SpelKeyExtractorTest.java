@@ -0,0 +1,59 @@
+package com.cloudnative.apps.key;
+
+import com.cloudnative.idm.key.SpelKeyExtractor;
+import org.junit.jupiter.api.Test;
+import org.springframework.expression.ParseException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SpelKeyExtractorTest {
+
+    @Test
+    void testBlankTemplateUsesDefaultKey() {
+        SpelKeyExtractor extractor = SpelKeyExtractor.of("", new String[]{"order"});
+        assertEquals("default", extractor.extract(new Object[]{new Order("ORD1", "u1")}));
+    }
+
+    @Test
+    void testCompositeKeyStaysStableOnceCompiled() {
+        SpelKeyExtractor extractor = SpelKeyExtractor.of("#order.orderId + '_' + #order.userId",
+                new String[]{"order"});
+
+        // Enough evaluations for the MIXED mode compiler to kick in
+        for (int i = 0; i < 500; i++) {
+            Order order = new Order("ORD" + i, "user" + i);
+            assertEquals("ORD" + i + "_user" + i, extractor.extract(new Object[]{order}));
+        }
+    }
+
+    @Test
+    void testVariablesResolveByParameterName() {
+        SpelKeyExtractor extractor = SpelKeyExtractor.of("#userId + ':' + #count",
+                new String[]{"userId", "count"});
+        assertEquals("u1:3", extractor.extract(new Object[]{"u1", 3}));
+    }
+
+    @Test
+    void testInvalidExpressionFailsWhenParsed() {
+        assertThrows(ParseException.class, () -> SpelKeyExtractor.of("#order.", new String[]{"order"}));
+    }
+
+    public static class Order {
+        private final String orderId;
+        private final String userId;
+
+        public Order(String orderId, String userId) {
+            this.orderId = orderId;
+            this.userId = userId;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.cloudnative.apps.mq;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.service.IdempotentBatchClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class IdempotentMQBatchServiceTest {
+    private final InMemoryIdempotentStore memory = new InMemoryIdempotentStore();
+    private final IdempotentStore store = spy(memory);
+    private final IdempotentMQBatchService service = new IdempotentMQBatchService(store);
+
+    @Test
+    void testClaimsWholeBatchAtOnce() {
+        service.markConsumed(service.claimAll(List.of("m2"), String::valueOf));
+
+        IdempotentBatchClaim<String> batch = service.claimAll(List.of("m1", "m2", "m3", "m1"), String::valueOf);
+
+        assertEquals(List.of("m1", "m3"), batch.getNewMessages());
+        assertTrue(batch.isNew(0));
+        assertFalse(batch.isNew(3));
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, batch.getPreviousState(1));
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, batch.getPreviousState(3));
+        assertEquals("idempotent:mq:m1", batch.getKeys().get(0));
+        verify(store, times(2)).claimAll(anyList(), any(Duration.class));
+    }
+
+    @Test
+    void testCompleteMarksConsumedAndReleasesTheRest() {
+        IdempotentBatchClaim<String> batch = service.claimAll(List.of("m1", "m2", "m3"), String::valueOf);
+        BitSet consumed = new BitSet();
+        consumed.set(0);
+        consumed.set(2);
+
+        service.complete(batch, consumed);
+
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("idempotent:mq:m1"));
+        assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("idempotent:mq:m2"));
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("idempotent:mq:m3"));
+        verify(store, times(1)).markAllCompleted(anyList(), anyList(), any());
+        verify(store, times(1)).releaseAll(anyList(), anyList());
+
+        assertEquals(List.of("m2"), service.claimAll(List.of("m1", "m2", "m3"), String::valueOf).getNewMessages());
+    }
+
+    @Test
+    void testNullKeyIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.claimAll(List.of("m1", "m2"), message -> message.equals("m2") ? null : message));
+    }
+}
@@ -0,0 +1,113 @@
+package com.cloudnative.apps.mq;
+
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.exception.RepeatConsumptionException;
+import com.cloudnative.idm.key.SpelKeyExtractor;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IdempotentSpELMQExecuteHandlerTest {
+    private final InMemoryIdempotentStore store = new InMemoryIdempotentStore();
+    private final IdempotentSpELMQExecuteHandler handler = new IdempotentSpELMQExecuteHandler(store);
+
+    @Test
+    void testKeyUsesUniqueKeyPrefix() throws NoSuchMethodException {
+        IdempotentInvocationContext context = context("msg-1");
+        handler.execute(context);
+
+        assertEquals("order:consume:msg-1", context.getLockKey());
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("order:consume:msg-1"));
+    }
+
+    @Test
+    void testDuplicateWhileConsumingIsRetried() throws NoSuchMethodException {
+        handler.execute(context("msg-1"));
+
+        RepeatConsumptionException ex = assertThrows(RepeatConsumptionException.class,
+                () -> handler.execute(context("msg-1")));
+        assertTrue(ex.getError());
+    }
+
+    @Test
+    void testDuplicateOfConsumedMessageIsAcknowledged() throws NoSuchMethodException {
+        IdempotentInvocationContext first = context("msg-1");
+        handler.execute(first);
+        first.finish(IdempotentInvocationContext.State.COMPLETED);
+        handler.postProcessing(first);
+
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("order:consume:msg-1"));
+        RepeatConsumptionException ex = assertThrows(RepeatConsumptionException.class,
+                () -> handler.execute(context("msg-1")));
+        assertFalse(ex.getError());
+    }
+
+    @Test
+    void testFailedConsumptionIsDeleted() throws NoSuchMethodException {
+        IdempotentInvocationContext first = context("msg-1");
+        handler.execute(first);
+        handler.exceptionProcessing(first);
+
+        assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("order:consume:msg-1"));
+        handler.execute(context("msg-1"));
+    }
+
+    private IdempotentInvocationContext context(String messageId) throws NoSuchMethodException {
+        Method method = TestConsumer.class.getMethod("onMessage", Message.class);
+        Idempotent annotation = method.getAnnotation(Idempotent.class);
+        IdempotentMethodPlan plan = IdempotentMethodPlan.builder()
+                .method(method)
+                .idempotent(annotation)
+                .scene(annotation.scene())
+                .type(annotation.type())
+                .keyTemplate(annotation.key())
+                .keyExtractor(SpelKeyExtractor.of(annotation.key(), new String[]{"message"}))
+                .lockKeyTemplate(handler.createLockKeyTemplate(annotation))
+                .leaseTime(Duration.ofSeconds(annotation.leaseTime()))
+                .keepAfterSuccess(Duration.ofSeconds(annotation.keyTimeout()))
+                .build();
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getArgs()).thenReturn(new Object[]{new Message(messageId)});
+        return new IdempotentInvocationContext(plan, joinPoint);
+    }
+
+    static class TestConsumer {
+        @Idempotent(
+                scene = IdempotentSceneEnum.MQ,
+                type = IdempotentTypeEnum.SPEL,
+                key = "#message.messageId",
+                uniqueKeyPrefix = "order:consume",
+                keyTimeout = 7200L,
+                leaseTime = 10L
+        )
+        public void onMessage(Message message) {
+        }
+    }
+
+    public static class Message {
+        private final String messageId;
+
+        public Message(String messageId) {
+            this.messageId = messageId;
+        }
+
+        public String getMessageId() {
+            return messageId;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.cloudnative.apps.replay;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JsonbResponseCodecTest {
+    private final JsonbResponseCodec codec = new JsonbResponseCodec();
+
+    @Test
+    void testRoundTripsGenericResponses() throws NoSuchMethodException {
+        Type type = Responses.class.getMethod("orders").getGenericReturnType();
+        List<OrderResult> orders = List.of(new OrderResult("ORD1", 3), new OrderResult("ORD2", 5));
+
+        byte[] encoded = codec.encode(orders);
+
+        assertEquals(0, encoded[0]);
+        assertEquals(orders, codec.decode(encoded, type));
+        assertNull(codec.decode(codec.encode(null), String.class));
+    }
+
+    @Test
+    void testLargeResponsesAreCompressed() throws NoSuchMethodException {
+        Type type = Responses.class.getMethod("orders").getGenericReturnType();
+        List<OrderResult> orders = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            orders.add(new OrderResult("ORD-000000" + i, i));
+        }
+
+        byte[] encoded = codec.encode(orders);
+
+        assertEquals(1, encoded[0]);
+        assertTrue(encoded.length < new JsonbResponseCodec(Integer.MAX_VALUE, Integer.MAX_VALUE)
+                .encode(orders).length / 2);
+        assertEquals(orders, codec.decode(encoded, type));
+    }
+
+    @Test
+    void testOversizedResponsesAreNotStored() {
+        JsonbResponseCodec small = new JsonbResponseCodec(16, Integer.MAX_VALUE);
+
+        assertNull(small.encode("x".repeat(64)));
+        assertNotNull(small.encode("ok"));
+    }
+
+    interface Responses {
+        List<OrderResult> orders();
+    }
+
+    public static class OrderResult {
+        private String orderId;
+        private int quantity;
+
+        public OrderResult() {
+        }
+
+        public OrderResult(String orderId, int quantity) {
+            this.orderId = orderId;
+            this.quantity = quantity;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public void setOrderId(String orderId) {
+            this.orderId = orderId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof OrderResult && ((OrderResult) other).orderId.equals(orderId)
+                    && ((OrderResult) other).quantity == quantity;
+        }
+
+        @Override
+        public int hashCode() {
+            return orderId.hashCode() * 31 + quantity;
+        }
+    }
+}
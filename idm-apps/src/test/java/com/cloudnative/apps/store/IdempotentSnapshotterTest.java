@@ -0,0 +1,101 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.snapshot.IdempotentSnapshotter;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import com.cloudnative.idm.store.NearCacheIdempotentStore;
+import com.cloudnative.idm.store.OffHeapIdempotentStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdempotentSnapshotterTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testCompletedKeysSurviveRestart() throws InterruptedException {
+        Path file = directory.resolve("memory.snapshot");
+        InMemoryIdempotentStore store = new InMemoryIdempotentStore();
+        byte[] response = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        IdempotentClaim completed = store.claim("completed", null);
+        store.markCompleted("completed", completed.getOwner(), Duration.ofMinutes(1), response);
+        IdempotentClaim forever = store.claim("forever", null);
+        store.markCompleted("forever", forever.getOwner(), null);
+        store.claim("in-progress", Duration.ofMinutes(1));
+        IdempotentClaim expiring = store.claim("expiring", null);
+        store.markCompleted("expiring", expiring.getOwner(), Duration.ofMillis(200));
+        assertEquals(3, new IdempotentSnapshotter(store, file).snapshot());
+        assertFalse(Files.exists(directory.resolve("memory.snapshot.tmp")));
+
+        Thread.sleep(300);
+        InMemoryIdempotentStore restarted = new InMemoryIdempotentStore();
+        assertEquals(2, new IdempotentSnapshotter(restarted, file).restore());
+        IdempotentClaim duplicate = restarted.claim("completed", null);
+        assertFalse(duplicate.isAcquired());
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, duplicate.getPreviousState());
+        assertArrayEquals(response, duplicate.getResponse());
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, restarted.lookup("forever"));
+        assertEquals(IdempotentKeyStateEnum.ABSENT, restarted.lookup("in-progress"));
+        assertEquals(IdempotentKeyStateEnum.ABSENT, restarted.lookup("expiring"));
+    }
+
+    @Test
+    void testOffHeapFingerprintsSurviveRestart() {
+        Path file = directory.resolve("offheap.snapshot");
+        OffHeapIdempotentStore store = new OffHeapIdempotentStore("offheap", 16, 4, Duration.ofMillis(10));
+        for (int i = 0; i < 1000; i++) {
+            IdempotentClaim claim = store.claim("key:" + i, null);
+            if (i % 2 == 0) {
+                store.markCompleted("key:" + i, claim.getOwner(), Duration.ofMinutes(1));
+            }
+        }
+        try (IdempotentSnapshotter snapshotter = new IdempotentSnapshotter(store, file)) {
+            snapshotter.start(Duration.ofMinutes(1));
+        }
+
+        OffHeapIdempotentStore restarted = new OffHeapIdempotentStore();
+        assertEquals(500, new IdempotentSnapshotter(restarted, file).restore());
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, restarted.lookup("key:0"));
+        assertEquals(IdempotentKeyStateEnum.ABSENT, restarted.lookup("key:1"));
+        assertFalse(restarted.claim("key:998", null).isAcquired());
+        assertTrue(restarted.claim("key:999", null).isAcquired());
+    }
+
+    @Test
+    void testNearCacheRestoresLocalTier() {
+        Path file = directory.resolve("near.snapshot");
+        InMemoryIdempotentStore remote = new InMemoryIdempotentStore();
+        NearCacheIdempotentStore store = new NearCacheIdempotentStore(remote, 100, Duration.ofMinutes(1));
+        IdempotentClaim claim = store.claim("order:1", null);
+        store.markCompleted("order:1", claim.getOwner(), Duration.ofMinutes(5));
+        assertEquals(1, new IdempotentSnapshotter(store, file).snapshot());
+
+        InMemoryIdempotentStore empty = new InMemoryIdempotentStore();
+        NearCacheIdempotentStore restarted = new NearCacheIdempotentStore(empty, 100, Duration.ofMinutes(1));
+        assertEquals(1, new IdempotentSnapshotter(restarted, file).restore());
+        assertFalse(restarted.claim("order:1", null).isAcquired());
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    void testKeyFormatMismatchRejected() {
+        Path file = directory.resolve("memory.snapshot");
+        new IdempotentSnapshotter(new InMemoryIdempotentStore(), file).snapshot();
+        IdempotentSnapshotter snapshotter = new IdempotentSnapshotter(new OffHeapIdempotentStore(), file);
+        assertThrows(UncheckedIOException.class, snapshotter::restore);
+        assertEquals(0, new IdempotentSnapshotter(new OffHeapIdempotentStore(), directory.resolve("none")).restore());
+    }
+}
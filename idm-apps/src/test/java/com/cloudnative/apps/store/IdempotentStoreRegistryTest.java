@@ -0,0 +1,83 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.enums.IdempotentClaimModeEnum;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+import com.cloudnative.idm.store.IdempotentStoreRegistry;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IdempotentStoreRegistryTest {
+    private final InMemoryIdempotentStore redis = new InMemoryIdempotentStore("redis");
+    private final InMemoryIdempotentStore memory = new InMemoryIdempotentStore("memory");
+    private final InMemoryIdempotentStore jdbc = new InMemoryIdempotentStore("jdbc");
+
+    @Test
+    void testAnnotationWinsOverSceneAndDefault() throws NoSuchMethodException {
+        IdempotentStoreRegistry registry = new IdempotentStoreRegistry(List.of(redis, memory, jdbc))
+                .setDefaultStore("redis")
+                .setSceneDefault(IdempotentSceneEnum.MQ, "jdbc");
+
+        assertSame(memory, registry.resolve(annotation("explicit")));
+        assertSame(jdbc, registry.resolve(annotation("mq")));
+        assertSame(redis, registry.resolve(annotation("http")));
+    }
+
+    @Test
+    void testMissingStoresFail() throws NoSuchMethodException {
+        IdempotentStoreRegistry registry = new IdempotentStoreRegistry(List.of(redis, jdbc));
+
+        assertThrows(IllegalStateException.class, () -> registry.resolve(annotation("http")));
+        assertThrows(IllegalStateException.class, () -> registry.resolve(annotation("explicit")));
+        assertThrows(IllegalStateException.class,
+                () -> new IdempotentStoreRegistry(List.of(redis, new InMemoryIdempotentStore("redis"))));
+    }
+
+    @Test
+    void testClaimModeSelectsItsStore() throws NoSuchMethodException {
+        IdempotentStoreRegistry registry = new IdempotentStoreRegistry(List.of(redis, memory, jdbc))
+                .setDefaultStore("jdbc")
+                .setClaimModeStore(IdempotentClaimModeEnum.SET_NX, "memory");
+
+        assertSame(memory, registry.resolve(annotation("setNx")));
+        assertSame(jdbc, registry.resolve(annotation("http")));
+        assertThrows(IllegalStateException.class, () -> registry.resolve(annotation("lock")));
+    }
+
+    @Test
+    void testSingleStoreIsTheDefault() throws NoSuchMethodException {
+        IdempotentStoreRegistry registry = new IdempotentStoreRegistry(List.of(redis));
+        assertSame(redis, registry.resolve(annotation("http")));
+    }
+
+    private Idempotent annotation(String method) throws NoSuchMethodException {
+        return Annotated.class.getDeclaredMethod(method).getAnnotation(Idempotent.class);
+    }
+
+    static class Annotated {
+        @Idempotent(store = "memory")
+        void explicit() {
+        }
+
+        @Idempotent(scene = IdempotentSceneEnum.MQ)
+        void mq() {
+        }
+
+        @Idempotent(claimMode = IdempotentClaimModeEnum.SET_NX)
+        void setNx() {
+        }
+
+        @Idempotent(claimMode = IdempotentClaimModeEnum.LOCK)
+        void lock() {
+        }
+
+        @Idempotent
+        void http() {
+        }
+    }
+}
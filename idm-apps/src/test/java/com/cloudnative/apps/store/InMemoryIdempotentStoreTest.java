@@ -0,0 +1,62 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InMemoryIdempotentStoreTest {
+    private final InMemoryIdempotentStore store = new InMemoryIdempotentStore();
+
+    @Test
+    void testClaimLifecycle() {
+        IdempotentClaim claim = store.claim("k1", null);
+        assertTrue(claim.isAcquired());
+
+        IdempotentClaim duplicate = store.claim("k1", null);
+        assertFalse(duplicate.isAcquired());
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, duplicate.getPreviousState());
+
+        store.markCompleted("k1", claim.getOwner(), null);
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("k1"));
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.claim("k1", null).getPreviousState());
+    }
+
+    @Test
+    void testReleaseRequiresOwner() {
+        IdempotentClaim claim = store.claim("k1", null);
+
+        store.release("k1", "someone-else");
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("k1"));
+
+        store.release("k1", claim.getOwner());
+        assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("k1"));
+        assertTrue(store.claim("k1", null).isAcquired());
+    }
+
+    @Test
+    void testExpiredClaimCanBeTakenOver() {
+        assertTrue(store.claim("k1", Duration.ZERO).isAcquired());
+
+        assertTrue(store.claim("k1", Duration.ofMinutes(1)).isAcquired());
+        assertEquals(0, store.purgeExpired());
+    }
+
+    @Test
+    void testClaimAllClaimsEachKey() {
+        store.claim("k2", null);
+
+        List<IdempotentClaim> claims = store.claimAll(List.of("k1", "k2", "k3"), null);
+
+        assertTrue(claims.get(0).isAcquired());
+        assertFalse(claims.get(1).isAcquired());
+        assertTrue(claims.get(2).isAcquired());
+    }
+}
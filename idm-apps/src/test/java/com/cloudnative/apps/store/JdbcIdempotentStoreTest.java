@@ -0,0 +1,132 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JdbcIdempotentStoreTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testClaimCompleteAndRelease() {
+        JdbcIdempotentStore store = store("PostgreSQL", JdbcIdempotentDialect.POSTGRESQL);
+        IdempotentClaim claim = store.claim("order:1", null);
+        assertTrue(claim.isAcquired());
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.claim("order:1", null).getPreviousState());
+
+        store.markCompleted("order:1", claim.getOwner(), Duration.ofMinutes(1), new byte[]{7});
+        IdempotentClaim duplicate = store.claim("order:1", null);
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, duplicate.getPreviousState());
+        assertArrayEquals(new byte[]{7}, duplicate.getResponse());
+
+        IdempotentClaim other = store.claim("order:2", null);
+        store.release("order:2", "someone-else");
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("order:2"));
+        store.release("order:2", other.getOwner());
+        assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("order:2"));
+    }
+
+    @Test
+    void testConcurrentClaimsAcquireEachKeyOnce() throws Exception {
+        JdbcIdempotentStore store = store("PostgreSQL", JdbcIdempotentDialect.POSTGRESQL);
+        Map<String, AtomicInteger> acquired = new ConcurrentHashMap<>();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(executor.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    String key = "key:" + (i % 40);
+                    if (store.claim(key, Duration.ofMinutes(1)).isAcquired()) {
+                        acquired.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(40, acquired.size());
+        acquired.values().forEach(count -> assertEquals(1, count.get()));
+    }
+
+    @Test
+    void testClaimAllTakesOverExpiredKeys() throws InterruptedException {
+        JdbcIdempotentStore store = store("MySQL", JdbcIdempotentDialect.MYSQL);
+        store.claim("k1", Duration.ofMillis(1));
+        store.claim("k2", Duration.ofMinutes(1));
+        Thread.sleep(10);
+
+        List<IdempotentClaim> claims = store.claimAll(List.of("k1", "k2", "k3", "k3"), null);
+
+        assertTrue(claims.get(0).isAcquired());
+        assertFalse(claims.get(1).isAcquired());
+        assertTrue(claims.get(2).isAcquired());
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, claims.get(3).getPreviousState());
+    }
+
+    @Test
+    void testGenericDialectDetectsDuplicateKeys() throws InterruptedException {
+        JdbcIdempotentStore store = store("PostgreSQL", JdbcIdempotentDialect.GENERIC);
+        assertTrue(store.claim("k1", Duration.ofMillis(1)).isAcquired());
+        assertTrue(store.claim("k2", null).isAcquired());
+        Thread.sleep(10);
+
+        assertTrue(store.claim("k1", null).isAcquired());
+        assertFalse(store.claim("k2", null).isAcquired());
+    }
+
+    @Test
+    void testPurgeIsBounded() throws InterruptedException {
+        JdbcIdempotentStore store = store("PostgreSQL", JdbcIdempotentDialect.POSTGRESQL);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            keys.add("expired:" + i);
+        }
+        store.claimAll(keys, Duration.ofMillis(1));
+        store.claim("alive", null);
+        Thread.sleep(10);
+
+        assertEquals(20, store.purgeExpired(10, 2));
+        assertEquals(5, store.purgeExpired(10, 2));
+        assertEquals(0, store.purgeExpired(10, 2));
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("alive"));
+    }
+
+    private static JdbcIdempotentStore store(String mode, JdbcIdempotentDialect dialect) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:idempotent"
+                + DATABASES.incrementAndGet() + ";MODE=" + mode + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE idempotent_key (key_hash BINARY(16) PRIMARY KEY, "
+                + "state VARCHAR(16) NOT NULL, owner VARCHAR(64) NOT NULL, expires_at BIGINT NOT NULL, "
+                + "response VARBINARY(65535))");
+        jdbcTemplate.execute("CREATE INDEX idx_idempotent_key_expires_at ON idempotent_key (expires_at)");
+        return new JdbcIdempotentStore(jdbcTemplate, JdbcIdempotentStore.DEFAULT_TABLE, dialect,
+                JdbcIdempotentStore.DEFAULT_MAX_BATCH_SIZE);
+    }
+}
@@ -0,0 +1,104 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.MappedLogIdempotentStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedLogIdempotentStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testStateSurvivesRestart() {
+        String owner;
+        try (MappedLogIdempotentStore store = new MappedLogIdempotentStore("log", directory)) {
+            IdempotentClaim completed = store.claim("completed", null);
+            store.markCompleted("completed", completed.getOwner(), Duration.ofMinutes(1));
+            owner = store.claim("in-progress", Duration.ofMinutes(1)).getOwner();
+            IdempotentClaim released = store.claim("released", null);
+            store.release("released", released.getOwner());
+            store.claim("expired", Duration.ofMillis(1));
+        }
+
+        try (MappedLogIdempotentStore store = new MappedLogIdempotentStore("log", directory)) {
+            assertEquals(6, store.getRecoveredRecords());
+            assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("completed"));
+            assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("in-progress"));
+            assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("released"));
+            assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("expired"));
+
+            IdempotentClaim next = store.claim("next", null);
+            assertTrue(Long.parseLong(next.getOwner(), 36) > Long.parseLong(owner, 36));
+            store.release("in-progress", owner);
+            assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("in-progress"));
+        }
+    }
+
+    @Test
+    void testSegmentsRollAndCompact() throws IOException {
+        int segmentBytes = 40 * 10;
+        try (MappedLogIdempotentStore store = new MappedLogIdempotentStore("log", directory, segmentBytes, true)) {
+            for (int i = 0; i < 25; i++) {
+                IdempotentClaim claim = store.claim("key:" + i, null);
+                if (i % 5 != 0) {
+                    store.release("key:" + i, claim.getOwner());
+                }
+            }
+            assertEquals(5, store.getSegmentCount());
+
+            assertEquals(4, store.compact());
+            assertEquals(1, countSegments());
+            assertEquals(5, store.size());
+        }
+
+        try (MappedLogIdempotentStore store = new MappedLogIdempotentStore("log", directory, segmentBytes, true)) {
+            for (int i = 0; i < 25; i++) {
+                assertEquals(i % 5 == 0, store.lookup("key:" + i) == IdempotentKeyStateEnum.IN_PROGRESS);
+            }
+        }
+    }
+
+    @Test
+    void testTornRecordEndsTheReplay() throws IOException {
+        try (MappedLogIdempotentStore store = new MappedLogIdempotentStore("log", directory, 4096, false)) {
+            store.claim("k1", null);
+            store.claim("k2", null);
+            store.claim("k3", null);
+        }
+        try (Stream<Path> files = Files.list(directory);
+             RandomAccessFile file = new RandomAccessFile(files.findFirst().orElseThrow().toFile(), "rw")) {
+            // Second record loses a payload byte, the third one was written back before it
+            file.seek(40 + 20);
+            file.write(0x7f);
+        }
+
+        try (MappedLogIdempotentStore store = new MappedLogIdempotentStore("log", directory, 4096, false)) {
+            assertEquals(1, store.getRecoveredRecords());
+            assertFalse(store.claim("k1", null).isAcquired());
+            assertTrue(store.claim("k2", null).isAcquired());
+        }
+        try (MappedLogIdempotentStore store = new MappedLogIdempotentStore("log", directory, 4096, false)) {
+            assertEquals(2, store.getRecoveredRecords());
+            assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("k3"));
+        }
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
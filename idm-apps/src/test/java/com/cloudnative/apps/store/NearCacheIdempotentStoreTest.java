@@ -0,0 +1,138 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import com.cloudnative.idm.store.NearCacheIdempotentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NearCacheIdempotentStoreTest {
+    private final IdempotentStore remote = spy(new InMemoryIdempotentStore("redis"));
+
+    @Test
+    void testCompletedDuplicatesAreRejectedLocally() {
+        NearCacheIdempotentStore store = new NearCacheIdempotentStore(remote, 16, Duration.ofMinutes(1));
+        IdempotentClaim claim = store.claim("k1", null);
+        store.markCompleted("k1", claim.getOwner(), null);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(IdempotentKeyStateEnum.COMPLETED, store.claim("k1", null).getPreviousState());
+        }
+
+        verify(remote, times(1)).claim(anyString(), any());
+        assertEquals(3, store.getHitCount());
+        assertEquals(1, store.getMissCount());
+        assertEquals("redis", store.name());
+    }
+
+    @Test
+    void testInProgressKeysAreNotCached() {
+        NearCacheIdempotentStore store = new NearCacheIdempotentStore(remote, 16, Duration.ofMinutes(1));
+        IdempotentClaim claim = store.claim("k1", null);
+
+        assertFalse(store.claim("k1", null).isAcquired());
+        store.release("k1", claim.getOwner());
+
+        assertTrue(store.claim("k1", null).isAcquired());
+        assertEquals(0, store.getHitCount());
+        verify(remote, times(3)).claim(anyString(), any());
+    }
+
+    @Test
+    void testRemoteCompletedStateIsRemembered() {
+        IdempotentClaim claim = remote.claim("k1", null);
+        remote.markCompleted("k1", claim.getOwner(), null);
+        NearCacheIdempotentStore store = new NearCacheIdempotentStore(remote, 16, Duration.ofMinutes(1));
+
+        List<IdempotentClaim> claims = store.claimAll(List.of("k1", "k2"), null);
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, claims.get(0).getPreviousState());
+        assertTrue(claims.get(1).isAcquired());
+
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("k1"));
+        verify(remote, never()).lookup(anyString());
+    }
+
+    @Test
+    void testRemoteCompletionsAreCappedByTheirRemainingTtl() {
+        IdempotentStore delegate = mock(IdempotentStore.class);
+        when(delegate.claim("short", null)).thenReturn(IdempotentClaim.rejected(
+                IdempotentKeyStateEnum.COMPLETED, null, Duration.ofNanos(1)));
+        when(delegate.claim("unknown", null)).thenReturn(IdempotentClaim.rejected(
+                IdempotentKeyStateEnum.COMPLETED));
+        when(delegate.claim("long", null)).thenReturn(IdempotentClaim.rejected(
+                IdempotentKeyStateEnum.COMPLETED, null, ChronoUnit.FOREVER.getDuration()));
+        NearCacheIdempotentStore store = new NearCacheIdempotentStore(delegate, 16, Duration.ofMinutes(1));
+
+        for (String key : List.of("short", "unknown", "long")) {
+            assertEquals(IdempotentKeyStateEnum.COMPLETED, store.claim(key, null).getPreviousState());
+        }
+        store.lookup("short");
+        store.lookup("unknown");
+        store.lookup("long");
+
+        verify(delegate).lookup("short");
+        verify(delegate).lookup("unknown");
+        verify(delegate, never()).lookup("long");
+    }
+
+    @Test
+    void testBoundedSizeAndTtl() {
+        NearCacheIdempotentStore store = new NearCacheIdempotentStore(remote, 2, Duration.ofMinutes(1));
+        for (String key : List.of("k1", "k2", "k3")) {
+            store.markCompleted(key, store.claim(key, null).getOwner(), null);
+        }
+        assertEquals(2, store.size());
+        assertEquals(1, store.getEvictionCount());
+
+        store.markCompleted("k4", store.claim("k4", null).getOwner(), Duration.ofNanos(1));
+        assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("k4"));
+        verify(remote, times(1)).lookup("k4");
+    }
+
+    @Test
+    void testOnlyConfirmedCompletionsAreCached() {
+        NearCacheIdempotentStore store = new NearCacheIdempotentStore(remote, 16, Duration.ofMinutes(1));
+        IdempotentClaim claim = store.claim("k1", null);
+
+        assertFalse(store.markCompleted("k1", "stale", null));
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("k1"));
+        assertTrue(store.markCompleted("k1", claim.getOwner(), null));
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("k1"));
+        verify(remote, times(1)).lookup("k1");
+
+        IdempotentClaim batched = store.claim("k2", null);
+        store.markAllCompleted(List.of("k2"), List.of(batched.getOwner()), null);
+        assertEquals(1, store.size());
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.claim("k2", null).getPreviousState());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void testStripesShareTheMaximumSize() {
+        NearCacheIdempotentStore store = new NearCacheIdempotentStore(remote, 1000, Duration.ofMinutes(1));
+        for (int i = 0; i < 2000; i++) {
+            String key = "key:" + i;
+            store.markCompleted(key, store.claim(key, null).getOwner(), null);
+        }
+
+        assertTrue(store.size() <= 1000);
+        assertEquals(2000, store.size() + store.getEvictionCount());
+    }
+}
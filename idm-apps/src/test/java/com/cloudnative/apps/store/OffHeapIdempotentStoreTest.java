@@ -0,0 +1,75 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.OffHeapIdempotentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapIdempotentStoreTest {
+
+    @Test
+    void testClaimCompleteAndRelease() {
+        OffHeapIdempotentStore store = new OffHeapIdempotentStore();
+        IdempotentClaim claim = store.claim("k1", null);
+        assertTrue(claim.isAcquired());
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.claim("k1", null).getPreviousState());
+
+        store.markCompleted("k1", "someone-else", null);
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("k1"));
+        store.markCompleted("k1", claim.getOwner(), Duration.ofMinutes(1));
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.claim("k1", null).getPreviousState());
+
+        store.release("k1", claim.getOwner());
+        assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("k1"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testTableGrowsAndSurvivesRemovals() {
+        OffHeapIdempotentStore store = new OffHeapIdempotentStore("offheap", 64, 4, Duration.ofMillis(100));
+        List<String> owners = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            owners.add(store.claim("key:" + i, null).getOwner());
+        }
+        for (int i = 0; i < 50_000; i += 2) {
+            store.release("key:" + i, owners.get(i));
+        }
+
+        assertEquals(25_000, store.size());
+        for (int i = 0; i < 50_000; i++) {
+            assertEquals(i % 2 == 0 ? IdempotentKeyStateEnum.ABSENT : IdempotentKeyStateEnum.IN_PROGRESS,
+                    store.lookup("key:" + i));
+        }
+        assertTrue(store.getOffHeapBytes() >= 50_000 * 32L);
+    }
+
+    @Test
+    void testExpiredKeysAreFreedByTheWheel() throws InterruptedException {
+        OffHeapIdempotentStore store = new OffHeapIdempotentStore("offheap", 1024, 2, Duration.ofMillis(1));
+        for (int i = 0; i < 100; i++) {
+            store.claim("short:" + i, Duration.ofMillis(10));
+            store.claim("long:" + i, Duration.ofMillis(150));
+        }
+        IdempotentClaim kept = store.claim("kept", Duration.ofMillis(10));
+        store.markCompleted("kept", kept.getOwner(), Duration.ofMinutes(1));
+        Thread.sleep(50);
+
+        assertTrue(store.claim("short:0", null).isAcquired());
+        store.purgeExpired();
+        assertEquals(102, store.size());
+
+        Thread.sleep(200);
+        store.purgeExpired();
+        assertEquals(2, store.size());
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("kept"));
+        assertFalse(store.claim("short:0", null).isAcquired());
+    }
+}
@@ -0,0 +1,147 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RScriptAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.misc.CompletableFutureWrapper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RedisSetNxIdempotentStoreTest {
+    private RScript script;
+    private RedissonClient redissonClient;
+    private RedisSetNxIdempotentStore store;
+
+    @BeforeEach
+    void setUp() {
+        script = mock(RScript.class);
+        redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getScript(StringCodec.INSTANCE)).thenReturn(script);
+        store = new RedisSetNxIdempotentStore(redissonClient);
+    }
+
+    @Test
+    void testClaimIsOneScriptCall() {
+        when(script.evalSha(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.VALUE),
+                eq(List.of("k1")), any(), eq("1500"))).thenReturn(null);
+
+        IdempotentClaim claim = store.claim("k1", Duration.ofMillis(1500));
+
+        assertTrue(claim.isAcquired());
+        assertNotNull(claim.getOwner());
+        verify(script, times(1)).evalSha(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.VALUE),
+                eq(List.of("k1")), eq("P" + claim.getOwner()), eq("1500"));
+    }
+
+    @Test
+    void testRejectedClaimCarriesState() {
+        when(script.evalSha(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.VALUE),
+                eq(List.of("k1")), any(), any())).thenReturn("60000:Cabc-1", "-1:Pabc-2");
+
+        IdempotentClaim completed = store.claim("k1", null);
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, completed.getPreviousState());
+        assertEquals(Duration.ofMinutes(1), completed.getRemainingTtl());
+        IdempotentClaim inProgress = store.claim("k1", null);
+        assertFalse(inProgress.isAcquired());
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, inProgress.getPreviousState());
+    }
+
+    @Test
+    void testScriptIsReloadedAfterFlush() {
+        when(script.evalSha(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.VALUE),
+                eq(List.of("k1")), any(), any()))
+                .thenThrow(new RedisException("NOSCRIPT No matching script. Please use EVAL."))
+                .thenReturn(null);
+
+        assertTrue(store.claim("k1", null).isAcquired());
+        verify(script, times(1)).scriptLoad(anyString());
+    }
+
+    @Test
+    void testAsyncClaimNeverLoadsScripts() {
+        when(script.evalShaAsync(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.VALUE),
+                eq(List.of("k1")), any(), any()))
+                .thenReturn(failedFuture(new RedisException("NOSCRIPT No matching script. Please use EVAL.")));
+        when(script.evalAsync(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.VALUE),
+                eq(List.of("k1")), any(), any())).thenReturn(completedFuture(null));
+
+        assertTrue(store.claimAsync("k1", null).toCompletableFuture().join().isAcquired());
+        verify(script, never()).scriptLoad(anyString());
+    }
+
+    @Test
+    void testScriptDigestIsComputedLocally() {
+        assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", new RedisScript("return 1").getSha());
+    }
+
+    @Test
+    void testClaimAllIsOnePipelinedBatch() {
+        RBatch batch = mock(RBatch.class);
+        RScriptAsync batchScript = mock(RScriptAsync.class);
+        BatchResult<Object> result = mock(BatchResult.class);
+        when(redissonClient.createBatch(any(BatchOptions.class))).thenReturn(batch);
+        when(batch.getScript(StringCodec.INSTANCE)).thenReturn(batchScript);
+        when(batch.execute()).thenReturn((BatchResult) result);
+        List<String> keys = new ArrayList<>();
+        List<Object> responses = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            keys.add("k" + i);
+            responses.add(i % 2 == 0 ? null : "60000:Cabc-" + i);
+        }
+        when(result.getResponses()).thenReturn(responses);
+
+        List<IdempotentClaim> claims = store.claimAll(keys, null);
+
+        assertTrue(claims.get(0).isAcquired());
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, claims.get(1).getPreviousState());
+        verify(batch, times(1)).execute();
+        verify(batchScript, times(500)).evalShaAsync(eq(RScript.Mode.READ_WRITE), anyString(),
+                eq(RScript.ReturnType.VALUE), anyList(), any(), eq("30000"));
+    }
+
+    @Test
+    void testLookupReadsTheStateByte() {
+        RBucket<Object> bucket = mock(RBucket.class);
+        when(redissonClient.getBucket("k1", StringCodec.INSTANCE)).thenReturn(bucket);
+        when(bucket.get()).thenReturn(null, "Pabc-1", "Cabc-1");
+
+        assertEquals(IdempotentKeyStateEnum.ABSENT, store.lookup("k1"));
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("k1"));
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("k1"));
+    }
+
+    private static <T> RFuture<T> completedFuture(T value) {
+        return new CompletableFutureWrapper<>(value);
+    }
+
+    private static <T> RFuture<T> failedFuture(Throwable ex) {
+        return new CompletableFutureWrapper<>(ex);
+    }
+}
@@ -0,0 +1,99 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RLock;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.misc.CompletableFutureWrapper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RedissonLockIdempotentStoreTest {
+    private RedissonClient redissonClient;
+    private RScript script;
+    private RLock lock;
+    private RedissonLockIdempotentStore store;
+
+    @BeforeEach
+    void setUp() {
+        redissonClient = mock(RedissonClient.class);
+        script = mock(RScript.class);
+        lock = mock(RLock.class);
+        when(redissonClient.getScript(StringCodec.INSTANCE)).thenReturn(script);
+        when(redissonClient.getLock("k1")).thenReturn(lock);
+        when(redissonClient.getId()).thenReturn("client");
+        store = new RedissonLockIdempotentStore(redissonClient);
+    }
+
+    @Test
+    void testEveryClaimLocksForItsOwnOwner() {
+        when(lock.tryLockAsync(eq(0L), eq(30_000L), eq(TimeUnit.MILLISECONDS), anyLong()))
+                .thenReturn(new CompletableFutureWrapper<>(true));
+
+        IdempotentClaim first = store.claim("k1", Duration.ofSeconds(30));
+        IdempotentClaim second = store.claim("k1", Duration.ofSeconds(30));
+
+        assertNotEquals(first.getOwner(), second.getOwner());
+        assertNotEquals(Long.toString(Thread.currentThread().getId()), first.getOwner());
+        verify(lock).tryLockAsync(0L, 30_000L, TimeUnit.MILLISECONDS, Long.parseLong(first.getOwner()));
+        verify(lock).tryLockAsync(0L, 30_000L, TimeUnit.MILLISECONDS, Long.parseLong(second.getOwner()));
+    }
+
+    @Test
+    void testCompletionWritesAnExplicitMarker() {
+        store.markCompleted("k1", "-7", Duration.ofMinutes(1));
+
+        verify(script).evalSha(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                eq(List.of("k1")), eq("client:-7"), eq("60000"));
+    }
+
+    @Test
+    void testReleaseWaitsForTheUnlock() {
+        CompletableFuture<Void> notHeld = new CompletableFuture<>();
+        notHeld.completeExceptionally(new IllegalMonitorStateException("not locked"));
+        CompletableFuture<Void> unreachable = new CompletableFuture<>();
+        unreachable.completeExceptionally(new RedisConnectionException("unreachable"));
+        when(lock.unlockAsync(anyLong())).thenReturn(new CompletableFutureWrapper<>(notHeld),
+                new CompletableFutureWrapper<>(unreachable));
+
+        store.release("k1", "-1");
+        assertThrows(RedisConnectionException.class, () -> store.release("k1", "-1"));
+        verify(lock, times(2)).unlockAsync(-1L);
+    }
+
+    @Test
+    void testRejectedClaimReadsTheKeyState() {
+        when(lock.tryLockAsync(anyLong())).thenReturn(new CompletableFutureWrapper<>(false));
+        when(script.evalSha(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.MULTI),
+                eq(List.of("k1")))).thenReturn(List.of(2L, 60_000L));
+        when(script.evalShaAsync(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.MULTI),
+                eq(List.of("k1")))).thenReturn(new CompletableFutureWrapper<>(List.of(1L, 30_000L)));
+
+        IdempotentClaim completed = store.claim("k1", null);
+        assertFalse(completed.isAcquired());
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, completed.getPreviousState());
+        assertEquals(Duration.ofMinutes(1), completed.getRemainingTtl());
+        IdempotentClaim inProgress = store.claimAsync("k1", null).toCompletableFuture().join();
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, inProgress.getPreviousState());
+    }
+}
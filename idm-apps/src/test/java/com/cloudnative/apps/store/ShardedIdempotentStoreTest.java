@@ -0,0 +1,122 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import com.cloudnative.idm.store.ShardedIdempotentStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedIdempotentStoreTest {
+    private static final int KEYS = 20_000;
+
+    @Test
+    void testKeysAreSpreadEvenly() {
+        Map<String, InMemoryIdempotentStore> shards = shards("redis-6379", "redis-6380", "redis-6381", "redis-6382");
+        ShardedIdempotentStore store = new ShardedIdempotentStore("sharded", shards);
+
+        for (int i = 0; i < KEYS; i++) {
+            assertTrue(store.claim("idempotent:token:" + i, null).isAcquired());
+        }
+
+        for (InMemoryIdempotentStore shard : shards.values()) {
+            double share = shard.size() / (double) KEYS;
+            assertTrue(share > 0.20 && share < 0.30, "unbalanced shard: " + share);
+        }
+    }
+
+    @Test
+    void testAddingAShardMovesFewKeys() {
+        ShardedIdempotentStore three = new ShardedIdempotentStore("sharded",
+                shards("redis-6379", "redis-6380", "redis-6381"));
+        ShardedIdempotentStore four = new ShardedIdempotentStore("sharded",
+                shards("redis-6379", "redis-6380", "redis-6381", "redis-6382"));
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "idempotent:token:" + i;
+            String before = three.shardFor(key);
+            String after = four.shardFor(key);
+            if (!before.equals(after)) {
+                assertEquals("redis-6382", after);
+                moved++;
+            }
+        }
+        double share = moved / (double) KEYS;
+        assertTrue(share > 0.18 && share < 0.32, "moved share: " + share);
+    }
+
+    @Test
+    void testOperationsStayOnTheKeyShard() {
+        Map<String, InMemoryIdempotentStore> shards = shards("a", "b", "c");
+        ShardedIdempotentStore store = new ShardedIdempotentStore("sharded", shards);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            keys.add("k" + i);
+        }
+
+        List<IdempotentClaim> claims = store.claimAll(keys, null);
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            store.markCompleted(key, claims.get(i).getOwner(), Duration.ofMinutes(1));
+            assertEquals(IdempotentKeyStateEnum.COMPLETED, shards.get(store.shardFor(key)).lookup(key));
+            assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup(key));
+        }
+    }
+
+    @Test
+    void testShardHealthTracksConsecutiveFailures() {
+        Map<String, IdempotentStore> shards = new HashMap<>();
+        shards.put("up", new InMemoryIdempotentStore("up"));
+        shards.put("down", new InMemoryIdempotentStore("down") {
+            @Override
+            public IdempotentClaim claim(String key, Duration leaseTime) {
+                throw new IllegalStateException("Connection refused: localhost/127.0.0.1:6380");
+            }
+        });
+        ShardedIdempotentStore store = new ShardedIdempotentStore("sharded", shards, 64, 3);
+
+        int failures = 0;
+        for (int i = 0; i < 200; i++) {
+            String key = "k" + i;
+            if (store.shardFor(key).equals("down")) {
+                assertThrows(IllegalStateException.class, () -> store.claim(key, null));
+                failures++;
+            } else {
+                assertTrue(store.claim(key, null).isAcquired());
+            }
+        }
+
+        assertTrue(failures >= 3);
+        for (ShardedIdempotentStore.ShardHealth health : store.health()) {
+            if (health.getName().equals("down")) {
+                assertFalse(health.isHealthy());
+                assertEquals(failures, health.getFailureCount());
+                assertTrue(health.getLastFailure().contains("6380"));
+            } else {
+                assertTrue(health.isHealthy());
+                assertEquals(200 - failures, health.getSuccessCount());
+            }
+        }
+    }
+
+    private static Map<String, InMemoryIdempotentStore> shards(String... names) {
+        Map<String, InMemoryIdempotentStore> shards = new LinkedHashMap<>();
+        for (String name : names) {
+            shards.put(name, new InMemoryIdempotentStore(name));
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,105 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import com.cloudnative.idm.store.SingleFlightIdempotentStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SingleFlightIdempotentStoreTest {
+    private final IdempotentStore remote = spy(new InMemoryIdempotentStore("redis"));
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testConcurrentDuplicatesDoNotReachTheDelegate() throws Exception {
+        SingleFlightIdempotentStore store = new SingleFlightIdempotentStore(remote, Duration.ZERO);
+        IdempotentClaim claim = store.claim("k1", null);
+
+        List<Future<IdempotentClaim>> duplicates = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            duplicates.add(executor.submit(() -> store.claim("k1", null)));
+        }
+        for (Future<IdempotentClaim> duplicate : duplicates) {
+            assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, duplicate.get(5, TimeUnit.SECONDS).getPreviousState());
+        }
+
+        verify(remote, times(1)).claim(anyString(), any());
+        assertEquals(4, store.getCoalescedCount());
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("k1"));
+        store.release("k1", claim.getOwner());
+        assertEquals(0, store.getInFlightCount());
+    }
+
+    @Test
+    void testWaitingDuplicateSharesTheCompletion() throws Exception {
+        SingleFlightIdempotentStore store = new SingleFlightIdempotentStore(remote, Duration.ofSeconds(5));
+        IdempotentClaim claim = store.claim("k1", null);
+
+        Future<IdempotentClaim> duplicate = executor.submit(() -> store.claim("k1", null));
+        CompletableFuture<IdempotentClaim> asyncDuplicate = store.claimAsync("k1", null).toCompletableFuture();
+        awaitCoalesced(store, 2);
+        store.markCompleted("k1", claim.getOwner(), null, new byte[]{1, 2});
+
+        IdempotentClaim shared = duplicate.get(5, TimeUnit.SECONDS);
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, shared.getPreviousState());
+        assertArrayEquals(new byte[]{1, 2}, shared.getResponse());
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, asyncDuplicate.get(5, TimeUnit.SECONDS).getPreviousState());
+        verify(remote, times(1)).claim(anyString(), any());
+    }
+
+    @Test
+    void testReleaseLetsAWaitingDuplicateClaim() throws Exception {
+        SingleFlightIdempotentStore store = new SingleFlightIdempotentStore(remote, Duration.ofSeconds(5));
+        IdempotentClaim claim = store.claim("k1", null);
+
+        Future<IdempotentClaim> duplicate = executor.submit(() -> store.claim("k1", null));
+        awaitCoalesced(store, 1);
+        store.release("k1", claim.getOwner());
+
+        assertTrue(duplicate.get(5, TimeUnit.SECONDS).isAcquired());
+        verify(remote, times(2)).claim(anyString(), any());
+    }
+
+    @Test
+    void testExpiredFlightGoesBackToTheDelegate() throws InterruptedException {
+        SingleFlightIdempotentStore store = new SingleFlightIdempotentStore(remote, Duration.ofSeconds(5));
+        store.claim("k1", Duration.ofMillis(20));
+        Thread.sleep(50);
+
+        assertTrue(store.claim("k1", null).isAcquired());
+        assertEquals(0, store.getCoalescedCount());
+        verify(remote, times(2)).claim(anyString(), any());
+    }
+
+    private static void awaitCoalesced(SingleFlightIdempotentStore store, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (store.getCoalescedCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
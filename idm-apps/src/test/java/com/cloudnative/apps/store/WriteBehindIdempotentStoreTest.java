@@ -0,0 +1,113 @@
+package com.cloudnative.apps.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import com.cloudnative.idm.store.WriteBehindIdempotentStore;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteBehindIdempotentStoreTest {
+
+    @Test
+    void testCompletionWrittenBehind() {
+        InMemoryIdempotentStore delegate = new InMemoryIdempotentStore();
+        try (WriteBehindIdempotentStore store = new WriteBehindIdempotentStore(delegate).start()) {
+            byte[] response = "ok".getBytes(StandardCharsets.UTF_8);
+            IdempotentClaim claim = store.claim("order:1", null);
+            store.markCompleted("order:1", claim.getOwner(), Duration.ofMinutes(1), response);
+            IdempotentClaim duplicate = store.claim("order:1", null);
+            assertEquals(IdempotentKeyStateEnum.COMPLETED, duplicate.getPreviousState());
+            assertArrayEquals(response, duplicate.getResponse());
+            store.flush();
+            assertArrayEquals(response, delegate.claim("order:1", null).getResponse());
+        }
+    }
+
+    @Test
+    void testCompletionsBatchedAndQueueBounded() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger batches = new AtomicInteger();
+        InMemoryIdempotentStore delegate = new InMemoryIdempotentStore() {
+            @Override
+            public boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+                if (Thread.currentThread().getName().startsWith("idempotent-write-behind")) {
+                    writing.countDown();
+                    try {
+                        gate.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.markCompleted(key, owner, retention, response);
+            }
+
+            @Override
+            public void markAllCompleted(List<String> keys, List<String> owners, Duration retention) {
+                batches.incrementAndGet();
+                super.markAllCompleted(keys, owners, retention);
+            }
+        };
+        try (WriteBehindIdempotentStore store = new WriteBehindIdempotentStore("behind", delegate, 4, 16).start()) {
+            store.markCompleted("first", store.claim("first", null).getOwner(), null, new byte[]{1});
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 6; i++) {
+                store.markCompleted("key:" + i, store.claim("key:" + i, null).getOwner(), null);
+            }
+            assertEquals(4, store.getQueuedCount());
+            assertEquals(2, store.getSynchronousCount());
+            assertEquals(IdempotentKeyStateEnum.COMPLETED, delegate.lookup("key:5"));
+            assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, delegate.lookup("key:0"));
+            assertEquals(IdempotentKeyStateEnum.COMPLETED, store.lookup("key:0"));
+            gate.countDown();
+        }
+        assertEquals(1, batches.get());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(IdempotentKeyStateEnum.COMPLETED, delegate.lookup("key:" + i));
+        }
+    }
+
+    @Test
+    void testFailedWriteLeavesKeyInProgress() {
+        InMemoryIdempotentStore delegate = new InMemoryIdempotentStore() {
+            @Override
+            public boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+                throw new IllegalStateException("store down");
+            }
+        };
+        WriteBehindIdempotentStore store = new WriteBehindIdempotentStore(delegate).start();
+        IdempotentClaim claim = store.claim("order:1", Duration.ofMinutes(1));
+        store.markCompleted("order:1", claim.getOwner(), null, new byte[]{1});
+        store.close();
+        assertEquals(1, store.getFailedCount());
+        assertEquals(0, store.getWrittenCount());
+        assertEquals(IdempotentKeyStateEnum.IN_PROGRESS, store.lookup("order:1"));
+        assertFalse(store.claim("order:1", null).isAcquired());
+    }
+
+    @Test
+    void testCompletionsWrittenSynchronouslyUntilStarted() {
+        InMemoryIdempotentStore delegate = new InMemoryIdempotentStore();
+        WriteBehindIdempotentStore store = new WriteBehindIdempotentStore(delegate);
+        IdempotentClaim claim = store.claim("order:1", null);
+
+        assertTrue(store.markCompleted("order:1", claim.getOwner(), null));
+        assertEquals(1, store.getSynchronousCount());
+        assertEquals(IdempotentKeyStateEnum.COMPLETED, delegate.lookup("order:1"));
+        store.close();
+        assertThrows(IllegalStateException.class, store::start);
+    }
+}
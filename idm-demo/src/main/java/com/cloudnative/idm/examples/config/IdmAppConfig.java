@@ -3,32 +3,126 @@ package com.cloudnative.idm.examples.config;
 import com.cloudnative.apps.http.IdempotentParamExecuteHandler;
 import com.cloudnative.apps.http.IdempotentSpELExecuteHandler;
 import com.cloudnative.apps.http.IdempotentTokenExecuteHandler;
+import com.cloudnative.apps.mq.IdempotentMQBatchService;
+import com.cloudnative.apps.mq.IdempotentSpELMQExecuteHandler;
+import com.cloudnative.apps.replay.JsonbResponseCodec;
+import com.cloudnative.apps.store.RedisSetNxIdempotentStore;
+import com.cloudnative.apps.store.RedissonLockIdempotentStore;
 import com.cloudnative.idm.aspect.IdempotentAspect;
+import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlanResolver;
 import com.cloudnative.idm.context.ApplicationContextHolder;
+import com.cloudnative.idm.enums.IdempotentClaimModeEnum;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+import com.cloudnative.idm.factory.IdempotentExecuteHandlerRegistry;
+import com.cloudnative.idm.key.IdempotentTokenSigner;
+import com.cloudnative.idm.store.IdempotentStore;
+import com.cloudnative.idm.store.IdempotentStoreRegistry;
+import com.cloudnative.idm.store.InMemoryIdempotentStore;
+import com.cloudnative.idm.store.WriteBehindIdempotentStore;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.List;
+
 @Configuration
 public class IdmAppConfig {
     @Bean
-    public IdempotentParamExecuteHandler idempotentParamExecuteHandler(RedissonClient redisClient) {
-        return new IdempotentParamExecuteHandler(redisClient);
+    public RedissonLockIdempotentStore redissonLockIdempotentStore(RedissonClient redissonClient) {
+        return new RedissonLockIdempotentStore(redissonClient);
+    }
+
+    @Bean
+    public RedisSetNxIdempotentStore redisSetNxIdempotentStore(RedissonClient redissonClient) {
+        return new RedisSetNxIdempotentStore(redissonClient);
+    }
+
+    /**
+     * Opt-in: selected with {@code @Idempotent(store = "redis-setnx-write-behind")}. The
+     * writer thread runs between start and close, so queued completions are flushed on
+     * shutdown.
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public WriteBehindIdempotentStore writeBehindIdempotentStore(RedisSetNxIdempotentStore store) {
+        return new WriteBehindIdempotentStore(RedisSetNxIdempotentStore.NAME + "-write-behind", store,
+                WriteBehindIdempotentStore.DEFAULT_QUEUE_CAPACITY, WriteBehindIdempotentStore.DEFAULT_BATCH_SIZE);
+    }
+
+    @Bean
+    public InMemoryIdempotentStore inMemoryIdempotentStore() {
+        return new InMemoryIdempotentStore();
+    }
+
+    @Bean
+    public IdempotentStoreRegistry idempotentStoreRegistry(List<IdempotentStore> stores) {
+        return new IdempotentStoreRegistry(stores)
+                .setDefaultStore(RedissonLockIdempotentStore.NAME)
+                .setSceneDefault(IdempotentSceneEnum.MQ, RedisSetNxIdempotentStore.NAME)
+                .setClaimModeStore(IdempotentClaimModeEnum.LOCK, RedissonLockIdempotentStore.NAME)
+                .setClaimModeStore(IdempotentClaimModeEnum.SET_NX, RedisSetNxIdempotentStore.NAME);
+    }
+
+    @Bean
+    public IdempotentParamExecuteHandler idempotentParamExecuteHandler(RedissonLockIdempotentStore store) {
+        return new IdempotentParamExecuteHandler(store);
+    }
+
+    @Bean
+    public IdempotentSpELExecuteHandler idempotentSpELExecuteHandler(RedissonLockIdempotentStore store) {
+        IdempotentSpELExecuteHandler handler = new IdempotentSpELExecuteHandler(store);
+        handler.setResponseCodec(new JsonbResponseCodec());
+        return handler;
+    }
+
+    /**
+     * Every node must share {@code idempotent.token.secret}, without it a random secret
+     * is drawn and tokens are only accepted by the node that issued them.
+     */
+    @Bean
+    public IdempotentTokenSigner idempotentTokenSigner(@Value("${idempotent.token.secret:}") String secret) {
+        byte[] key = secret.getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0) {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        }
+        return new IdempotentTokenSigner(key, Duration.ofMinutes(15));
+    }
+
+    @Bean
+    public IdempotentTokenExecuteHandler idempotentTokenExecuteHandler(RedissonLockIdempotentStore store,
+                                                                       IdempotentTokenSigner signer) {
+        return new IdempotentTokenExecuteHandler(store, signer);
+    }
+
+    @Bean
+    public IdempotentSpELMQExecuteHandler idempotentSpELMQExecuteHandler(RedisSetNxIdempotentStore store) {
+        return new IdempotentSpELMQExecuteHandler(store);
+    }
+
+    @Bean
+    public IdempotentMQBatchService idempotentMQBatchService(RedisSetNxIdempotentStore store) {
+        return new IdempotentMQBatchService(store);
     }
 
     @Bean
-    public IdempotentSpELExecuteHandler idempotentSpELExecuteHandler(RedissonClient redissonClient) {
-        return new IdempotentSpELExecuteHandler(redissonClient);
+    public IdempotentExecuteHandlerRegistry idempotentExecuteHandlerRegistry(List<IdempotentExecuteHandler> handlers) {
+        return new IdempotentExecuteHandlerRegistry(handlers);
     }
 
     @Bean
-    public IdempotentTokenExecuteHandler idempotentTokenExecuteHandler(RedissonClient redissonClient) {
-        return new IdempotentTokenExecuteHandler(redissonClient);
+    public IdempotentMethodPlanResolver idempotentMethodPlanResolver(IdempotentExecuteHandlerRegistry handlerRegistry,
+                                                                     IdempotentStoreRegistry storeRegistry) {
+        return new IdempotentMethodPlanResolver(handlerRegistry, storeRegistry);
     }
 
     @Bean
-    public IdempotentAspect idempotentAspect() {
-        return new IdempotentAspect();
+    public IdempotentAspect idempotentAspect(IdempotentMethodPlanResolver planResolver) {
+        return new IdempotentAspect(planResolver);
     }
 
     @Bean
@@ -1,9 +1,12 @@
 package com.cloudnative.idm.examples.controller;
 
 import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.enums.IdempotentClaimModeEnum;
 import com.cloudnative.idm.enums.IdempotentSceneEnum;
 import com.cloudnative.idm.enums.IdempotentTypeEnum;
 import com.cloudnative.idm.examples.dto.OrderRequestDTO;
+import com.cloudnative.idm.service.IdempotentTokenService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -13,6 +16,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 /**
  * Demostrates multiple HTTP idempotency strategies.
  * - Param-based
@@ -21,8 +26,11 @@ import org.springframework.web.bind.annotation.RestController;
  */
 @Slf4j
 @RestController
+@RequiredArgsConstructor
 @RequestMapping("/idempotent/v1/http")
 public class IdempotentHttpController {
+    private final IdempotentTokenService tokenService;
+
     /**
      * Idempotency via HTTP parameter (`userId`)
      *
@@ -41,20 +49,33 @@ public class IdempotentHttpController {
     }
 
     /**
-     * Idempotency via Token in header or param (e.g., X-Idempotency-Token)
+     * Issue tokens for the token-based endpoint, one per form to submit
+     *
+     * Test cmd:
+     * curl -X POST "http://localhost:8080/idempotent/v1/http/tokens?count=2"
+     */
+    @PostMapping("/tokens")
+    public List<String> issueTokens(@RequestParam(value = "count", defaultValue = "1") int count) {
+        return tokenService.issueTokens(count);
+    }
+
+    /**
+     * Idempotency via a token issued by {@code /tokens}, sent in the Idempotency-Key header;
+     * unknown or expired tokens are refused
      *
      * Test cmd:
      * curl -X POST "http://localhost:8080/idempotent/v1/http/token" \
-     *   -H "X-Idempotency-Token: abc123" \
+     *   -H "Idempotency-Key: <token>" \
      *   -H "Content-Type: application/json"
      */
     @PostMapping("/token")
     @Idempotent(
             scene = IdempotentSceneEnum.HTTP,
             type = IdempotentTypeEnum.TOKEN,
+            claimMode = IdempotentClaimModeEnum.SET_NX,
             message = "Duplicate submission detected by token"
     )
-    public String tokenBased(@RequestHeader(value = "X-Idempotency-Token", required = false) String token) {
+    public String tokenBased(@RequestHeader(value = "Idempotency-Key", required = false) String token) {
         log.info("Processing token-based idempotent request with token={}", token);
         return "Handled via token";
     }
@@ -81,7 +102,8 @@ public class IdempotentHttpController {
     }
 
     /**
-     * Idempotency via composite SpEL key (e.g., orderId + userId)
+     * Idempotency via composite SpEL key (e.g., orderId + userId), a retry gets the
+     * response of the first request back instead of an error
      *
      * Test cmd:
      * curl -X POST "http://localhost:8080/idempotent/v1/http/spel/composite" \
@@ -93,6 +115,8 @@ public class IdempotentHttpController {
             scene = IdempotentSceneEnum.HTTP,
             type = IdempotentTypeEnum.SPEL,
             key = "#order.orderId + '_' + #order.userId",
+            claimMode = IdempotentClaimModeEnum.SET_NX,
+            replay = true,
             message = "Duplicate compose order request"
     )
     public String spelComposite(@RequestBody OrderRequestDTO order) {
@@ -2,18 +2,29 @@ package com.cloudnative.idm.aspect;
 
 import com.cloudnative.idm.annotation.Idempotent;
 import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
-import com.cloudnative.idm.context.IdempotentContext;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlanResolver;
+import com.cloudnative.idm.aspect.reactive.ReactiveIdempotentSupport;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
 import com.cloudnative.idm.exception.RepeatConsumptionException;
-import com.cloudnative.idm.factory.IdempotentExecuteHandlerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.reflect.MethodSignature;
 
-import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
+@Slf4j
 @Aspect
+@RequiredArgsConstructor
 public class IdempotentAspect {
+    /**
+     * Per-method plans, resolved once and reused by every later call.
+     */
+    private final IdempotentMethodPlanResolver planResolver;
+
     /**
      * Idempotency AOP executor. Executes business logic by scanning for the
      * {@link Idempotent} annotation.
@@ -23,15 +34,29 @@ public class IdempotentAspect {
      * Intercepts and processes methods annotated with {@link Idempotent}.
      */
     public Object idempotentHandler(ProceedingJoinPoint joinPoint) throws Throwable {
-        Idempotent idempotent = getIdempotent(joinPoint);
-        IdempotentExecuteHandler instance =
-                IdempotentExecuteHandlerFactory.getInstance(idempotent.scene(),
-                        idempotent.type());
+        IdempotentMethodPlan plan = planResolver.resolve(joinPoint);
+        IdempotentExecuteHandler instance = plan.getHandler();
+        IdempotentInvocationContext context = new IdempotentInvocationContext(plan, joinPoint);
+        if (plan.getReturnKind() == IdempotentMethodPlan.ReturnKind.REACTIVE) {
+            // Claim and completion are driven by the subscription of the returned publisher
+            return ReactiveIdempotentSupport.invoke(context);
+        }
         Object retObj;
         try {
-            instance.execute(joinPoint, idempotent);
+            instance.execute(context);
+            if (context.isReplayed()) {
+                return plan.getReturnKind() == IdempotentMethodPlan.ReturnKind.COMPLETION_STAGE
+                        ? CompletableFuture.completedFuture(context.getResult()) : context.getResult();
+            }
             retObj = joinPoint.proceed();
-            instance.postProcessing();
+            if (plan.getReturnKind() == IdempotentMethodPlan.ReturnKind.COMPLETION_STAGE
+                    && retObj != null) {
+                // Keep the claim until the returned stage completes
+                return whenStageComplete(context, instance, (CompletionStage<?>) retObj,
+                        plan.getMethod().getReturnType());
+            }
+            context.recordResult(retObj);
+            completed(context, instance);
         } catch (RepeatConsumptionException ex) {
             /**
              * Two scenarios when idempotency is triggered:
@@ -47,24 +72,48 @@ public class IdempotentAspect {
         } catch (Throwable ex) {
             // An exception occurred during message processing.
             // Clear the idempotency marker to allow RocketMQ to retry via the retry queue.
-            instance.exceptionProcessing();
+            if (context.finish(IdempotentInvocationContext.State.FAILED)) {
+                instance.exceptionProcessing(context);
+            }
             throw ex;
-        } finally {
-            // Clear the thread-local context for idempotency context
-            IdempotentContext.clean();
         }
 
         return retObj;
     }
 
     /**
-     * Retrieves the {@link Idempotent} annotation from the target method.
+     * Success processing of a call that returned normally. The call has succeeded whatever
+     * happens here, so a failing store only leaves the key to expire with its lease.
      */
-    public static Idempotent getIdempotent(ProceedingJoinPoint joinPoint) throws NoSuchMethodException {
-        MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-        Method targetMethod =
-                joinPoint.getTarget().getClass().getDeclaredMethod(methodSignature.getName(),
-                        methodSignature.getMethod().getParameterTypes());
-        return targetMethod.getAnnotation(Idempotent.class);
+    private static void completed(IdempotentInvocationContext context, IdempotentExecuteHandler instance) {
+        if (!context.finish(IdempotentInvocationContext.State.COMPLETED)) {
+            return;
+        }
+        try {
+            instance.postProcessing(context);
+        } catch (RuntimeException ex) {
+            log.warn("Post-processing of idempotent key [{}] failed, leaving it to its lease",
+                    context.getLockKey(), ex);
+        }
+    }
+
+    /**
+     * Run success or failure processing in the completion callback of an async result,
+     * without blocking the calling thread.
+     */
+    private static Object whenStageComplete(IdempotentInvocationContext context,
+                                            IdempotentExecuteHandler instance,
+                                            CompletionStage<?> stage, Class<?> returnType) {
+        CompletionStage<?> completion = stage.whenComplete((ret, ex) -> {
+            if (ex == null) {
+                context.recordResult(ret);
+                completed(context, instance);
+            } else if (context.finish(IdempotentInvocationContext.State.FAILED)) {
+                instance.exceptionProcessing(context);
+            }
+        });
+        // Hand out the dependent stage so callers observe completion only after the
+        // idempotency processing, unless it does not fit the declared return type.
+        return returnType.isInstance(completion) ? completion : stage;
     }
 }
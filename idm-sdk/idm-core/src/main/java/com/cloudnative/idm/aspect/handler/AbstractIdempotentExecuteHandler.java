@@ -1,39 +1,98 @@
 package com.cloudnative.idm.aspect.handler;
 
-import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
 import com.cloudnative.idm.aspect.wrapper.AbstractIdempotentWrapper;
-import com.cloudnative.idm.aspect.wrapper.IdempotentParamWrapper;
-import org.aspectj.lang.ProceedingJoinPoint;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.key.IdempotentKeyTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * Abstract class for idempotent execute handler.
  */
 public abstract class AbstractIdempotentExecuteHandler implements IdempotentExecuteHandler {
+    public static final String ANONYMOUS = "anonymous";
+
     /**
      * Construct parameter wrapper instance required during idempotent verification.
      *
-     * @param joinPoint AOP method processor
+     * @param context per-invocation context, carries the join point and the cached plan
      * @return idempotent parameter wrapper
      */
-    public abstract AbstractIdempotentWrapper buildWrapper(ProceedingJoinPoint joinPoint);
+    public abstract AbstractIdempotentWrapper buildWrapper(IdempotentInvocationContext context);
 
     /**
      * Idempotent execute entry point.
      *
-     * @param joinPoint  AOP join point instance.
-     * @param idempotent idempotent annotation
+     * @param context per-invocation context
+     */
+    public void execute(IdempotentInvocationContext context) {
+        handler(prepareWrapper(context));
+    }
+
+    /**
+     * Non-blocking idempotent execute entry point.
+     *
+     * @param context per-invocation context
+     * @return stage completed once the key is claimed
      */
-    public void execute(ProceedingJoinPoint joinPoint, Idempotent idempotent) {
-        AbstractIdempotentWrapper idempotentParamWrapper =
-                buildWrapper(joinPoint).setIdempotent(idempotent);
-        handler(idempotentParamWrapper);
+    @Override
+    public CompletionStage<Void> executeAsync(IdempotentInvocationContext context) {
+        AbstractIdempotentWrapper idempotentParamWrapper;
+        try {
+            idempotentParamWrapper = prepareWrapper(context);
+        } catch (Throwable ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return handlerAsync(idempotentParamWrapper);
     }
 
+    /**
+     * Non-blocking variant of {@link #handler}, the default runs it inline.
+     *
+     * @param wrapper encapsulated method context
+     * @return stage completed once the key is claimed
+     */
+    protected CompletionStage<Void> handlerAsync(AbstractIdempotentWrapper wrapper) {
+        try {
+            handler(wrapper);
+            return CompletableFuture.completedFuture(null);
+        } catch (Throwable ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
 
-    protected String getCurrentUserId() {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        return (auth == null || !auth.isAuthenticated()) ? "anonymous" : auth.getName();
+    private AbstractIdempotentWrapper prepareWrapper(IdempotentInvocationContext context) {
+        return buildWrapper(context)
+                .setIdempotent(context.getPlan().getIdempotent())
+                .setPlan(context.getPlan())
+                .setContext(context);
+    }
+
+    /**
+     * Lock key template of a plan, compiled on the fly for plans built without one.
+     */
+    protected IdempotentKeyTemplate lockKeyTemplate(IdempotentMethodPlan plan) {
+        IdempotentKeyTemplate template = plan.getLockKeyTemplate();
+        return template != null ? template : createLockKeyTemplate(plan.getIdempotent());
+    }
+
+    /**
+     * Caller identity of an invocation, resolved beforehand for reactive invocations and
+     * read from the thread-bound security context otherwise.
+     */
+    protected String getCurrentUserId(IdempotentInvocationContext context) {
+        String userId = context.getUserId();
+        return userId != null ? userId : userIdOf(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    /**
+     * Name of an authenticated principal, {@value #ANONYMOUS} otherwise.
+     */
+    public static String userIdOf(Authentication auth) {
+        return (auth == null || !auth.isAuthenticated()) ? ANONYMOUS : auth.getName();
     }
 }
@@ -0,0 +1,178 @@
+package com.cloudnative.idm.aspect.handler;
+
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
+import com.cloudnative.idm.aspect.wrapper.AbstractIdempotentWrapper;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.exception.IdempotentInProgressException;
+import com.cloudnative.idm.replay.IdempotentResponseCodec;
+import com.cloudnative.idm.store.IdempotentClaim;
+import com.cloudnative.idm.store.IdempotentStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Handler claiming the wrapper lock key in an {@link IdempotentStore}.
+ *
+ * <p>
+ * The store comes from the method plan when one was resolved for the method's scene or
+ * {@code @Idempotent#store()}, otherwise the handler's default store is used. Subclasses
+ * only decide how the key is built.
+ * </p>
+ *
+ * <p>
+ * Claims are taken for the lease time of the plan and never renewed. A successful call
+ * turns its claim into a completed marker kept for {@code @Idempotent#keyTimeout()}, or
+ * releases it when that is 0; a failed call releases it right away so the request can be
+ * retried.
+ * </p>
+ *
+ * <p>
+ * Methods with {@code @Idempotent#replay()} store their encoded response with the completed
+ * marker, and duplicates get it back without running the method. A response the codec
+ * cannot encode is left out, the same way the codec leaves out oversized ones.
+ * </p>
+ */
+@Slf4j
+public abstract class AbstractStoreIdempotentExecuteHandler extends AbstractIdempotentExecuteHandler {
+    private final IdempotentStore defaultStore;
+
+    private volatile IdempotentResponseCodec responseCodec;
+
+    protected AbstractStoreIdempotentExecuteHandler(IdempotentStore defaultStore) {
+        this.defaultStore = defaultStore;
+    }
+
+    @Override
+    public void handler(AbstractIdempotentWrapper wrapper) {
+        String lockKey = wrapper.getLockKey();
+        IdempotentStore store = resolveStore(wrapper.getPlan());
+        IdempotentClaim claim = store.claim(lockKey, leaseTime(wrapper.getPlan()));
+        if (!claim.isAcquired()) {
+            rejected(wrapper, claim);
+            return;
+        }
+        wrapper.getContext().claimed(lockKey, store, claim.getOwner());
+    }
+
+    @Override
+    protected CompletionStage<Void> handlerAsync(AbstractIdempotentWrapper wrapper) {
+        String lockKey = wrapper.getLockKey();
+        IdempotentStore store = resolveStore(wrapper.getPlan());
+        return store.claimAsync(lockKey, leaseTime(wrapper.getPlan())).thenAccept(claim -> {
+            if (!claim.isAcquired()) {
+                rejected(wrapper, claim);
+                return;
+            }
+            wrapper.getContext().claimed(lockKey, store, claim.getOwner());
+        });
+    }
+
+    @Override
+    public void postProcessing(IdempotentInvocationContext context) {
+        IdempotentStore store = context.getStore();
+        if (store == null) {
+            return;
+        }
+        Duration keepAfterSuccess = keepAfterSuccess(context.getPlan());
+        if (keepAfterSuccess != null && keepAfterSuccess.isZero()) {
+            store.release(context.getLockKey(), context.getOwner());
+        } else if (isReplay(context.getPlan())) {
+            store.markCompleted(context.getLockKey(), context.getOwner(), keepAfterSuccess,
+                    encodeResponse(context));
+        } else {
+            store.markCompleted(context.getLockKey(), context.getOwner(), keepAfterSuccess);
+        }
+    }
+
+    @Override
+    public void exceptionProcessing(IdempotentInvocationContext context) {
+        // Duplicates fail before claiming anything, there is nothing of theirs to release
+        IdempotentStore store = context.getStore();
+        if (store != null) {
+            store.release(context.getLockKey(), context.getOwner());
+        }
+    }
+
+    /**
+     * Answer a duplicate: replay the stored response when the method asks for it and one
+     * exists, fail fast while the original is in progress, fail otherwise.
+     */
+    private void rejected(AbstractIdempotentWrapper wrapper, IdempotentClaim claim) {
+        IdempotentMethodPlan plan = wrapper.getPlan();
+        if (isReplay(plan)) {
+            if (claim.getPreviousState() == IdempotentKeyStateEnum.COMPLETED && claim.getResponse() != null) {
+                wrapper.getContext().replayed(responseCodec.decode(claim.getResponse(), plan.getResponseType()));
+                return;
+            }
+            if (claim.getPreviousState() == IdempotentKeyStateEnum.IN_PROGRESS) {
+                throw new IdempotentInProgressException(wrapper.getIdempotent().message());
+            }
+        }
+        throw duplicateException(wrapper, claim);
+    }
+
+    private byte[] encodeResponse(IdempotentInvocationContext context) {
+        try {
+            return responseCodec.encode(context.getResult());
+        } catch (RuntimeException ex) {
+            log.warn("Response of idempotent key [{}] cannot be encoded, completing without it",
+                    context.getLockKey(), ex);
+            return null;
+        }
+    }
+
+    private boolean isReplay(IdempotentMethodPlan plan) {
+        return responseCodec != null && plan != null && plan.isReplay();
+    }
+
+    /**
+     * Exception thrown for a duplicate, i.e. a rejected claim.
+     *
+     * @param wrapper the duplicate invocation
+     * @param claim   the rejected claim, carrying the current state of the key
+     */
+    protected RuntimeException duplicateException(AbstractIdempotentWrapper wrapper, IdempotentClaim claim) {
+        return new RuntimeException(wrapper.getIdempotent().message());
+    }
+
+    /**
+     * Store of a plan, the default store for plans without one.
+     */
+    protected IdempotentStore resolveStore(IdempotentMethodPlan plan) {
+        IdempotentStore store = plan != null ? plan.getStore() : null;
+        return store != null ? store : defaultStore;
+    }
+
+    /**
+     * Lease of the claim, null keeps the store default.
+     */
+    protected Duration leaseTime(IdempotentMethodPlan plan) {
+        return plan != null ? plan.getLeaseTime() : null;
+    }
+
+    /**
+     * Retention of a completed key, zero to release it, null keeps the store default.
+     */
+    protected Duration keepAfterSuccess(IdempotentMethodPlan plan) {
+        return plan != null ? plan.getKeepAfterSuccess() : null;
+    }
+
+    public IdempotentStore getDefaultStore() {
+        return defaultStore;
+    }
+
+    /**
+     * Codec of the responses replayed to duplicates, without one {@code @Idempotent#replay()}
+     * is ignored and duplicates fail as usual.
+     */
+    public IdempotentResponseCodec getResponseCodec() {
+        return responseCodec;
+    }
+
+    public void setResponseCodec(IdempotentResponseCodec responseCodec) {
+        this.responseCodec = responseCodec;
+    }
+}
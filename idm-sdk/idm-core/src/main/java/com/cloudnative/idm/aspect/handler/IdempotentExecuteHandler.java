@@ -2,9 +2,16 @@ package com.cloudnative.idm.aspect.handler;
 
 import com.cloudnative.idm.annotation.Idempotent;
 import com.cloudnative.idm.aspect.wrapper.AbstractIdempotentWrapper;
-import com.cloudnative.idm.aspect.wrapper.IdempotentParamWrapper;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.key.IdempotentKeyTemplate;
 import org.aspectj.lang.ProceedingJoinPoint;
 
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * Idempotent execution handler interface.
  *
@@ -19,6 +26,38 @@ import org.aspectj.lang.ProceedingJoinPoint;
  * </p>
  */
 public interface IdempotentExecuteHandler {
+    /**
+     * Idempotency scenario served by this handler.
+     * <p>
+     * Together with {@link #types()} this decides under which slots the handler is
+     * registered in the {@code IdempotentExecuteHandlerRegistry} at startup.
+     * </p>
+     *
+     * @return the scene this handler is registered for
+     */
+    IdempotentSceneEnum scene();
+
+    /**
+     * Idempotency types served by this handler within its {@link #scene()}.
+     *
+     * @return the types this handler is registered for, never empty
+     */
+    Set<IdempotentTypeEnum> types();
+
+    /**
+     * Precompile the lock key template of an annotated method.
+     * <p>
+     * Called once per method when its plan is built, the result is cached in the plan so
+     * that building a key on the request path only appends its parts.
+     * </p>
+     *
+     * @param idempotent the resolved annotation, may be null for hand-built plans
+     * @return the template, or null if this handler does not build keys from a template
+     */
+    default IdempotentKeyTemplate createLockKeyTemplate(Idempotent idempotent) {
+        return null;
+    }
+
     /**
      * Main handler for idempotent processing, invoked by the AOP layer.
      * <p>
@@ -52,11 +91,30 @@ public interface IdempotentExecuteHandler {
      *     </ul>
      * </p>
      *
-     * @param joinPoint  the AOP method entry point, allows proceeding with original method.
-     * @param idempotent the @Idempotent annotation instance extracted from the intercepted
-     *                   method.
+     * @param context the per-invocation context, carries the join point, the cached
+     *                idempotency plan and receives the claimed key and lock handle.
      */
-    void execute(ProceedingJoinPoint joinPoint, Idempotent idempotent);
+    void execute(IdempotentInvocationContext context);
+
+    /**
+     * Non-blocking variant of {@link #execute}, used for reactive methods.
+     * <p>
+     * The returned stage completes once the key is claimed, or completes exceptionally when
+     * the request is a duplicate. Implementations backed by a remote store should override
+     * it with the store's asynchronous API; the default runs {@link #execute} inline.
+     * </p>
+     *
+     * @param context the per-invocation context
+     * @return stage completed when the idempotency preconditions are satisfied
+     */
+    default CompletionStage<Void> executeAsync(IdempotentInvocationContext context) {
+        try {
+            execute(context);
+            return CompletableFuture.completedFuture(null);
+        } catch (Throwable ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
 
     /**
      * Optional exception processing hook.
@@ -66,8 +124,10 @@ public interface IdempotentExecuteHandler {
      * failure, DB error), and can be used to log, alert, rollback state, or clean up
      * temporary Redis entries if needed.
      * </p>
+     *
+     * @param context the per-invocation context passed to {@link #execute}
      */
-    default void exceptionProcessing() {
+    default void exceptionProcessing(IdempotentInvocationContext context) {
         // Optional: Implement if rollback or alerting is required
     }
 
@@ -80,8 +140,10 @@ public interface IdempotentExecuteHandler {
      *     <li>Metrics reporting</li>
      * </ul>
      * </p>
+     *
+     * @param context the per-invocation context passed to {@link #execute}
      */
-    default void postProcessing() {
+    default void postProcessing(IdempotentInvocationContext context) {
         // Optional: Implement for clean-up or monitoring logic
     }
 }
@@ -0,0 +1,176 @@
+package com.cloudnative.idm.aspect.plan;
+
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
+import com.cloudnative.idm.enums.IdempotentFingerprintEnum;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.key.IdempotentKeyExtractor;
+import com.cloudnative.idm.key.IdempotentKeyTemplate;
+import com.cloudnative.idm.store.IdempotentStore;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.time.Duration;
+
+/**
+ * Immutable, per-method idempotency plan.
+ *
+ * <p>
+ * Everything the aspect and the handlers need to know about an {@link Idempotent} method
+ * that does not depend on the actual invocation arguments: the resolved annotation, the
+ * handler it dispatches to, the key template, the parameter names and the TTLs.
+ * A plan is built once by {@link IdempotentMethodPlanResolver} and reused by every later
+ * call of the same method, so no reflection happens on the request path.
+ * </p>
+ */
+@Getter
+@Builder
+public final class IdempotentMethodPlan {
+    /**
+     * The most specific (target class) method carrying the annotation.
+     */
+    private final Method method;
+
+    /**
+     * Resolved idempotent annotation.
+     */
+    private final Idempotent idempotent;
+
+    /**
+     * Handler resolved for {@link #scene} and {@link #type}.
+     */
+    private final IdempotentExecuteHandler handler;
+
+    /**
+     * Idempotency scenario, copied from {@link Idempotent#scene()}.
+     */
+    private final IdempotentSceneEnum scene;
+
+    /**
+     * Idempotency type, copied from {@link Idempotent#type()}.
+     */
+    private final IdempotentTypeEnum type;
+
+    /**
+     * Raw key template, copied from {@link Idempotent#key()}.
+     */
+    private final String keyTemplate;
+
+    /**
+     * Pre-parsed extractor of {@link #keyTemplate}, only set for
+     * {@link IdempotentTypeEnum#SPEL}.
+     */
+    private final IdempotentKeyExtractor keyExtractor;
+
+    /**
+     * Store resolved for {@link Idempotent#store()} or the scene default, null to let the
+     * handler use its own default store.
+     */
+    private final IdempotentStore store;
+
+    /**
+     * Lock key template precompiled by {@link #handler}, null if it does not use one.
+     */
+    private final IdempotentKeyTemplate lockKeyTemplate;
+
+    /**
+     * Argument fingerprint algorithm, copied from {@link Idempotent#fingerprint()}.
+     */
+    private final IdempotentFingerprintEnum fingerprint;
+
+    /**
+     * Unique key prefix, copied from {@link Idempotent#uniqueKeyPrefix()}.
+     */
+    private final String uniqueKeyPrefix;
+
+    /**
+     * Method parameter names, discovered once. Must not be modified by callers.
+     */
+    private final String[] parameterNames;
+
+    /**
+     * Indexes of the arguments taking part in {@link IdempotentTypeEnum#PARAM} keys, or
+     * {@code null} when all of them do. Parameters annotated with
+     * {@link com.cloudnative.idm.annotation.IdempotentIgnore} are left out.
+     */
+    private final int[] keyArgumentIndexes;
+
+    /**
+     * Key expiration time in seconds, copied from {@link Idempotent#keyTimeout()}.
+     */
+    private final long keyTimeout;
+
+    /**
+     * Lease of the claim, from {@link Idempotent#leaseTime()}.
+     */
+    private final Duration leaseTime;
+
+    /**
+     * How long a completed key is kept, from {@link Idempotent#keyTimeout()};
+     * {@link Duration#ZERO} releases it on success.
+     */
+    private final Duration keepAfterSuccess;
+
+    /**
+     * Error message returned for duplicates, copied from {@link Idempotent#message()}.
+     */
+    private final String message;
+
+    /**
+     * How the result of the method signals completion, decided from its return type.
+     */
+    private final ReturnKind returnKind;
+
+    /**
+     * Whether responses are replayed to duplicates, copied from {@link Idempotent#replay()}.
+     */
+    private final boolean replay;
+
+    /**
+     * Type of the replayed response: the generic return type, or the value type of a
+     * {@code CompletionStage}. Only set when {@link #replay} is.
+     */
+    private final Type responseType;
+
+    /**
+     * Select the arguments taking part in the key.
+     *
+     * @param args the invocation arguments
+     * @return {@code args} itself when no parameter is ignored, a compacted copy otherwise
+     */
+    public Object[] keyArguments(Object[] args) {
+        if (keyArgumentIndexes == null) {
+            return args;
+        }
+        Object[] selected = new Object[keyArgumentIndexes.length];
+        for (int i = 0; i < keyArgumentIndexes.length; i++) {
+            selected[i] = args[keyArgumentIndexes[i]];
+        }
+        return selected;
+    }
+
+    /**
+     * Completion model of an idempotent method, decides when the claim is finished.
+     */
+    public enum ReturnKind {
+        /**
+         * The method is done when it returns.
+         */
+        SYNC,
+
+        /**
+         * The method returns a {@code CompletionStage} (e.g. {@code CompletableFuture}) and
+         * is done when the stage completes.
+         */
+        COMPLETION_STAGE,
+
+        /**
+         * The method returns a reactive-streams {@code Publisher} ({@code Mono}, {@code Flux}
+         * or a plain {@code Publisher}) and is done on its terminal signal.
+         */
+        REACTIVE
+    }
+}
@@ -0,0 +1,238 @@
+package com.cloudnative.idm.aspect.plan;
+
+import cn.hutool.core.util.StrUtil;
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.annotation.IdempotentIgnore;
+import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
+import com.cloudnative.idm.aspect.reactive.ReactiveIdempotentSupport;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.factory.IdempotentExecuteHandlerRegistry;
+import com.cloudnative.idm.key.GeneratedKeyExtractors;
+import com.cloudnative.idm.key.IdempotentKeyExtractor;
+import com.cloudnative.idm.key.SpelKeyExtractor;
+import com.cloudnative.idm.store.IdempotentStoreRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves and caches {@link IdempotentMethodPlan} instances.
+ *
+ * <p>
+ * Plans are keyed by the intercepted method together with the target class, the same way
+ * Spring caches its own annotation metadata, so that an interface method implemented by
+ * several beans gets one plan per implementation.
+ * </p>
+ *
+ * <p>
+ * Once all singletons are instantiated, the plans of every {@link Idempotent} method found
+ * on a bean are built eagerly, so an annotation whose scene/type has no registered
+ * handler, or whose SpEL key does not parse, fails the application startup instead of the
+ * first request.
+ * </p>
+ */
+public class IdempotentMethodPlanResolver implements SmartInitializingSingleton,
+        ApplicationContextAware {
+    private final IdempotentExecuteHandlerRegistry handlerRegistry;
+
+    /**
+     * Stores selectable per scene or annotation, null when handlers use their own store.
+     */
+    private final IdempotentStoreRegistry storeRegistry;
+
+    private final Map<MethodClassKey, IdempotentMethodPlan> planCache =
+            new ConcurrentHashMap<>(64);
+
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent(
+            "reactor.core.publisher.Mono", IdempotentMethodPlanResolver.class.getClassLoader());
+
+    private final ParameterNameDiscoverer parameterNameDiscoverer =
+            new DefaultParameterNameDiscoverer();
+
+    private ApplicationContext applicationContext;
+
+    public IdempotentMethodPlanResolver(IdempotentExecuteHandlerRegistry handlerRegistry) {
+        this(handlerRegistry, null);
+    }
+
+    public IdempotentMethodPlanResolver(IdempotentExecuteHandlerRegistry handlerRegistry,
+                                        IdempotentStoreRegistry storeRegistry) {
+        this.handlerRegistry = handlerRegistry;
+        this.storeRegistry = storeRegistry;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (String beanName : applicationContext.getBeanDefinitionNames()) {
+            Class<?> beanType = applicationContext.getType(beanName);
+            if (beanType == null) {
+                continue;
+            }
+            Class<?> userClass = ClassUtils.getUserClass(beanType);
+            if (!AnnotationUtils.isCandidateClass(userClass, Idempotent.class)) {
+                continue;
+            }
+            Map<Method, Idempotent> annotatedMethods = MethodIntrospector.selectMethods(userClass,
+                    (MethodIntrospector.MetadataLookup<Idempotent>) method ->
+                            AnnotationUtils.findAnnotation(method, Idempotent.class));
+            for (Method method : annotatedMethods.keySet()) {
+                try {
+                    resolve(method, userClass);
+                } catch (RuntimeException ex) {
+                    throw new IllegalStateException(String.format("Invalid @Idempotent " +
+                            "declaration on bean [%s] method [%s]", beanName, method), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the plan of the method intercepted by the given join point, building it on
+     * first use.
+     *
+     * @param joinPoint AOP join point instance
+     * @return cached idempotency plan
+     */
+    public IdempotentMethodPlan resolve(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return resolve(method, joinPoint.getTarget().getClass());
+    }
+
+    /**
+     * Returns the plan of the given method invoked on the given target class, building it
+     * on first use.
+     *
+     * @param method      intercepted method
+     * @param targetClass class of the invocation target
+     * @return cached idempotency plan
+     */
+    public IdempotentMethodPlan resolve(Method method, Class<?> targetClass) {
+        MethodClassKey cacheKey = new MethodClassKey(method, targetClass);
+        IdempotentMethodPlan plan = planCache.get(cacheKey);
+        if (plan != null) {
+            return plan;
+        }
+        return planCache.computeIfAbsent(cacheKey, key -> buildPlan(method, targetClass));
+    }
+
+    private IdempotentMethodPlan buildPlan(Method method, Class<?> targetClass) {
+        Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+        Idempotent idempotent = AnnotationUtils.findAnnotation(specificMethod, Idempotent.class);
+        if (idempotent == null) {
+            throw new IllegalStateException(String.format("Missing @Idempotent annotation on " +
+                    "method: [%s]", specificMethod));
+        }
+
+        if (idempotent.leaseTime() <= 0) {
+            throw new IllegalStateException(String.format("@Idempotent leaseTime must be positive on " +
+                    "method: [%s]", specificMethod));
+        }
+
+        IdempotentMethodPlan.ReturnKind returnKind = resolveReturnKind(specificMethod.getReturnType());
+        if (idempotent.replay() && returnKind == IdempotentMethodPlan.ReturnKind.REACTIVE) {
+            throw new IllegalStateException(String.format("@Idempotent replay is not supported for reactive " +
+                    "method: [%s]", specificMethod));
+        }
+        // PARAM and TOKEN keys read the servlet request, WebFlux does not populate it
+        if (returnKind == IdempotentMethodPlan.ReturnKind.REACTIVE && idempotent.type() != IdempotentTypeEnum.SPEL) {
+            throw new IllegalStateException(String.format("@Idempotent type [%s] is not supported for reactive " +
+                    "method, use SPEL: [%s]", idempotent.type(), specificMethod));
+        }
+
+        String[] discoveredNames = parameterNameDiscoverer.getParameterNames(specificMethod);
+        String[] parameterNames = discoveredNames != null ? discoveredNames : new String[0];
+        IdempotentExecuteHandler handler = handlerRegistry.getInstance(idempotent.scene(),
+                idempotent.type());
+        return IdempotentMethodPlan.builder()
+                .method(specificMethod)
+                .idempotent(idempotent)
+                .handler(handler)
+                .store(storeRegistry != null ? storeRegistry.resolve(idempotent) : null)
+                .lockKeyTemplate(handler.createLockKeyTemplate(idempotent))
+                .scene(idempotent.scene())
+                .type(idempotent.type())
+                .keyTemplate(idempotent.key())
+                .fingerprint(idempotent.fingerprint())
+                .uniqueKeyPrefix(idempotent.uniqueKeyPrefix())
+                .keyExtractor(idempotent.type() == IdempotentTypeEnum.SPEL
+                        ? resolveKeyExtractor(specificMethod, idempotent, parameterNames) : null)
+                .parameterNames(parameterNames)
+                .keyArgumentIndexes(resolveKeyArgumentIndexes(specificMethod))
+                .keyTimeout(idempotent.keyTimeout())
+                .leaseTime(Duration.ofSeconds(idempotent.leaseTime()))
+                .keepAfterSuccess(Duration.ofSeconds(Math.max(0L, idempotent.keyTimeout())))
+                .message(idempotent.message())
+                .returnKind(returnKind)
+                .replay(idempotent.replay())
+                .responseType(idempotent.replay() ? resolveResponseType(specificMethod, returnKind) : null)
+                .build();
+    }
+
+    private static Type resolveResponseType(Method method, IdempotentMethodPlan.ReturnKind returnKind) {
+        if (returnKind == IdempotentMethodPlan.ReturnKind.COMPLETION_STAGE) {
+            return ResolvableType.forMethodReturnType(method).as(CompletionStage.class).getGeneric(0).getType();
+        }
+        return method.getGenericReturnType();
+    }
+
+    /**
+     * Prefer the extractor generated at compile time, fall back to parsing the SpEL key.
+     */
+    private IdempotentKeyExtractor resolveKeyExtractor(Method method, Idempotent idempotent,
+                                                       String[] parameterNames) {
+        if (StrUtil.isNotBlank(idempotent.key()) && method.isAnnotationPresent(Idempotent.class)) {
+            IdempotentKeyExtractor generated = GeneratedKeyExtractors.find(method, idempotent.key());
+            if (generated != null) {
+                return generated;
+            }
+        }
+        return SpelKeyExtractor.of(idempotent.key(), parameterNames);
+    }
+
+    private int[] resolveKeyArgumentIndexes(Method method) {
+        Parameter[] parameters = method.getParameters();
+        int[] indexes = new int[parameters.length];
+        int count = 0;
+        for (int i = 0; i < parameters.length; i++) {
+            if (!parameters[i].isAnnotationPresent(IdempotentIgnore.class)) {
+                indexes[count++] = i;
+            }
+        }
+        return count == parameters.length ? null : Arrays.copyOf(indexes, count);
+    }
+
+    private IdempotentMethodPlan.ReturnKind resolveReturnKind(Class<?> returnType) {
+        if (REACTOR_PRESENT && ReactiveIdempotentSupport.isReactiveType(returnType)) {
+            return IdempotentMethodPlan.ReturnKind.REACTIVE;
+        }
+        if (CompletionStage.class.isAssignableFrom(returnType)) {
+            return IdempotentMethodPlan.ReturnKind.COMPLETION_STAGE;
+        }
+        return IdempotentMethodPlan.ReturnKind.SYNC;
+    }
+}
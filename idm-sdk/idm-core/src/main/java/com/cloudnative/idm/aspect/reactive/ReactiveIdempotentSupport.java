@@ -0,0 +1,118 @@
+package com.cloudnative.idm.aspect.reactive;
+
+import com.cloudnative.idm.aspect.handler.AbstractIdempotentExecuteHandler;
+import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
+import com.cloudnative.idm.exception.RepeatConsumptionException;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Idempotency support for methods returning reactive types.
+ *
+ * <p>
+ * Only referenced when Project Reactor is on the classpath. Nothing happens until the
+ * returned publisher is subscribed: the key is then claimed through
+ * {@link IdempotentExecuteHandler#executeAsync}, the target method is invoked, and
+ * post-processing or exception processing runs on the terminal signal of its publisher.
+ * </p>
+ *
+ * <p>
+ * The caller identity is read from the {@link ReactiveSecurityContextHolder} of the
+ * subscriber before claiming, the thread-bound security context being empty there.
+ * A cancelled subscription neither completes nor releases the claim: the side effects of
+ * the method may still be running, so the key is left to expire with its lease rather
+ * than let a duplicate start alongside them.
+ * </p>
+ */
+@Slf4j
+public final class ReactiveIdempotentSupport {
+
+    private ReactiveIdempotentSupport() {
+    }
+
+    /**
+     * Whether a method return type is handled by this class.
+     *
+     * @param returnType declared return type of the intercepted method
+     * @return true for {@link Mono}, {@link Flux} and any other {@link Publisher}
+     */
+    public static boolean isReactiveType(Class<?> returnType) {
+        return Publisher.class.isAssignableFrom(returnType);
+    }
+
+    /**
+     * Wrap the intercepted reactive method with idempotency processing.
+     *
+     * @param context the per-invocation context
+     * @return a {@link Mono} for {@link Mono} methods, a {@link Flux} otherwise
+     */
+    public static Object invoke(IdempotentInvocationContext context) {
+        IdempotentExecuteHandler handler = context.getPlan().getHandler();
+        Mono<Void> claim = ReactiveSecurityContextHolder.getContext()
+                .map(securityContext -> AbstractIdempotentExecuteHandler.userIdOf(securityContext.getAuthentication()))
+                .defaultIfEmpty(AbstractIdempotentExecuteHandler.ANONYMOUS)
+                .flatMap(userId -> {
+                    context.resolvedUser(userId);
+                    return Mono.fromCompletionStage(handler.executeAsync(context));
+                });
+        if (Mono.class.isAssignableFrom(context.getPlan().getMethod().getReturnType())) {
+            return claim.then(Mono.defer(() -> Mono.from(proceed(context))))
+                    .doOnSuccess(ret -> onComplete(context, handler))
+                    .doOnError(ex -> onError(context, handler, ex))
+                    .doOnCancel(() -> onCancel(context))
+                    .onErrorResume(RepeatConsumptionException.class,
+                            ex -> ex.getError() ? Mono.error(ex) : Mono.empty());
+        }
+        return claim.thenMany(Flux.defer(() -> proceed(context)))
+                .doOnComplete(() -> onComplete(context, handler))
+                .doOnError(ex -> onError(context, handler, ex))
+                .doOnCancel(() -> onCancel(context))
+                .onErrorResume(RepeatConsumptionException.class,
+                        ex -> ex.getError() ? Flux.error(ex) : Flux.empty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Publisher<Object> proceed(IdempotentInvocationContext context) {
+        try {
+            Object retObj = context.getJoinPoint().proceed();
+            return retObj != null ? (Publisher<Object>) retObj : Mono.empty();
+        } catch (Throwable ex) {
+            return Mono.error(ex);
+        }
+    }
+
+    private static void onComplete(IdempotentInvocationContext context,
+                                   IdempotentExecuteHandler handler) {
+        if (!context.finish(IdempotentInvocationContext.State.COMPLETED)) {
+            return;
+        }
+        // The publisher has completed, a failing store must not turn it into an error
+        try {
+            handler.postProcessing(context);
+        } catch (RuntimeException ex) {
+            log.warn("Post-processing of idempotent key [{}] failed, leaving it to its lease",
+                    context.getLockKey(), ex);
+        }
+    }
+
+    private static void onError(IdempotentInvocationContext context,
+                                IdempotentExecuteHandler handler, Throwable ex) {
+        if (ex instanceof RepeatConsumptionException) {
+            return;
+        }
+        if (context.finish(IdempotentInvocationContext.State.FAILED)) {
+            handler.exceptionProcessing(context);
+        }
+    }
+
+    /**
+     * Ends the invocation without releasing its claim, which expires with its lease.
+     */
+    private static void onCancel(IdempotentInvocationContext context) {
+        context.finish(IdempotentInvocationContext.State.FAILED);
+    }
+}
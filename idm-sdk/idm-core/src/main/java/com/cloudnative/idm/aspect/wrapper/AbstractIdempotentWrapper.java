@@ -1,6 +1,8 @@
 package com.cloudnative.idm.aspect.wrapper;
 
 import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
+import com.cloudnative.idm.context.IdempotentInvocationContext;
 import com.cloudnative.idm.enums.IdempotentTypeEnum;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -21,11 +23,21 @@ public abstract class AbstractIdempotentWrapper {
      */
     public Idempotent idempotent;
 
+    /**
+     * Cached idempotency plan of the intercepted method
+     */
+    public IdempotentMethodPlan plan;
+
     /**
      * AOP proceeding join point
      */
     public ProceedingJoinPoint joinPoint;
 
+    /**
+     * Per-invocation context, receives the claimed key and lock handle
+     */
+    public IdempotentInvocationContext context;
+
     /**
      * Lock {@link IdempotentTypeEnum}
      */
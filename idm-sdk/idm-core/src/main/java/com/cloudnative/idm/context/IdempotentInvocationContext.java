@@ -0,0 +1,191 @@
+package com.cloudnative.idm.context;
+
+import com.cloudnative.idm.aspect.plan.IdempotentMethodPlan;
+import com.cloudnative.idm.store.IdempotentStore;
+import lombok.Getter;
+import org.aspectj.lang.ProceedingJoinPoint;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * IdempotentInvocationContext - explicit per-invocation state of an idempotent call.
+ *
+ * <p>One instance is created by the aspect for every intercepted call and handed to the
+ * handler in {@code execute}, {@code postProcessing} and {@code exceptionProcessing}. It
+ * replaces the former ThreadLocal map with a few fixed slots:
+ * <ul>
+ *     <li>the store holding the claim and the claim owner token</li>
+ *     <li>the generated idempotency key</li>
+ *     <li>the invocation {@link State}</li>
+ *     <li>start and claim timestamps</li>
+ * </ul></p>
+ *
+ * <p>The context is not bound to any thread: all mutable slots are volatile and state
+ * transitions are atomic, so it can be completed from a different thread than the one
+ * that created it (async callbacks, reactive signals, virtual threads), and there is
+ * nothing to clean up afterwards.</p>
+ */
+public final class IdempotentInvocationContext {
+    private static final AtomicReferenceFieldUpdater<IdempotentInvocationContext, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(IdempotentInvocationContext.class,
+                    State.class, "state");
+
+    /**
+     * Cached idempotency plan of the intercepted method.
+     */
+    @Getter
+    private final IdempotentMethodPlan plan;
+
+    /**
+     * AOP proceeding join point.
+     */
+    @Getter
+    private final ProceedingJoinPoint joinPoint;
+
+    /**
+     * {@link System#nanoTime()} when the invocation was intercepted.
+     */
+    @Getter
+    private final long startNanos;
+
+    /**
+     * {@link System#nanoTime()} when the key was claimed, 0 if not claimed.
+     */
+    @Getter
+    private volatile long claimedNanos;
+
+    /**
+     * Idempotency key claimed by the handler.
+     */
+    @Getter
+    private volatile String lockKey;
+
+    /**
+     * Store holding the claim.
+     */
+    @Getter
+    private volatile IdempotentStore store;
+
+    /**
+     * Owner token of the claim, see {@link com.cloudnative.idm.store.IdempotentClaim}.
+     */
+    @Getter
+    private volatile String owner;
+
+    /**
+     * Return value of the business method once it succeeded, or the replayed response.
+     */
+    @Getter
+    private volatile Object result;
+
+    /**
+     * Caller identity resolved before claiming, null to read the thread-bound security
+     * context.
+     */
+    @Getter
+    private volatile String userId;
+
+    @Getter
+    private volatile State state = State.NEW;
+
+    public IdempotentInvocationContext(IdempotentMethodPlan plan, ProceedingJoinPoint joinPoint) {
+        this.plan = plan;
+        this.joinPoint = joinPoint;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Record a successful claim of the idempotency key.
+     *
+     * @param lockKey the claimed key
+     * @param store   the store holding the claim
+     * @param owner   the claim owner token
+     */
+    public void claimed(String lockKey, IdempotentStore store, String owner) {
+        this.lockKey = lockKey;
+        this.store = store;
+        this.owner = owner;
+        this.claimedNanos = System.nanoTime();
+        STATE.compareAndSet(this, State.NEW, State.CLAIMED);
+    }
+
+    /**
+     * Set the caller identity of invocations not running on the request thread, such as
+     * reactive ones whose security context lives in the Reactor context.
+     */
+    public void resolvedUser(String userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * Record the return value of the business method, before finishing as
+     * {@link State#COMPLETED}.
+     */
+    public void recordResult(Object result) {
+        this.result = result;
+    }
+
+    /**
+     * Answer a duplicate with the stored response of the original call, the business
+     * method is not invoked.
+     *
+     * @param response the decoded response
+     */
+    public void replayed(Object response) {
+        this.result = response;
+        STATE.compareAndSet(this, State.NEW, State.REPLAYED);
+    }
+
+    public boolean isReplayed() {
+        return state == State.REPLAYED;
+    }
+
+    /**
+     * Atomically move the invocation to a terminal state.
+     * <p>Only the first call wins, so success or failure processing runs exactly once even
+     * when several completion signals race on different threads.</p>
+     *
+     * @param terminal {@link State#COMPLETED} or {@link State#FAILED}
+     * @return true if this call performed the transition
+     */
+    public boolean finish(State terminal) {
+        State current;
+        do {
+            current = state;
+            if (current == State.COMPLETED || current == State.FAILED || current == State.REPLAYED) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, current, terminal));
+        return true;
+    }
+
+    /**
+     * Invocation lifecycle states.
+     */
+    public enum State {
+        /**
+         * Intercepted, key not claimed yet.
+         */
+        NEW,
+
+        /**
+         * Key claimed, business method running.
+         */
+        CLAIMED,
+
+        /**
+         * Business method finished successfully.
+         */
+        COMPLETED,
+
+        /**
+         * Business method or claim failed.
+         */
+        FAILED,
+
+        /**
+         * Duplicate answered with the response of the original call.
+         */
+        REPLAYED
+    }
+}
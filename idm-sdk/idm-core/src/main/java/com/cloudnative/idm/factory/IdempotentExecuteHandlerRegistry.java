@@ -0,0 +1,80 @@
+package com.cloudnative.idm.factory;
+
+import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of idempotent execution handlers, resolved once at startup.
+ *
+ * <p>
+ * Handlers are collected from the given beans first and from
+ * {@code META-INF/services/com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler}
+ * second, and each one is registered under its {@link IdempotentExecuteHandler#scene()}
+ * and every {@link IdempotentExecuteHandler#types()}. A bean always wins over a
+ * {@link ServiceLoader} provider for the same slot, while two beans competing for the same
+ * slot are rejected. Custom scene/type handlers are added simply by exposing them as beans
+ * or SPI providers.
+ * </p>
+ *
+ * <p>
+ * The registry is never modified after construction, so dispatch is a plain array lookup
+ * without synchronization.
+ * </p>
+ */
+public final class IdempotentExecuteHandlerRegistry {
+    private final EnumMap<IdempotentSceneEnum, EnumMap<IdempotentTypeEnum,
+            IdempotentExecuteHandler>> handlers = new EnumMap<>(IdempotentSceneEnum.class);
+
+    /**
+     * Build the registry from handler beans, then from {@link ServiceLoader} providers.
+     *
+     * @param beans handler beans found in the application context
+     */
+    public IdempotentExecuteHandlerRegistry(Collection<? extends IdempotentExecuteHandler> beans) {
+        beans.forEach(each -> register(each, true));
+        ServiceLoader.load(IdempotentExecuteHandler.class).forEach(each -> register(each, false));
+    }
+
+    private void register(IdempotentExecuteHandler handler, boolean failOnConflict) {
+        EnumMap<IdempotentTypeEnum, IdempotentExecuteHandler> sceneHandlers =
+                handlers.computeIfAbsent(handler.scene(),
+                        scene -> new EnumMap<>(IdempotentTypeEnum.class));
+        for (IdempotentTypeEnum type : handler.types()) {
+            IdempotentExecuteHandler existing = sceneHandlers.putIfAbsent(type, handler);
+            if (existing != null && existing != handler && failOnConflict) {
+                throw new IllegalStateException(String.format("Duplicate idempotent handler " +
+                                "for scenario [%s] and type [%s]: [%s] and [%s]",
+                        handler.scene().name(), type.name(), existing.getClass().getName(),
+                        handler.getClass().getName()));
+            }
+        }
+    }
+
+    /**
+     * Returns the idempotent execution handler registered for the given scenario and type.
+     *
+     * @param scene The idempotent validation scenario
+     * @param type  The idempotent handling strategy
+     * @return The corresponding idempotent execution handler
+     * @throws IllegalStateException when no handler is registered for the combination
+     */
+    public IdempotentExecuteHandler getInstance(IdempotentSceneEnum scene,
+                                                IdempotentTypeEnum type) {
+        EnumMap<IdempotentTypeEnum, IdempotentExecuteHandler> sceneHandlers = handlers.get(scene);
+        if (sceneHandlers == null) {
+            throw new IllegalStateException(String.format("Unsupported idempotent scenario: " +
+                    "[%s]", scene.name()));
+        }
+        IdempotentExecuteHandler result = sceneHandlers.get(type);
+        if (result == null) {
+            throw new IllegalStateException(String.format("Unsupported idempotent type: [%s] " +
+                    "for scenario: [%s]", type.name(), scene.name()));
+        }
+        return result;
+    }
+}
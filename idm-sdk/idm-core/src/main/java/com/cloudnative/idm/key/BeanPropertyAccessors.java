@@ -0,0 +1,114 @@
+package com.cloudnative.idm.key;
+
+import com.cloudnative.idm.annotation.IdempotentIgnore;
+import com.cloudnative.idm.annotation.IdempotentKeyField;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Per-class cache of the properties walked when fingerprinting a bean argument.
+ *
+ * <p>
+ * Properties are the non-static, non-transient fields of the class hierarchy, sorted by
+ * name so the walk order does not depend on declaration or reflection order. When any of
+ * them is annotated with {@link IdempotentKeyField}, only the annotated ones are kept;
+ * fields annotated with {@link IdempotentIgnore} are always left out. Each field is
+ * read through a {@link MethodHandle} adapted to {@code (Object)Object}, built once per
+ * class and invoked exactly on the hot path.
+ * </p>
+ */
+final class BeanPropertyAccessors {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<PropertyAccessor[]> ACCESSORS = new ClassValue<>() {
+        @Override
+        protected PropertyAccessor[] computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    private BeanPropertyAccessors() {
+    }
+
+    /**
+     * Returns the cached property accessors of a class.
+     */
+    static PropertyAccessor[] of(Class<?> type) {
+        return ACCESSORS.get(type);
+    }
+
+    private static PropertyAccessor[] resolve(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        boolean keyFieldsDeclared = false;
+        for (Class<?> current = type; current != null && current != Object.class;
+             current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+                        || field.isSynthetic() || field.isAnnotationPresent(IdempotentIgnore.class)) {
+                    continue;
+                }
+                keyFieldsDeclared |= field.isAnnotationPresent(IdempotentKeyField.class);
+                fields.add(field);
+            }
+        }
+
+        List<PropertyAccessor> accessors = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            if (!keyFieldsDeclared || field.isAnnotationPresent(IdempotentKeyField.class)) {
+                MethodHandle getter = unreflectGetter(field);
+                if (getter != null) {
+                    accessors.add(new PropertyAccessor(field.getName(), getter));
+                }
+            }
+        }
+        accessors.sort(Comparator.comparing(PropertyAccessor::getName));
+        return accessors.toArray(new PropertyAccessor[0]);
+    }
+
+    private static MethodHandle unreflectGetter(Field field) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(field.getDeclaringClass(),
+                    MethodHandles.lookup());
+            return lookup.unreflectGetter(field).asType(GETTER_TYPE);
+        } catch (IllegalAccessException | RuntimeException ex) {
+            // Not accessible from this module, the property is left out of the fingerprint
+            return null;
+        }
+    }
+
+    /**
+     * Reads one property of a bean.
+     */
+    static final class PropertyAccessor {
+        private final String name;
+
+        private final MethodHandle getter;
+
+        PropertyAccessor(String name, MethodHandle getter) {
+            this.name = name;
+            this.getter = getter;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Object get(Object target) {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
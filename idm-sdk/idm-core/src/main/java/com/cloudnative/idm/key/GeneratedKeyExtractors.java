@@ -0,0 +1,72 @@
+package com.cloudnative.idm.key;
+
+import java.lang.reflect.Method;
+
+/**
+ * Looks up the {@link IdempotentKeyExtractor}s generated at compile time by the
+ * {@code idm-processor} annotation processor.
+ *
+ * <p>
+ * The generated provider lives next to the class declaring the method, named after it
+ * following {@link IdempotentKeyExtractorProvider#CLASS_NAME_SUFFIX}. Methods without a
+ * generated extractor, e.g. because the processor is not on the annotation processor path,
+ * keep being evaluated by {@link SpelKeyExtractor}.
+ * </p>
+ */
+public final class GeneratedKeyExtractors {
+
+    private GeneratedKeyExtractors() {
+    }
+
+    /**
+     * Find the generated extractor of a method.
+     *
+     * @param method      the method declaring the annotation
+     * @param keyTemplate the key expression currently declared, guards against stale classes
+     * @return the generated extractor, or null if there is none
+     */
+    public static IdempotentKeyExtractor find(Method method, String keyTemplate) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        Class<?> providerClass;
+        try {
+            providerClass = Class.forName(providerClassName(declaringClass), true,
+                    declaringClass.getClassLoader());
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+        if (!IdempotentKeyExtractorProvider.class.isAssignableFrom(providerClass)) {
+            return null;
+        }
+
+        IdempotentKeyExtractorProvider provider;
+        try {
+            provider = (IdempotentKeyExtractorProvider) providerClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException(String.format("Cannot instantiate generated key extractors [%s]",
+                    providerClass.getName()), ex);
+        }
+        return provider.getKeyExtractor(methodKey(method), keyTemplate);
+    }
+
+    private static String providerClassName(Class<?> declaringClass) {
+        String packageName = declaringClass.getPackageName();
+        String binaryName = declaringClass.getName();
+        if (packageName.isEmpty()) {
+            return binaryName.replace('$', '_') + IdempotentKeyExtractorProvider.CLASS_NAME_SUFFIX;
+        }
+        return packageName + "." + binaryName.substring(packageName.length() + 1).replace('$', '_')
+                + IdempotentKeyExtractorProvider.CLASS_NAME_SUFFIX;
+    }
+
+    private static String methodKey(Method method) {
+        StringBuilder key = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(parameterTypes[i].getCanonicalName());
+        }
+        return key.append(')').toString();
+    }
+}
@@ -0,0 +1,31 @@
+package com.cloudnative.idm.key;
+
+import com.cloudnative.idm.enums.IdempotentFingerprintEnum;
+
+/**
+ * Strategy digesting the arguments of an invocation into a fixed size fingerprint, used to
+ * build {@link com.cloudnative.idm.enums.IdempotentTypeEnum#PARAM} keys.
+ * <p>
+ * Implementations must be thread-safe and deterministic across JVMs: equal arguments have
+ * to produce equal fingerprints on every node.
+ */
+public interface IdempotentFingerprinter {
+
+    /**
+     * Algorithm implemented by this strategy.
+     */
+    IdempotentFingerprintEnum algorithm();
+
+    /**
+     * Short tag written into keys next to the encoded fingerprint, e.g. {@code md5}.
+     */
+    String tag();
+
+    /**
+     * Fingerprint the invocation arguments.
+     *
+     * @param args the invocation arguments
+     * @return a 16-byte fingerprint
+     */
+    byte[] fingerprint(Object[] args);
+}
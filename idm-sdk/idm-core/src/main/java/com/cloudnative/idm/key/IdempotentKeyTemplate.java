@@ -0,0 +1,196 @@
+package com.cloudnative.idm.key;
+
+import com.cloudnative.idm.enums.IdempotentKeyFormatEnum;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Precompiled lock key template, e.g. {@code idempotent:token:{}}.
+ *
+ * <p>
+ * The pattern is split once into its literal segments, so building a key only appends the
+ * parts in place: no {@code String.format}, no pattern parsing on the request path.
+ * In {@link IdempotentKeyFormatEnum#COMPACT} format the parts are not written at all but
+ * streamed into a 128-bit MurmurHash3, and the key is a namespace id derived from the
+ * pattern followed by the base64url encoded fingerprint.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and shared; a {@link KeyBuilder} is created per key.
+ * </p>
+ */
+public final class IdempotentKeyTemplate {
+    private static final String PLACEHOLDER = "{}";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    private final String pattern;
+
+    private final IdempotentKeyFormatEnum format;
+
+    /**
+     * Literal segments around the placeholders, one more than the number of parts.
+     */
+    private final String[] literals;
+
+    /**
+     * Sum of the literal lengths, used to size the readable key buffer.
+     */
+    private final int literalLength;
+
+    /**
+     * {@code <namespace id>:}, only used in compact format.
+     */
+    private final String namespace;
+
+    private IdempotentKeyTemplate(String pattern, IdempotentKeyFormatEnum format, String[] literals) {
+        this.pattern = pattern;
+        this.format = format;
+        this.literals = literals;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+        this.namespace = namespaceOf(pattern) + ":";
+    }
+
+    /**
+     * Compile a pattern whose parts are marked with {@code {}}.
+     *
+     * @param pattern key pattern, e.g. {@code idempotent:path:{}:currentUserId:{}}
+     * @param format  key encoding, null for {@link IdempotentKeyFormatEnum#READABLE}
+     * @return a reusable, thread-safe template
+     */
+    public static IdempotentKeyTemplate compile(String pattern, IdempotentKeyFormatEnum format) {
+        List<String> literals = new ArrayList<>();
+        int start = 0;
+        int placeholder;
+        while ((placeholder = pattern.indexOf(PLACEHOLDER, start)) >= 0) {
+            literals.add(pattern.substring(start, placeholder));
+            start = placeholder + PLACEHOLDER.length();
+        }
+        literals.add(pattern.substring(start));
+        return new IdempotentKeyTemplate(pattern, format != null ? format : IdempotentKeyFormatEnum.READABLE,
+                literals.toArray(new String[0]));
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public IdempotentKeyFormatEnum getFormat() {
+        return format;
+    }
+
+    /**
+     * Start building a key, parts are then added in pattern order.
+     */
+    public KeyBuilder newKey() {
+        return new KeyBuilder();
+    }
+
+    /**
+     * Shortcut for templates whose parts are all strings.
+     */
+    public String render(String... parts) {
+        KeyBuilder builder = newKey();
+        for (String part : parts) {
+            builder.add(part);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 36 bits of the pattern hash, as 6 base64url characters.
+     */
+    private static String namespaceOf(String pattern) {
+        long hash = new Murmur3Hasher().putChars(pattern).finish()[0];
+        byte[] id = new byte[]{(byte) (hash >>> 40), (byte) (hash >>> 32), (byte) (hash >>> 24),
+                (byte) (hash >>> 16), (byte) (hash >>> 8), (byte) hash};
+        return BASE64_URL.encodeToString(id).substring(0, 6);
+    }
+
+    /**
+     * Single use builder of one key.
+     */
+    public final class KeyBuilder {
+        private final StringBuilder readable;
+
+        private final Murmur3Hasher hasher;
+
+        private int parts;
+
+        private KeyBuilder() {
+            if (format == IdempotentKeyFormatEnum.COMPACT) {
+                this.readable = null;
+                this.hasher = new Murmur3Hasher();
+            } else {
+                this.readable = new StringBuilder(literalLength + 64).append(literals[0]);
+                this.hasher = null;
+            }
+        }
+
+        /**
+         * Add a text part, null is written as {@code null}.
+         */
+        public KeyBuilder add(String part) {
+            checkPart();
+            if (hasher != null) {
+                if (part == null) {
+                    hasher.putInt(-1);
+                } else {
+                    hasher.putInt(part.length()).putChars(part);
+                }
+            } else {
+                readable.append(part);
+            }
+            return next();
+        }
+
+        /**
+         * Add a binary part, written in lowercase hex in readable format.
+         */
+        public KeyBuilder add(byte[] part) {
+            checkPart();
+            if (hasher != null) {
+                hasher.putInt(part.length).putBytes(part);
+            } else {
+                for (byte each : part) {
+                    readable.append(HEX[(each >> 4) & 0xF]).append(HEX[each & 0xF]);
+                }
+            }
+            return next();
+        }
+
+        public String build() {
+            if (parts != literals.length - 1) {
+                throw new IllegalStateException(String.format("Key pattern [%s] expects %d parts, got %d",
+                        pattern, literals.length - 1, parts));
+            }
+            if (hasher != null) {
+                return namespace + BASE64_URL.encodeToString(hasher.digest());
+            }
+            return readable.toString();
+        }
+
+        private void checkPart() {
+            if (parts >= literals.length - 1) {
+                throw new IllegalStateException(String.format("Key pattern [%s] expects %d parts",
+                        pattern, literals.length - 1));
+            }
+        }
+
+        private KeyBuilder next() {
+            parts++;
+            if (readable != null) {
+                readable.append(literals[parts]);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.cloudnative.idm.key;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues and verifies self-contained idempotency tokens signed with HMAC-SHA256.
+ *
+ * <p>
+ * A token carries its expiration in epoch millis, the random id of the issuing instance
+ * and a sequence number, followed by the first 128 bits of their HMAC, encoded as 54
+ * characters of unpadded base64url. Issuing a token is local and verifying it needs no
+ * lookup, so any node sharing the secret accepts the tokens of the others, and a forged
+ * or expired token is refused before the store is reached. Batches reserve their
+ * sequence numbers at once.
+ * </p>
+ *
+ * <p>
+ * A valid token only proves it was issued here and is still within its time to live;
+ * whether it was already used is up to the store claiming it.
+ * </p>
+ */
+public final class IdempotentTokenSigner {
+    public static final int MAX_BATCH = 1000;
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int PAYLOAD_BYTES = 24;
+
+    private static final int MAC_BYTES = 16;
+
+    private static final int TOKEN_BYTES = PAYLOAD_BYTES + MAC_BYTES;
+
+    private final SecretKeySpec secret;
+
+    private final Duration timeToLive;
+
+    private final Clock clock;
+
+    private final long instanceId = new SecureRandom().nextLong();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    /**
+     * @param secret     HMAC key shared by every node accepting the tokens, at least 16 bytes
+     * @param timeToLive how long an issued token stays valid
+     */
+    public IdempotentTokenSigner(byte[] secret, Duration timeToLive) {
+        this(secret, timeToLive, Clock.systemUTC());
+    }
+
+    /**
+     * @param clock source of the issue and verification times
+     */
+    public IdempotentTokenSigner(byte[] secret, Duration timeToLive, Clock clock) {
+        if (secret == null || secret.length < 16) {
+            throw new IllegalArgumentException("Token secret must be at least 16 bytes");
+        }
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException(String.format("Token time to live must be positive [%s]", timeToLive));
+        }
+        this.secret = new SecretKeySpec(secret.clone(), ALGORITHM);
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        newMac();
+    }
+
+    /**
+     * Issue one token.
+     */
+    public String issue() {
+        return issue(1).get(0);
+    }
+
+    /**
+     * Issue {@code count} tokens sharing one expiration, at most {@value #MAX_BATCH}.
+     */
+    public List<String> issue(int count) {
+        if (count <= 0 || count > MAX_BATCH) {
+            throw new IllegalArgumentException(String.format("Token count must be between 1 and %s [%s]", MAX_BATCH, count));
+        }
+        long first = sequence.getAndAdd(count);
+        long expiresAt = clock.millis() + timeToLive.toMillis();
+        Mac mac = macs.get();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        ByteBuffer token = ByteBuffer.allocate(TOKEN_BYTES);
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            token.clear();
+            token.putLong(expiresAt).putLong(instanceId).putLong(first + i);
+            mac.update(token.array(), 0, PAYLOAD_BYTES);
+            System.arraycopy(mac.doFinal(), 0, token.array(), PAYLOAD_BYTES, MAC_BYTES);
+            tokens.add(encoder.encodeToString(token.array()));
+        }
+        return tokens;
+    }
+
+    /**
+     * Expiration of a token in epoch millis.
+     *
+     * @return 0 when the token is malformed, forged or expired
+     */
+    public long expiresAt(String token) {
+        if (token == null || token.length() != (TOKEN_BYTES * 4 + 2) / 3) {
+            return 0;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException ex) {
+            return 0;
+        }
+        Mac mac = macs.get();
+        mac.update(bytes, 0, PAYLOAD_BYTES);
+        byte[] expected = Arrays.copyOf(mac.doFinal(), MAC_BYTES);
+        if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(bytes, PAYLOAD_BYTES, TOKEN_BYTES))) {
+            return 0;
+        }
+        long expiresAt = ByteBuffer.wrap(bytes).getLong();
+        return expiresAt > clock.millis() ? expiresAt : 0;
+    }
+
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secret);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(String.format("Cannot initialize token signature [%s]", ALGORITHM), ex);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.cloudnative.idm.key;
+
+import com.cloudnative.idm.enums.IdempotentFingerprintEnum;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming MurmurHash3 128-bit {@link IdempotentFingerprinter}.
+ *
+ * <p>
+ * The arguments are walked once and fed straight into a {@link Murmur3Hasher}, no JSON or
+ * other intermediate representation is materialized. Every value is written with a type
+ * tag and, where needed, a length prefix, which makes the encoding unambiguous.
+ * The encoding is canonical:
+ * <ul>
+ *     <li>integral numbers of any width share one encoding, so do floating point ones</li>
+ *     <li>bean properties are walked sorted by name</li>
+ *     <li>{@link Map} entries and {@link Set} elements are hashed individually and combined
+ *     with a commutative sum, so iteration order never changes the fingerprint</li>
+ * </ul>
+ * JDK value types are encoded through {@code toString()}, other JDK and framework types
+ * (servlet requests, streams, ...) only through their class name, everything else is
+ * walked as a bean. Primitive arrays are hashed element by element without boxing.
+ * A reference back to an object being walked is written as such, and arguments walking
+ * more than {@value #MAX_VALUES} containers and beans are refused with an
+ * {@link IllegalArgumentException}.
+ * </p>
+ */
+public final class Murmur3Fingerprinter implements IdempotentFingerprinter {
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_TRUE = 1;
+    private static final byte TAG_FALSE = 2;
+    private static final byte TAG_INTEGRAL = 3;
+    private static final byte TAG_FLOATING = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_ENUM = 6;
+    private static final byte TAG_BYTES = 7;
+    private static final byte TAG_SEQUENCE = 8;
+    private static final byte TAG_UNORDERED = 9;
+    private static final byte TAG_MAP = 10;
+    private static final byte TAG_BEAN = 11;
+    private static final byte TAG_VALUE = 12;
+    private static final byte TAG_OPAQUE = 13;
+    private static final byte TAG_TOO_DEEP = 14;
+    private static final byte TAG_BACK_REFERENCE = 15;
+
+    /**
+     * Maximum nesting depth walked, protects the stack against deep object graphs.
+     */
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * Maximum number of containers and beans walked for one call, protects against graphs
+     * sharing sub-objects many times over, whose walk grows exponentially with their depth.
+     * Leaf values are not counted, their cost is linear in the size of the arguments.
+     */
+    private static final int MAX_VALUES = 1_000_000;
+
+    @Override
+    public IdempotentFingerprintEnum algorithm() {
+        return IdempotentFingerprintEnum.MURMUR3_128;
+    }
+
+    @Override
+    public String tag() {
+        return "m3";
+    }
+
+    @Override
+    public byte[] fingerprint(Object[] args) {
+        Murmur3Hasher hasher = new Murmur3Hasher();
+        writeComposite(hasher, args, 0, new Walk());
+        return hasher.digest();
+    }
+
+    private void write(Murmur3Hasher hasher, Object value, int depth, Walk walk) {
+        if (value == null) {
+            hasher.putByte(TAG_NULL);
+        } else if (depth > MAX_DEPTH) {
+            hasher.putByte(TAG_TOO_DEEP);
+        } else if (value instanceof CharSequence) {
+            writeString(hasher, TAG_STRING, (CharSequence) value);
+        } else if (value instanceof Boolean) {
+            hasher.putByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            hasher.putByte(TAG_INTEGRAL).putLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            hasher.putByte(TAG_FLOATING)
+                    .putLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Character) {
+            hasher.putByte(TAG_STRING).putInt(1).putChar((Character) value);
+        } else if (value instanceof Enum) {
+            writeString(hasher, TAG_ENUM, ((Enum<?>) value).name());
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            hasher.putByte(TAG_BYTES).putInt(bytes.length).putBytes(bytes);
+        } else if (value instanceof Date) {
+            hasher.putByte(TAG_INTEGRAL).putLong(((Date) value).getTime());
+        } else {
+            writeComposite(hasher, value, depth, walk);
+        }
+    }
+
+    /**
+     * Writes a value that may refer back to one of its ancestors. An ancestor met again is
+     * written as a back-reference to it, tagged with how many levels up it is, so a cyclic
+     * graph is walked once and two graphs only differing in where their cycles close do
+     * not collide. Only the current path is tracked, a sub-object shared by two branches
+     * is written in full in both, which keeps unordered containers canonical.
+     */
+    private void writeComposite(Murmur3Hasher hasher, Object value, int depth, Walk walk) {
+        if (++walk.composites > MAX_VALUES) {
+            throw new IllegalArgumentException(String.format("Arguments too large to fingerprint, more than [%s] " +
+                    "containers and beans walked", MAX_VALUES));
+        }
+        Integer ancestorDepth = walk.path.putIfAbsent(value, depth);
+        if (ancestorDepth != null) {
+            hasher.putByte(TAG_BACK_REFERENCE).putInt(depth - ancestorDepth);
+            return;
+        }
+        try {
+            if (value instanceof Object[]) {
+                writeSequenceOf(hasher, (Object[]) value, depth, walk);
+            } else if (value.getClass().isArray()) {
+                writePrimitiveArray(hasher, value);
+            } else if (value instanceof Set) {
+                writeUnordered(hasher, TAG_UNORDERED, (Set<?>) value, depth, walk);
+            } else if (value instanceof Collection) {
+                writeSequence(hasher, (Collection<?>) value, depth, walk);
+            } else if (value instanceof Map) {
+                writeMap(hasher, (Map<?, ?>) value, depth, walk);
+            } else {
+                writeObject(hasher, value, depth, walk);
+            }
+        } finally {
+            walk.path.remove(value);
+        }
+    }
+
+    private void writeString(Murmur3Hasher hasher, byte tag, CharSequence value) {
+        hasher.putByte(tag).putInt(value.length()).putChars(value);
+    }
+
+    private void writeSequenceOf(Murmur3Hasher hasher, Object[] values, int depth, Walk walk) {
+        hasher.putByte(TAG_SEQUENCE).putInt(values.length);
+        for (Object each : values) {
+            write(hasher, each, depth + 1, walk);
+        }
+    }
+
+    private void writeSequence(Murmur3Hasher hasher, Collection<?> values, int depth, Walk walk) {
+        hasher.putByte(TAG_SEQUENCE).putInt(values.size());
+        for (Object each : values) {
+            write(hasher, each, depth + 1, walk);
+        }
+    }
+
+    /**
+     * Writes a primitive array other than {@code byte[]}, each element encoded as its boxed
+     * value would be.
+     */
+    private void writePrimitiveArray(Murmur3Hasher hasher, Object array) {
+        hasher.putByte(TAG_SEQUENCE).putInt(Array.getLength(array));
+        if (array instanceof int[]) {
+            for (int each : (int[]) array) {
+                hasher.putByte(TAG_INTEGRAL).putLong(each);
+            }
+        } else if (array instanceof long[]) {
+            for (long each : (long[]) array) {
+                hasher.putByte(TAG_INTEGRAL).putLong(each);
+            }
+        } else if (array instanceof short[]) {
+            for (short each : (short[]) array) {
+                hasher.putByte(TAG_INTEGRAL).putLong(each);
+            }
+        } else if (array instanceof double[]) {
+            for (double each : (double[]) array) {
+                hasher.putByte(TAG_FLOATING).putLong(Double.doubleToLongBits(each));
+            }
+        } else if (array instanceof float[]) {
+            for (float each : (float[]) array) {
+                hasher.putByte(TAG_FLOATING).putLong(Double.doubleToLongBits(each));
+            }
+        } else if (array instanceof char[]) {
+            for (char each : (char[]) array) {
+                hasher.putByte(TAG_STRING).putInt(1).putChar(each);
+            }
+        } else {
+            for (boolean each : (boolean[]) array) {
+                hasher.putByte(each ? TAG_TRUE : TAG_FALSE);
+            }
+        }
+    }
+
+    private void writeUnordered(Murmur3Hasher hasher, byte tag, Collection<?> values, int depth, Walk walk) {
+        long sum1 = 0;
+        long sum2 = 0;
+        for (Object each : values) {
+            Murmur3Hasher elementHasher = new Murmur3Hasher();
+            write(elementHasher, each, depth + 1, walk);
+            long[] hash = elementHasher.finish();
+            sum1 += hash[0];
+            sum2 += hash[1];
+        }
+        hasher.putByte(tag).putInt(values.size()).putLong(sum1).putLong(sum2);
+    }
+
+    private void writeMap(Murmur3Hasher hasher, Map<?, ?> map, int depth, Walk walk) {
+        long sum1 = 0;
+        long sum2 = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Murmur3Hasher entryHasher = new Murmur3Hasher();
+            write(entryHasher, entry.getKey(), depth + 1, walk);
+            write(entryHasher, entry.getValue(), depth + 1, walk);
+            long[] hash = entryHasher.finish();
+            sum1 += hash[0];
+            sum2 += hash[1];
+        }
+        hasher.putByte(TAG_MAP).putInt(map.size()).putLong(sum1).putLong(sum2);
+    }
+
+    private void writeObject(Murmur3Hasher hasher, Object value, int depth, Walk walk) {
+        Class<?> type = value.getClass();
+        String typeName = type.getName();
+        if (typeName.startsWith("java.")) {
+            // BigDecimal, java.time, UUID, URI, Optional, ...
+            hasher.putByte(TAG_VALUE);
+            writeString(hasher, TAG_STRING, typeName);
+            writeString(hasher, TAG_STRING, value.toString());
+            return;
+        }
+        if (typeName.startsWith("javax.") || typeName.startsWith("jakarta.")
+                || typeName.startsWith("org.springframework.")) {
+            // Requests, responses, multipart files: not part of the business identity
+            hasher.putByte(TAG_OPAQUE);
+            writeString(hasher, TAG_STRING, typeName);
+            return;
+        }
+
+        BeanPropertyAccessors.PropertyAccessor[] accessors = BeanPropertyAccessors.of(type);
+        hasher.putByte(TAG_BEAN).putInt(accessors.length);
+        for (BeanPropertyAccessors.PropertyAccessor accessor : accessors) {
+            writeString(hasher, TAG_STRING, accessor.getName());
+            write(hasher, accessor.get(value), depth + 1, walk);
+        }
+    }
+
+    /**
+     * State of one fingerprint computation.
+     */
+    private static final class Walk {
+        /**
+         * Containers and beans being walked, with their depth.
+         */
+        private final Map<Object, Integer> path = new IdentityHashMap<>();
+
+        private int composites;
+    }
+}
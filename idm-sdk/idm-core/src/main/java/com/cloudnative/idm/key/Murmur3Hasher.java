@@ -0,0 +1,183 @@
+package com.cloudnative.idm.key;
+
+/**
+ * Streaming MurmurHash3 x64 128-bit hasher.
+ *
+ * <p>
+ * Values are fed incrementally and mixed block by block, so arbitrarily large inputs are
+ * hashed without building an intermediate byte array. Multi-byte values are consumed in
+ * little-endian order, which makes {@link #putBytes} over a buffer produce the reference
+ * MurmurHash3_x64_128 value. Instances are cheap, not thread-safe, and single use.
+ * </p>
+ */
+public final class Murmur3Hasher {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+
+    /**
+     * Pending, not yet mixed, bytes of the current 16-byte block.
+     */
+    private long pending1;
+    private long pending2;
+    private int pendingLength;
+
+    private long totalLength;
+
+    public Murmur3Hasher() {
+        this(0);
+    }
+
+    public Murmur3Hasher(long seed) {
+        this.h1 = seed;
+        this.h2 = seed;
+    }
+
+    public Murmur3Hasher putByte(byte value) {
+        long unsigned = value & 0xFFL;
+        if (pendingLength < 8) {
+            pending1 |= unsigned << (pendingLength << 3);
+        } else {
+            pending2 |= unsigned << ((pendingLength - 8) << 3);
+        }
+        totalLength++;
+        if (++pendingLength == 16) {
+            mixBlock();
+        }
+        return this;
+    }
+
+    public Murmur3Hasher putBytes(byte[] bytes) {
+        return putBytes(bytes, 0, bytes.length);
+    }
+
+    public Murmur3Hasher putBytes(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            putByte(bytes[i]);
+        }
+        return this;
+    }
+
+    public Murmur3Hasher putInt(int value) {
+        for (int i = 0; i < 4; i++) {
+            putByte((byte) (value >>> (i << 3)));
+        }
+        return this;
+    }
+
+    public Murmur3Hasher putLong(long value) {
+        if (pendingLength == 0) {
+            pending1 = value;
+            pendingLength = 8;
+            totalLength += 8;
+            return this;
+        }
+        if (pendingLength == 8) {
+            pending2 = value;
+            totalLength += 8;
+            mixBlock();
+            return this;
+        }
+        for (int i = 0; i < 8; i++) {
+            putByte((byte) (value >>> (i << 3)));
+        }
+        return this;
+    }
+
+    public Murmur3Hasher putChar(char value) {
+        putByte((byte) value);
+        return putByte((byte) (value >>> 8));
+    }
+
+    /**
+     * Feed the UTF-16 code units of a string, without encoding it to bytes first.
+     */
+    public Murmur3Hasher putChars(CharSequence value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            putChar(value.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Finish the hash. The hasher must not be used afterwards.
+     *
+     * @return the two 64-bit halves, {@code [h1, h2]}
+     */
+    public long[] finish() {
+        long k1 = pending1;
+        long k2 = pending2;
+        if (pendingLength > 8) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+        }
+        if (pendingLength > 0) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+        }
+
+        h1 ^= totalLength;
+        h2 ^= totalLength;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    /**
+     * Finish the hash and return it as 16 little-endian bytes.
+     */
+    public byte[] digest() {
+        long[] hash = finish();
+        byte[] result = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            result[i] = (byte) (hash[0] >>> (i << 3));
+            result[i + 8] = (byte) (hash[1] >>> (i << 3));
+        }
+        return result;
+    }
+
+    private void mixBlock() {
+        long k1 = pending1;
+        long k2 = pending2;
+
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        h1 ^= k1;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        h2 ^= k2;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+
+        pending1 = 0;
+        pending2 = 0;
+        pendingLength = 0;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
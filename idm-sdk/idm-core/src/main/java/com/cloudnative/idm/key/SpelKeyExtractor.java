@@ -0,0 +1,186 @@
+package com.cloudnative.idm.key;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.ConstructorResolver;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.OperatorOverloader;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypeComparator;
+import org.springframework.expression.TypeConverter;
+import org.springframework.expression.TypeLocator;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.util.ClassUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SpEL based {@link IdempotentKeyExtractor}.
+ *
+ * <p>
+ * The expression is parsed once, when the method plan is built, so invalid expressions
+ * fail at startup. It is parsed in {@link SpelCompilerMode#MIXED} mode: the first
+ * evaluations are interpreted, after which Spring compiles the expression to bytecode and
+ * falls back to interpretation only if the compiled form stops matching the argument types.
+ * </p>
+ *
+ * <p>
+ * Method arguments are exposed as {@code #paramName} variables through a tiny per-call
+ * {@link EvaluationContext} that resolves variables by parameter index and delegates
+ * everything else to one shared, pre-initialized {@link StandardEvaluationContext}.
+ * </p>
+ */
+public final class SpelKeyExtractor implements IdempotentKeyExtractor {
+    /**
+     * Key used when no expression is declared.
+     */
+    private static final String DEFAULT_KEY = "default";
+
+    private static final StandardEvaluationContext SHARED_CONTEXT = createSharedContext();
+
+    /**
+     * Parsed expression, null when the key template is blank.
+     */
+    private final Expression expression;
+
+    /**
+     * Parameter name to argument index.
+     */
+    private final Map<String, Integer> parameterIndexes;
+
+    private SpelKeyExtractor(Expression expression, Map<String, Integer> parameterIndexes) {
+        this.expression = expression;
+        this.parameterIndexes = parameterIndexes;
+    }
+
+    /**
+     * Parse a key template for a method with the given parameter names.
+     *
+     * @param keyTemplate    SpEL expression, blank for the default key
+     * @param parameterNames method parameter names, in declaration order
+     * @return a reusable, thread-safe extractor
+     * @throws org.springframework.expression.ParseException if the expression is invalid
+     */
+    public static SpelKeyExtractor of(String keyTemplate, String[] parameterNames) {
+        Map<String, Integer> parameterIndexes = new HashMap<>(parameterNames.length * 2);
+        for (int i = 0; i < parameterNames.length; i++) {
+            parameterIndexes.put(parameterNames[i], i);
+        }
+        if (StrUtil.isBlank(keyTemplate)) {
+            return new SpelKeyExtractor(null, parameterIndexes);
+        }
+
+        SpelExpressionParser parser = new SpelExpressionParser(new SpelParserConfiguration(
+                SpelCompilerMode.MIXED, ClassUtils.getDefaultClassLoader()));
+        return new SpelKeyExtractor(parser.parseExpression(keyTemplate), parameterIndexes);
+    }
+
+    @Override
+    public String extract(Object[] args) {
+        if (expression == null) {
+            return DEFAULT_KEY;
+        }
+        return expression.getValue(new ArgumentEvaluationContext(parameterIndexes, args),
+                String.class);
+    }
+
+    private static StandardEvaluationContext createSharedContext() {
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        // Force the lazily created collaborators now, the instance is shared read-only
+        context.getPropertyAccessors();
+        context.getConstructorResolvers();
+        context.getMethodResolvers();
+        context.getTypeLocator();
+        context.getTypeConverter();
+        return context;
+    }
+
+    /**
+     * Per-call context resolving {@code #paramName} to the matching argument.
+     */
+    private static final class ArgumentEvaluationContext implements EvaluationContext {
+        private final Map<String, Integer> parameterIndexes;
+
+        private final Object[] args;
+
+        /**
+         * Variables assigned by the expression itself, rarely used.
+         */
+        private Map<String, Object> localVariables;
+
+        private ArgumentEvaluationContext(Map<String, Integer> parameterIndexes, Object[] args) {
+            this.parameterIndexes = parameterIndexes;
+            this.args = args;
+        }
+
+        @Override
+        public Object lookupVariable(String name) {
+            if (localVariables != null && localVariables.containsKey(name)) {
+                return localVariables.get(name);
+            }
+            Integer index = parameterIndexes.get(name);
+            return index != null && index < args.length ? args[index] : null;
+        }
+
+        @Override
+        public void setVariable(String name, Object value) {
+            if (localVariables == null) {
+                localVariables = new HashMap<>(4);
+            }
+            localVariables.put(name, value);
+        }
+
+        @Override
+        public TypedValue getRootObject() {
+            return TypedValue.NULL;
+        }
+
+        @Override
+        public List<PropertyAccessor> getPropertyAccessors() {
+            return SHARED_CONTEXT.getPropertyAccessors();
+        }
+
+        @Override
+        public List<ConstructorResolver> getConstructorResolvers() {
+            return SHARED_CONTEXT.getConstructorResolvers();
+        }
+
+        @Override
+        public List<MethodResolver> getMethodResolvers() {
+            return SHARED_CONTEXT.getMethodResolvers();
+        }
+
+        @Override
+        public BeanResolver getBeanResolver() {
+            return SHARED_CONTEXT.getBeanResolver();
+        }
+
+        @Override
+        public TypeLocator getTypeLocator() {
+            return SHARED_CONTEXT.getTypeLocator();
+        }
+
+        @Override
+        public TypeConverter getTypeConverter() {
+            return SHARED_CONTEXT.getTypeConverter();
+        }
+
+        @Override
+        public TypeComparator getTypeComparator() {
+            return SHARED_CONTEXT.getTypeComparator();
+        }
+
+        @Override
+        public OperatorOverloader getOperatorOverloader() {
+            return SHARED_CONTEXT.getOperatorOverloader();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.cloudnative.idm.replay;
+
+import java.lang.reflect.Type;
+
+/**
+ * Serialization of method responses replayed to duplicates, see
+ * {@code @Idempotent#replay()}.
+ */
+public interface IdempotentResponseCodec {
+    /**
+     * Encode a response.
+     *
+     * @param response the return value of the first successful call, may be null
+     * @return the encoded response, or null if it must not be stored, e.g. too large
+     */
+    byte[] encode(Object response);
+
+    /**
+     * Decode a response stored by {@link #encode}.
+     *
+     * @param bytes the encoded response
+     * @param type  the declared response type of the method
+     * @return the response
+     */
+    Object decode(byte[] bytes, Type type);
+}
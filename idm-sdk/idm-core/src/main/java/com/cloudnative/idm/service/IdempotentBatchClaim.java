@@ -0,0 +1,87 @@
+package com.cloudnative.idm.service;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.store.IdempotentClaim;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Outcome of {@link IdempotentBatchService#claimAll}: the claim of every message of a
+ * batch, by index.
+ */
+public final class IdempotentBatchClaim<T> {
+    /**
+     * The batch, in delivery order.
+     */
+    @Getter
+    private final List<T> messages;
+
+    /**
+     * Store key of each message.
+     */
+    @Getter
+    private final List<String> keys;
+
+    private final List<IdempotentClaim> claims;
+
+    private final BitSet newIndexes;
+
+    public IdempotentBatchClaim(List<T> messages, List<String> keys, List<IdempotentClaim> claims) {
+        this.messages = messages;
+        this.keys = keys;
+        this.claims = claims;
+        this.newIndexes = new BitSet(claims.size());
+        for (int i = 0; i < claims.size(); i++) {
+            if (claims.get(i).isAcquired()) {
+                newIndexes.set(i);
+            }
+        }
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * Whether the message at {@code index} was claimed and must be processed.
+     */
+    public boolean isNew(int index) {
+        return newIndexes.get(index);
+    }
+
+    /**
+     * Indexes of the new messages, a copy the caller may modify.
+     */
+    public BitSet getNewIndexes() {
+        return (BitSet) newIndexes.clone();
+    }
+
+    /**
+     * The new messages, in delivery order.
+     */
+    public List<T> getNewMessages() {
+        List<T> fresh = new ArrayList<>(newIndexes.cardinality());
+        for (int i = newIndexes.nextSetBit(0); i >= 0; i = newIndexes.nextSetBit(i + 1)) {
+            fresh.add(messages.get(i));
+        }
+        return fresh;
+    }
+
+    /**
+     * State of the key of a rejected message, {@link IdempotentKeyStateEnum#ABSENT} for a
+     * new one.
+     */
+    public IdempotentKeyStateEnum getPreviousState(int index) {
+        return claims.get(index).getPreviousState();
+    }
+
+    /**
+     * Claim owner of the message at {@code index}, null when it was not new.
+     */
+    public String getOwner(int index) {
+        return claims.get(index).getOwner();
+    }
+}
@@ -0,0 +1,59 @@
+package com.cloudnative.idm.service;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Programmatic idempotency for batch consumers.
+ *
+ * <p>
+ * {@code @Idempotent} guards one method call at a time; a consumer pulling hundreds of
+ * messages at once instead claims the keys of the whole batch in one round trip, processes
+ * the new messages only, then completes the batch in one more round trip:
+ * <pre>{@code
+ * IdempotentBatchClaim<Message> batch = batchService.claimAll(messages, Message::getMsgId);
+ * BitSet consumed = new BitSet();
+ * batch.getNewIndexes().stream().forEach(i -> {
+ *     if (process(messages.get(i))) {
+ *         consumed.set(i);
+ *     }
+ * });
+ * batchService.complete(batch, consumed);
+ * }</pre>
+ * </p>
+ */
+public interface IdempotentBatchService {
+    /**
+     * Claim the key of every message.
+     *
+     * @param messages     the batch, in delivery order
+     * @param keyExtractor business key of a message, e.g. its message id
+     * @return which messages were claimed, i.e. are new; a key repeated within the batch is
+     * only new the first time
+     */
+    <T> IdempotentBatchClaim<T> claimAll(List<T> messages, Function<? super T, String> keyExtractor);
+
+    /**
+     * Mark the consumed messages of a batch as consumed and release the claims of the
+     * others, so that their redelivery is processed again.
+     *
+     * @param batch    the claimed batch
+     * @param consumed indexes of the messages processed successfully
+     */
+    void complete(IdempotentBatchClaim<?> batch, BitSet consumed);
+
+    /**
+     * Mark every new message of a batch as consumed.
+     */
+    default void markConsumed(IdempotentBatchClaim<?> batch) {
+        complete(batch, batch.getNewIndexes());
+    }
+
+    /**
+     * Release every claim of a batch, e.g. when the whole batch failed.
+     */
+    default void release(IdempotentBatchClaim<?> batch) {
+        complete(batch, new BitSet());
+    }
+}
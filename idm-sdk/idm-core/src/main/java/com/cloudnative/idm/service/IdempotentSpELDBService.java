@@ -0,0 +1,25 @@
+package com.cloudnative.idm.service;
+
+
+import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * SpEL idempotent interface
+ */
+public interface IdempotentSpELDBService extends IdempotentExecuteHandler {
+
+    @Override
+    default IdempotentSceneEnum scene() {
+        return IdempotentSceneEnum.DB;
+    }
+
+    @Override
+    default Set<IdempotentTypeEnum> types() {
+        return EnumSet.of(IdempotentTypeEnum.SPEL);
+    }
+}
@@ -2,9 +2,24 @@ package com.cloudnative.idm.service;
 
 
 import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * SpEL idempotent interface
  */
 public interface IdempotentSpELMQService extends IdempotentExecuteHandler {
+
+    @Override
+    default IdempotentSceneEnum scene() {
+        return IdempotentSceneEnum.MQ;
+    }
+
+    @Override
+    default Set<IdempotentTypeEnum> types() {
+        return EnumSet.allOf(IdempotentTypeEnum.class);
+    }
 }
@@ -1,9 +1,42 @@
 package com.cloudnative.idm.service;
 
 import com.cloudnative.idm.aspect.handler.IdempotentExecuteHandler;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * idempotent token service
+ *
+ * <p>
+ * Besides guarding {@code @Idempotent(type = TOKEN)} methods, it issues the tokens clients
+ * send back with their submission.
+ * </p>
  */
 public interface IdempotentTokenService extends IdempotentExecuteHandler {
+
+    @Override
+    default IdempotentSceneEnum scene() {
+        return IdempotentSceneEnum.HTTP;
+    }
+
+    @Override
+    default Set<IdempotentTypeEnum> types() {
+        return EnumSet.of(IdempotentTypeEnum.TOKEN);
+    }
+
+    /**
+     * Issue a token for one submission.
+     */
+    default String issueToken() {
+        return issueTokens(1).get(0);
+    }
+
+    /**
+     * Issue {@code count} tokens at once, e.g. one per form of a page.
+     */
+    List<String> issueTokens(int count);
 }
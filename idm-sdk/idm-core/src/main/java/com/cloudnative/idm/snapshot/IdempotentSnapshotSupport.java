@@ -0,0 +1,37 @@
+package com.cloudnative.idm.snapshot;
+
+import java.io.IOException;
+
+/**
+ * Local {@link com.cloudnative.idm.store.IdempotentStore} whose completed keys can be
+ * saved by an {@link IdempotentSnapshotter} and loaded back after a restart.
+ *
+ * <p>
+ * Only completed keys are saved: they are the ones letting duplicates through when lost,
+ * while an in-progress claim belongs to a process that is gone after the restart.
+ * Expirations are exchanged as epoch millis, so that they survive the restart.
+ * </p>
+ */
+public interface IdempotentSnapshotSupport {
+
+    /**
+     * Format of the keys written by {@link #writeSnapshot}, a snapshot is only restored
+     * into a store of the same key format.
+     */
+    String snapshotKeyFormat();
+
+    /**
+     * Write every completed key not expired yet. Implementations may write while keys
+     * change, a key changed meanwhile may or may not be part of the snapshot.
+     */
+    void writeSnapshot(IdempotentSnapshotWriter writer) throws IOException;
+
+    /**
+     * Load one completed key of a snapshot, unless the store holds the key already.
+     *
+     * @param key                  key as written by {@link #writeSnapshot}
+     * @param expiresAtEpochMillis expiration, {@link Long#MAX_VALUE} for none
+     * @param response             encoded response, null if none
+     */
+    void restoreCompleted(byte[] key, long expiresAtEpochMillis, byte[] response);
+}
@@ -0,0 +1,18 @@
+package com.cloudnative.idm.snapshot;
+
+import java.io.IOException;
+
+/**
+ * Receives the completed keys of an {@link IdempotentSnapshotSupport} store.
+ */
+public interface IdempotentSnapshotWriter {
+
+    /**
+     * Write one completed key.
+     *
+     * @param key                  key bytes, in the format of the store
+     * @param expiresAtEpochMillis expiration, {@link Long#MAX_VALUE} for none
+     * @param response             encoded response, null if none
+     */
+    void write(byte[] key, long expiresAtEpochMillis, byte[] response) throws IOException;
+}
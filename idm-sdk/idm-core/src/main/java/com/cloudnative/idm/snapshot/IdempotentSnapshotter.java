@@ -0,0 +1,293 @@
+package com.cloudnative.idm.snapshot;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the completed keys of a local store to a file, periodically and on close, and
+ * loads them back at startup so that a restart does not forget them.
+ *
+ * <p>
+ * A snapshot is written sequentially through a 1 MiB buffer to a temporary file, forced,
+ * then moved over the previous snapshot, so a crash while writing leaves the previous one
+ * intact. Every snapshot is complete, written while the store keeps serving. Keys
+ * expired by the time they are written or read are skipped.
+ * </p>
+ *
+ * <p>
+ * File layout: magic, version, key format and creation time, then per key its length,
+ * bytes, expiration in epoch millis, and response length and bytes, {@code -1} for no
+ * response; a length of {@code -1} in place of a key ends the file, followed by the
+ * number of keys.
+ * </p>
+ */
+public class IdempotentSnapshotter implements Closeable {
+    private static final int MAGIC = 0x49444d53;
+
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final IdempotentSnapshotSupport store;
+
+    private final Path file;
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile Throwable lastFailure;
+
+    public IdempotentSnapshotter(IdempotentSnapshotSupport store, Path file) {
+        this.store = store;
+        this.file = file;
+    }
+
+    /**
+     * Load the snapshot file into the store, if there is one.
+     *
+     * @return number of keys restored, expired ones excluded
+     * @throws UncheckedIOException when the file is unreadable, truncated, or was written
+     *                              for another key format
+     */
+    public long restore() {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Reader reader = new Reader(channel);
+            if (reader.readInt() != MAGIC || reader.readInt() != VERSION) {
+                throw new IOException("Not an idempotent snapshot");
+            }
+            String keyFormat = new String(reader.readBytes(reader.readInt()), StandardCharsets.UTF_8);
+            if (!keyFormat.equals(store.snapshotKeyFormat())) {
+                throw new IOException(String.format("Snapshot key format [%s] does not match the store [%s]",
+                        keyFormat, store.snapshotKeyFormat()));
+            }
+            reader.readLong();
+            long now = System.currentTimeMillis();
+            long read = 0;
+            long restored = 0;
+            for (int keyLength = reader.readInt(); keyLength >= 0; keyLength = reader.readInt()) {
+                byte[] key = reader.readBytes(keyLength);
+                long expiresAt = reader.readLong();
+                int responseLength = reader.readInt();
+                byte[] response = responseLength < 0 ? null : reader.readBytes(responseLength);
+                read++;
+                if (expiresAt > now) {
+                    store.restoreCompleted(key, expiresAt, response);
+                    restored++;
+                }
+            }
+            if (reader.readLong() != read) {
+                throw new IOException("Snapshot key count mismatch");
+            }
+            return restored;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(String.format("Cannot restore idempotent snapshot [%s]", file), ex);
+        }
+    }
+
+    /**
+     * Write a snapshot now, replacing the previous one.
+     *
+     * @return number of keys written
+     */
+    public synchronized long snapshot() {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            long written;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                Writer writer = new Writer(channel);
+                writer.writeInt(MAGIC);
+                writer.writeInt(VERSION);
+                byte[] keyFormat = store.snapshotKeyFormat().getBytes(StandardCharsets.UTF_8);
+                writer.writeInt(keyFormat.length);
+                writer.writeBytes(keyFormat);
+                writer.writeLong(System.currentTimeMillis());
+                store.writeSnapshot(writer);
+                writer.writeInt(-1);
+                writer.writeLong(writer.count);
+                writer.flush();
+                channel.force(true);
+                written = writer.count;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(String.format("Cannot write idempotent snapshot [%s]", file), ex);
+        }
+    }
+
+    /**
+     * Write a snapshot every {@code period} from a daemon thread. A failed snapshot is
+     * kept in {@link #getLastFailure()} and retried at the next period.
+     */
+    public synchronized void start(Duration period) {
+        if (scheduler != null) {
+            throw new IllegalStateException(String.format("Snapshots of [%s] already scheduled", file));
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idempotent-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+                lastFailure = null;
+            } catch (RuntimeException ex) {
+                lastFailure = ex;
+            }
+        }, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Failure of the last scheduled snapshot, null if it succeeded.
+     */
+    public Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Stop the scheduled snapshots and write a last one.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        snapshot();
+    }
+
+    private static final class Writer implements IdempotentSnapshotWriter {
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        private long count;
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(byte[] key, long expiresAtEpochMillis, byte[] response) throws IOException {
+            writeInt(key.length);
+            writeBytes(key);
+            writeLong(expiresAtEpochMillis);
+            if (response == null) {
+                writeInt(-1);
+            } else {
+                writeInt(response.length);
+                writeBytes(response);
+            }
+            count++;
+        }
+
+        private void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        private void writeLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.capacity()) {
+                flush();
+                ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+                while (wrapped.hasRemaining()) {
+                    channel.write(wrapped);
+                }
+                return;
+            }
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static final class Reader {
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        private Reader(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        private int readInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        private long readLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int copied = Math.min(length, buffer.remaining());
+            buffer.get(bytes, 0, copied);
+            if (copied < length) {
+                ByteBuffer rest = ByteBuffer.wrap(bytes, copied, length - copied);
+                while (rest.hasRemaining()) {
+                    if (channel.read(rest) < 0) {
+                        throw new EOFException("Truncated idempotent snapshot");
+                    }
+                }
+            }
+            return bytes;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Truncated idempotent snapshot");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
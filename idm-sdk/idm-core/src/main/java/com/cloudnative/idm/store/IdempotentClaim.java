@@ -0,0 +1,65 @@
+package com.cloudnative.idm.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Outcome of {@link IdempotentStore#claim}.
+ */
+@Getter
+public final class IdempotentClaim {
+    /**
+     * State of the key before the claim, {@link IdempotentKeyStateEnum#ABSENT} when the
+     * claim succeeded.
+     */
+    private final IdempotentKeyStateEnum previousState;
+
+    /**
+     * Owner token of a successful claim, to present to
+     * {@link IdempotentStore#markCompleted} and {@link IdempotentStore#release}.
+     */
+    private final String owner;
+
+    /**
+     * Encoded response stored with a completed key, null if none was stored or the store
+     * does not keep responses.
+     */
+    private final byte[] response;
+
+    /**
+     * How long the key is still kept in its current state, null when the store does not
+     * report it, {@link java.time.temporal.ChronoUnit#FOREVER} for keys that never expire.
+     */
+    private final Duration remainingTtl;
+
+    private IdempotentClaim(IdempotentKeyStateEnum previousState, String owner, byte[] response,
+                            Duration remainingTtl) {
+        this.previousState = previousState;
+        this.owner = owner;
+        this.response = response;
+        this.remainingTtl = remainingTtl;
+    }
+
+    public static IdempotentClaim acquired(String owner) {
+        return new IdempotentClaim(IdempotentKeyStateEnum.ABSENT, owner, null, null);
+    }
+
+    public static IdempotentClaim rejected(IdempotentKeyStateEnum currentState) {
+        return new IdempotentClaim(currentState, null, null, null);
+    }
+
+    public static IdempotentClaim rejected(IdempotentKeyStateEnum currentState, byte[] response) {
+        return new IdempotentClaim(currentState, null, response, null);
+    }
+
+    public static IdempotentClaim rejected(IdempotentKeyStateEnum currentState, byte[] response,
+                                           Duration remainingTtl) {
+        return new IdempotentClaim(currentState, null, response, remainingTtl);
+    }
+
+    public boolean isAcquired() {
+        return previousState == IdempotentKeyStateEnum.ABSENT;
+    }
+}
@@ -0,0 +1,132 @@
+package com.cloudnative.idm.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Storage of idempotency keys, the backend behind every handler.
+ *
+ * <p>
+ * A key moves from {@link IdempotentKeyStateEnum#ABSENT} to
+ * {@link IdempotentKeyStateEnum#IN_PROGRESS} when claimed, then either to
+ * {@link IdempotentKeyStateEnum#COMPLETED} once the guarded operation succeeded, or back
+ * to absent when the claim is released. Implementations must make {@link #claim} atomic
+ * across every node sharing the store, and must be thread-safe.
+ * </p>
+ *
+ * <p>
+ * Stores are registered by {@link #name()} in the {@link IdempotentStoreRegistry} and
+ * selected per scene or per {@code @Idempotent(store = ...)}.
+ * </p>
+ */
+public interface IdempotentStore {
+
+    /**
+     * Unique name of this store, referenced by {@code @Idempotent#store()}.
+     */
+    String name();
+
+    /**
+     * Atomically claim a key if it is absent.
+     *
+     * @param key       the idempotency key
+     * @param leaseTime how long the claim is held before it expires by itself, null for
+     *                  the store default
+     * @return the claim, acquired or carrying the current state of the key
+     */
+    IdempotentClaim claim(String key, Duration leaseTime);
+
+    /**
+     * Non-blocking variant of {@link #claim}, the default runs it inline.
+     */
+    default CompletionStage<IdempotentClaim> claimAsync(String key, Duration leaseTime) {
+        try {
+            return CompletableFuture.completedFuture(claim(key, leaseTime));
+        } catch (Throwable ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /**
+     * Claim several keys at once, each one independently.
+     *
+     * @return one claim per key, in the order of {@code keys}
+     */
+    default List<IdempotentClaim> claimAll(List<String> keys, Duration leaseTime) {
+        List<IdempotentClaim> claims = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            claims.add(claim(key, leaseTime));
+        }
+        return claims;
+    }
+
+    /**
+     * Record the success of the operation guarded by a claim.
+     *
+     * @param key       the claimed key
+     * @param owner     owner token of the claim
+     * @param retention how long duplicates keep being rejected, null for the store default
+     * @return whether the key is now completed, false when the claim was not held by
+     * {@code owner} anymore or the write is not confirmed yet
+     */
+    boolean markCompleted(String key, String owner, Duration retention);
+
+    /**
+     * Record the success of a claim together with the encoded response of the operation.
+     * <p>
+     * Stores able to keep responses override it and return the response in every later
+     * {@link IdempotentClaim#getResponse() rejected claim} of the key; the default drops it.
+     * </p>
+     *
+     * @param response encoded response, null to store none
+     * @return whether the key is now completed, as for {@link #markCompleted(String, String, Duration)}
+     */
+    default boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+        return markCompleted(key, owner, retention);
+    }
+
+    /**
+     * Record the success of several claims at once, stores with a pipelined or scripted
+     * batch API should override it; the default marks them one by one.
+     *
+     * @param keys      the claimed keys
+     * @param owners    owner token of each claim, in the order of {@code keys}
+     * @param retention how long duplicates keep being rejected, null for the store default
+     */
+    default void markAllCompleted(List<String> keys, List<String> owners, Duration retention) {
+        for (int i = 0; i < keys.size(); i++) {
+            markCompleted(keys.get(i), owners.get(i), retention);
+        }
+    }
+
+    /**
+     * Give a claim up, the key becomes absent again. Ignored if the claim is not held by
+     * {@code owner} anymore.
+     *
+     * @param key   the claimed key
+     * @param owner owner token of the claim
+     */
+    void release(String key, String owner);
+
+    /**
+     * Give several claims up at once, the default releases them one by one.
+     *
+     * @param keys   the claimed keys
+     * @param owners owner token of each claim, in the order of {@code keys}
+     */
+    default void releaseAll(List<String> keys, List<String> owners) {
+        for (int i = 0; i < keys.size(); i++) {
+            release(keys.get(i), owners.get(i));
+        }
+    }
+
+    /**
+     * Read the current state of a key.
+     */
+    IdempotentKeyStateEnum lookup(String key);
+}
@@ -0,0 +1,109 @@
+package com.cloudnative.idm.store;
+
+import cn.hutool.core.util.StrUtil;
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.enums.IdempotentClaimModeEnum;
+import com.cloudnative.idm.enums.IdempotentSceneEnum;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of the {@link IdempotentStore}s available to the handlers.
+ *
+ * <p>
+ * Stores are looked up by name. Methods pick theirs through {@code @Idempotent#store()},
+ * then through the store registered for their {@code @Idempotent#claimMode()}, falling
+ * back to the default store of their scene, then to the global default; the
+ * global default is the only registered store when there is just one.
+ * Resolution happens once per method when its plan is built.
+ * </p>
+ */
+public class IdempotentStoreRegistry {
+    private final Map<String, IdempotentStore> stores = new LinkedHashMap<>();
+
+    private final Map<IdempotentSceneEnum, IdempotentStore> sceneDefaults =
+            new EnumMap<>(IdempotentSceneEnum.class);
+
+    private final Map<IdempotentClaimModeEnum, IdempotentStore> claimModeStores =
+            new EnumMap<>(IdempotentClaimModeEnum.class);
+
+    private IdempotentStore defaultStore;
+
+    public IdempotentStoreRegistry(Collection<? extends IdempotentStore> stores) {
+        for (IdempotentStore store : stores) {
+            if (this.stores.putIfAbsent(store.name(), store) != null) {
+                throw new IllegalStateException(String.format("Duplicate idempotent store [%s]",
+                        store.name()));
+            }
+        }
+        if (this.stores.size() == 1) {
+            this.defaultStore = this.stores.values().iterator().next();
+        }
+    }
+
+    /**
+     * Use a store for every method without an explicit one.
+     */
+    public IdempotentStoreRegistry setDefaultStore(String storeName) {
+        this.defaultStore = getStore(storeName);
+        return this;
+    }
+
+    /**
+     * Use a store for the methods of a scene without an explicit one.
+     */
+    public IdempotentStoreRegistry setSceneDefault(IdempotentSceneEnum scene, String storeName) {
+        sceneDefaults.put(scene, getStore(storeName));
+        return this;
+    }
+
+    /**
+     * Use a store for the methods asking for a claim mode without an explicit store.
+     */
+    public IdempotentStoreRegistry setClaimModeStore(IdempotentClaimModeEnum claimMode, String storeName) {
+        claimModeStores.put(claimMode, getStore(storeName));
+        return this;
+    }
+
+    /**
+     * Find a store by name.
+     *
+     * @throws IllegalStateException if there is no such store
+     */
+    public IdempotentStore getStore(String storeName) {
+        IdempotentStore store = stores.get(storeName);
+        if (store == null) {
+            throw new IllegalStateException(String.format("Unknown idempotent store [%s]", storeName));
+        }
+        return store;
+    }
+
+    /**
+     * Resolve the store of an annotated method.
+     *
+     * @throws IllegalStateException if the named store is unknown, the claim mode has no
+     *                               store, or no default applies
+     */
+    public IdempotentStore resolve(Idempotent idempotent) {
+        if (StrUtil.isNotBlank(idempotent.store())) {
+            return getStore(idempotent.store());
+        }
+        if (idempotent.claimMode() != IdempotentClaimModeEnum.DEFAULT) {
+            IdempotentStore store = claimModeStores.get(idempotent.claimMode());
+            if (store == null) {
+                throw new IllegalStateException(String.format("No idempotent store configured for claim mode [%s]",
+                        idempotent.claimMode()));
+            }
+            return store;
+        }
+        IdempotentStore store = sceneDefaults.getOrDefault(idempotent.scene(), defaultStore);
+        if (store == null) {
+            throw new IllegalStateException(String.format("No idempotent store configured for scene [%s]",
+                    idempotent.scene()));
+        }
+        return store;
+    }
+}
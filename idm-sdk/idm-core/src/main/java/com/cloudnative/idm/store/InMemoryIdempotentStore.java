@@ -0,0 +1,179 @@
+package com.cloudnative.idm.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.snapshot.IdempotentSnapshotSupport;
+import com.cloudnative.idm.snapshot.IdempotentSnapshotWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IdempotentStore} kept in a local {@link ConcurrentHashMap}.
+ *
+ * <p>
+ * Only deduplicates within one JVM. Meant for single instance services, tests, and as the
+ * fast local tier in front of a shared store. Expired keys are dropped lazily when touched
+ * and by {@link #purgeExpired()}. Completed keys can be saved across restarts with an
+ * {@link com.cloudnative.idm.snapshot.IdempotentSnapshotter}.
+ * </p>
+ */
+public class InMemoryIdempotentStore implements IdempotentStore, IdempotentSnapshotSupport {
+    /**
+     * Owner of the keys restored from a snapshot, never handed out by {@link #claim}.
+     */
+    private static final String RESTORED_OWNER = "";
+
+    private final String name;
+
+    private final ConcurrentMap<String, KeyEntry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong ownerSequence = new AtomicLong();
+
+    public InMemoryIdempotentStore() {
+        this("memory");
+    }
+
+    public InMemoryIdempotentStore(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        long now = System.nanoTime();
+        String owner = Long.toString(ownerSequence.incrementAndGet(), 36);
+        KeyEntry created = new KeyEntry(IdempotentKeyStateEnum.IN_PROGRESS, owner, expiresAt(now, leaseTime), null);
+        KeyEntry current = entries.compute(key, (k, existing) ->
+                existing == null || existing.isExpired(now) ? created : existing);
+        return current == created ? IdempotentClaim.acquired(owner)
+                : IdempotentClaim.rejected(current.state, current.response, current.remainingTtl(now));
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        return markCompleted(key, owner, retention, null);
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+        long now = System.nanoTime();
+        KeyEntry current = entries.computeIfPresent(key, (k, existing) -> Objects.equals(existing.owner, owner)
+                ? new KeyEntry(IdempotentKeyStateEnum.COMPLETED, owner, expiresAt(now, retention), response)
+                : existing);
+        // Owners are unique per claim, a completed entry of ours is the one just written
+        return current != null && current.state == IdempotentKeyStateEnum.COMPLETED
+                && Objects.equals(current.owner, owner);
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        entries.computeIfPresent(key, (k, existing) -> Objects.equals(existing.owner, owner) ? null : existing);
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        KeyEntry entry = entries.get(key);
+        if (entry == null) {
+            return IdempotentKeyStateEnum.ABSENT;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key, entry);
+            return IdempotentKeyStateEnum.ABSENT;
+        }
+        return entry.state;
+    }
+
+    /**
+     * Drop every expired key.
+     *
+     * @return the number of keys dropped
+     */
+    public int purgeExpired() {
+        long now = System.nanoTime();
+        int purged = 0;
+        for (Map.Entry<String, KeyEntry> each : entries.entrySet()) {
+            if (each.getValue().isExpired(now) && entries.remove(each.getKey(), each.getValue())) {
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Number of keys held, expired ones included until purged.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String snapshotKeyFormat() {
+        return "utf8";
+    }
+
+    @Override
+    public void writeSnapshot(IdempotentSnapshotWriter writer) throws IOException {
+        long nowNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        for (Map.Entry<String, KeyEntry> each : entries.entrySet()) {
+            KeyEntry entry = each.getValue();
+            if (entry.state == IdempotentKeyStateEnum.COMPLETED && !entry.isExpired(nowNanos)) {
+                long expiresAt = entry.expiresAtNanos == Long.MAX_VALUE ? Long.MAX_VALUE
+                        : nowMillis + (entry.expiresAtNanos - nowNanos) / 1_000_000L;
+                writer.write(each.getKey().getBytes(StandardCharsets.UTF_8), expiresAt, entry.response);
+            }
+        }
+    }
+
+    @Override
+    public void restoreCompleted(byte[] key, long expiresAtEpochMillis, byte[] response) {
+        long expiresAtNanos = expiresAtEpochMillis == Long.MAX_VALUE ? Long.MAX_VALUE
+                : System.nanoTime() + (expiresAtEpochMillis - System.currentTimeMillis()) * 1_000_000L;
+        entries.putIfAbsent(new String(key, StandardCharsets.UTF_8),
+                new KeyEntry(IdempotentKeyStateEnum.COMPLETED, RESTORED_OWNER, expiresAtNanos, response));
+    }
+
+    private static long expiresAt(long now, Duration ttl) {
+        return ttl == null ? Long.MAX_VALUE : now + ttl.toNanos();
+    }
+
+    private static final class KeyEntry {
+        private final IdempotentKeyStateEnum state;
+
+        private final String owner;
+
+        /**
+         * {@link System#nanoTime()} deadline, {@link Long#MAX_VALUE} for no expiration.
+         */
+        private final long expiresAtNanos;
+
+        private final byte[] response;
+
+        private KeyEntry(IdempotentKeyStateEnum state, String owner, long expiresAtNanos, byte[] response) {
+            this.state = state;
+            this.owner = owner;
+            this.expiresAtNanos = expiresAtNanos;
+            this.response = response;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAtNanos != Long.MAX_VALUE && now - expiresAtNanos >= 0;
+        }
+
+        private Duration remainingTtl(long now) {
+            return expiresAtNanos == Long.MAX_VALUE ? ChronoUnit.FOREVER.getDuration()
+                    : Duration.ofNanos(expiresAtNanos - now);
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package com.cloudnative.idm.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.key.Murmur3Hasher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link IdempotentStore} persisted to a local append-only log, for single node
+ * deployments that must keep deduplicating across restarts without a shared store.
+ *
+ * <p>
+ * Every state change appends one fixed-size record, holding the full new state of the
+ * key, to the active segment, a file mapped in memory; a segment full is sealed and a new
+ * one is created. The current state of every key is kept in an in-memory index from its
+ * 128-bit MurmurHash3 fingerprint to its latest record, rebuilt on startup by replaying
+ * the segments in order. A record cut short by a crash fails its checksum and ends the
+ * replay of its segment.
+ * </p>
+ *
+ * <p>
+ * With {@code fsync} enabled, a call returns only once its record is forced to disk.
+ * Forces are group committed: while one thread forces, the others append, and the next
+ * force covers all of them. Without it records are left to the page cache, surviving a
+ * process crash but not a power loss.
+ * </p>
+ *
+ * <p>
+ * {@link #compact()} deletes sealed segments oldest first, appending again the records
+ * still live in them and dropping expired and superseded ones; deleting in order keeps
+ * removal records ahead of the records they cancel. Responses are not kept.
+ * </p>
+ */
+public class MappedLogIdempotentStore implements IdempotentStore, Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+    static final int RECORD_BYTES = 40;
+
+    private static final byte IN_PROGRESS = 1;
+
+    private static final byte COMPLETED = 2;
+
+    private static final byte REMOVED = 3;
+
+    private static final int CRC = 4;
+
+    private static final int HI = 8;
+
+    private static final int LO = 16;
+
+    private static final int OWNER = 24;
+
+    private static final int EXPIRES_AT = 32;
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private static final String SUFFIX = ".log";
+
+    private final String name;
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final boolean fsync;
+
+    /**
+     * Guards the index, the segments and the appends.
+     */
+    private final Object lock = new Object();
+
+    private final Map<Fingerprint, IndexEntry> index = new HashMap<>();
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private long ownerSequence;
+
+    private long appendedRecords;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private volatile long durableRecords;
+
+    private long recoveredRecords;
+
+    private boolean closed;
+
+    public MappedLogIdempotentStore(String name, Path directory) {
+        this(name, directory, DEFAULT_SEGMENT_BYTES, true);
+    }
+
+    /**
+     * Open the log in {@code directory}, creating it if needed, and rebuild the index.
+     *
+     * @param name         name of this store
+     * @param directory    directory of the segment files, owned by this store
+     * @param segmentBytes size of a segment file
+     * @param fsync        whether every call waits for its record to be forced to disk
+     */
+    public MappedLogIdempotentStore(String name, Path directory, int segmentBytes, boolean fsync) {
+        if (segmentBytes < RECORD_BYTES) {
+            throw new IllegalArgumentException(String.format("Segment size too small [%s]", segmentBytes));
+        }
+        this.name = name;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(String.format("Cannot open idempotent log [%s]", directory), ex);
+        }
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        Fingerprint fingerprint = fingerprint(key);
+        long now = System.currentTimeMillis();
+        long owner;
+        long record;
+        synchronized (lock) {
+            IndexEntry entry = index.get(fingerprint);
+            if (entry != null && entry.expiresAt > now) {
+                return IdempotentClaim.rejected(entry.state == COMPLETED ? IdempotentKeyStateEnum.COMPLETED
+                        : IdempotentKeyStateEnum.IN_PROGRESS, null, entry.expiresAt == NEVER
+                        ? ChronoUnit.FOREVER.getDuration() : Duration.ofMillis(entry.expiresAt - now));
+            }
+            owner = ++ownerSequence;
+            record = put(fingerprint, IN_PROGRESS, owner, expiresAt(now, leaseTime));
+        }
+        awaitDurable(record);
+        return IdempotentClaim.acquired(Long.toString(owner, 36));
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        Fingerprint fingerprint = fingerprint(key);
+        long ownerId = ownerId(owner);
+        long record;
+        synchronized (lock) {
+            IndexEntry entry = index.get(fingerprint);
+            if (entry == null || entry.owner != ownerId) {
+                return false;
+            }
+            record = put(fingerprint, COMPLETED, ownerId, expiresAt(System.currentTimeMillis(), retention));
+        }
+        awaitDurable(record);
+        return true;
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        Fingerprint fingerprint = fingerprint(key);
+        long ownerId = ownerId(owner);
+        long record;
+        synchronized (lock) {
+            IndexEntry entry = index.get(fingerprint);
+            if (entry == null || entry.owner != ownerId) {
+                return;
+            }
+            record = put(fingerprint, REMOVED, ownerId, 0);
+        }
+        awaitDurable(record);
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        Fingerprint fingerprint = fingerprint(key);
+        synchronized (lock) {
+            IndexEntry entry = index.get(fingerprint);
+            if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+                return IdempotentKeyStateEnum.ABSENT;
+            }
+            return entry.state == COMPLETED ? IdempotentKeyStateEnum.COMPLETED : IdempotentKeyStateEnum.IN_PROGRESS;
+        }
+    }
+
+    /**
+     * Delete every sealed segment, oldest first, after appending again the records of the
+     * keys still live in it.
+     *
+     * @return number of segment files deleted
+     */
+    public int compact() {
+        int deleted = 0;
+        // Same order as awaitDurable, which takes the lock while holding the flush lock
+        flushLock.lock();
+        try {
+            synchronized (lock) {
+                checkOpen();
+                long now = System.currentTimeMillis();
+                index.values().removeIf(entry -> entry.expiresAt <= now);
+                // Segments created while moving records are not part of this pass
+                List<Segment> sealed = new ArrayList<>(segments);
+                if (!sealed.isEmpty()) {
+                    sealed.remove(sealed.size() - 1);
+                }
+                for (Segment segment : sealed) {
+                    for (int position = 0; position < segment.writePosition; position += RECORD_BYTES) {
+                        Fingerprint fingerprint = new Fingerprint(segment.buffer.getLong(position + HI),
+                                segment.buffer.getLong(position + LO));
+                        IndexEntry entry = index.get(fingerprint);
+                        if (entry != null && entry.segment == segment && entry.position == position) {
+                            put(fingerprint, entry.state, entry.owner, entry.expiresAt);
+                        }
+                    }
+                    // Moved records must be on disk before the only other copy goes away
+                    if (fsync) {
+                        forceAll();
+                    }
+                    segments.remove(segment);
+                    segment.delete();
+                    deleted++;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        return deleted;
+    }
+
+    /**
+     * Number of live keys, expired ones included until compacted.
+     */
+    public int size() {
+        synchronized (lock) {
+            return index.size();
+        }
+    }
+
+    public int getSegmentCount() {
+        synchronized (lock) {
+            return segments.size();
+        }
+    }
+
+    /**
+     * Number of records replayed when the store was opened.
+     */
+    public long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    /**
+     * Force the log to disk and release the files; the store cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        flushLock.lock();
+        try {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                forceAll();
+                for (Segment segment : segments) {
+                    segment.close();
+                }
+                closed = true;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Append the new state of a key and point the index at it.
+     *
+     * @return sequence number of the appended record
+     */
+    private long put(Fingerprint fingerprint, byte state, long owner, long expiresAt) {
+        checkOpen();
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.writePosition + RECORD_BYTES > segmentBytes) {
+            segment = roll(segment);
+        }
+        int position = segment.writePosition;
+        segment.write(position, state, fingerprint, owner, expiresAt);
+        segment.writePosition = position + RECORD_BYTES;
+        if (state == REMOVED) {
+            index.remove(fingerprint);
+        } else {
+            index.put(fingerprint, new IndexEntry(state, owner, expiresAt, segment, position));
+        }
+        return ++appendedRecords;
+    }
+
+    /**
+     * Force every appended record, holding both locks.
+     */
+    private void forceAll() {
+        for (Segment segment : segments) {
+            segment.force(segment.writePosition);
+        }
+        durableRecords = appendedRecords;
+    }
+
+    private Segment roll(Segment active) {
+        try {
+            Segment next = Segment.open(directory, active == null ? 1 : active.sequence + 1, segmentBytes);
+            segments.addLast(next);
+            return next;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(String.format("Cannot create idempotent log segment in [%s]",
+                    directory), ex);
+        }
+    }
+
+    /**
+     * Wait until the given record is on disk, forcing it along with every record appended
+     * so far unless another thread already did.
+     */
+    private void awaitDurable(long record) {
+        if (!fsync || durableRecords >= record) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            if (durableRecords >= record) {
+                return;
+            }
+            List<Segment> dirty = new ArrayList<>();
+            List<Integer> limits = new ArrayList<>();
+            long appended;
+            synchronized (lock) {
+                appended = appendedRecords;
+                for (Segment segment : segments) {
+                    if (segment.forcedPosition < segment.writePosition) {
+                        dirty.add(segment);
+                        limits.add(segment.writePosition);
+                    }
+                }
+            }
+            for (int i = 0; i < dirty.size(); i++) {
+                dirty.get(i).force(limits.get(i));
+            }
+            durableRecords = appended;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            Segment segment = Segment.open(directory, Long.parseLong(fileName.substring(0,
+                    fileName.length() - SUFFIX.length())), segmentBytes);
+            segments.addLast(segment);
+            int position = 0;
+            while (position + RECORD_BYTES <= segment.buffer.capacity() && segment.isValid(position)) {
+                byte state = segment.buffer.get(position);
+                Fingerprint fingerprint = new Fingerprint(segment.buffer.getLong(position + HI),
+                        segment.buffer.getLong(position + LO));
+                long owner = segment.buffer.getLong(position + OWNER);
+                if (state == REMOVED) {
+                    index.remove(fingerprint);
+                } else {
+                    index.put(fingerprint, new IndexEntry(state, owner, segment.buffer.getLong(position + EXPIRES_AT),
+                            segment, position));
+                }
+                ownerSequence = Math.max(ownerSequence, owner);
+                recoveredRecords++;
+                position += RECORD_BYTES;
+            }
+            segment.writePosition = position;
+            segment.forcedPosition = position;
+        }
+        long now = System.currentTimeMillis();
+        index.values().removeIf(entry -> entry.expiresAt <= now);
+        // Pages are not written back in order, valid records may follow a torn one: drop
+        // them before appending over the tail
+        Segment last = segments.peekLast();
+        if (last != null) {
+            last.clearFrom(last.writePosition);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException(String.format("Idempotent log [%s] is closed", name));
+        }
+    }
+
+    private static Fingerprint fingerprint(String key) {
+        long[] hash = new Murmur3Hasher().putChars(key).finish();
+        return new Fingerprint(hash[0], hash[1]);
+    }
+
+    private static long ownerId(String owner) {
+        try {
+            return owner == null ? 0 : Long.parseLong(owner, 36);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static long expiresAt(long now, Duration ttl) {
+        return ttl == null ? NEVER : now + Math.max(0L, ttl.toMillis());
+    }
+
+    private static final class Fingerprint {
+        private final long hi;
+
+        private final long lo;
+
+        private Fingerprint(long hi, long lo) {
+            this.hi = hi;
+            this.lo = lo;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Fingerprint && ((Fingerprint) other).hi == hi && ((Fingerprint) other).lo == lo;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) lo;
+        }
+    }
+
+    private static final class IndexEntry {
+        private final byte state;
+
+        private final long owner;
+
+        private final long expiresAt;
+
+        /**
+         * Location of the latest record of the key.
+         */
+        private final Segment segment;
+
+        private final int position;
+
+        private IndexEntry(byte state, long owner, long expiresAt, Segment segment, int position) {
+            this.state = state;
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+
+    /**
+     * One mapped log file. Record layout: state byte, 3 reserved bytes, CRC32C of the
+     * state and the payload, then fingerprint high and low, owner and expiration.
+     */
+    private static final class Segment {
+        private final long sequence;
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private int writePosition;
+
+        private int forcedPosition;
+
+        private Segment(long sequence, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private static Segment open(Path directory, long sequence, int segmentBytes) throws IOException {
+            Path file = directory.resolve(String.format("%020d%s", sequence, SUFFIX));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = Math.max(channel.size(), segmentBytes);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(sequence, file, channel, buffer);
+        }
+
+        private void write(int position, byte state, Fingerprint fingerprint, long owner, long expiresAt) {
+            buffer.putLong(position + HI, fingerprint.hi);
+            buffer.putLong(position + LO, fingerprint.lo);
+            buffer.putLong(position + OWNER, owner);
+            buffer.putLong(position + EXPIRES_AT, expiresAt);
+            buffer.putInt(position + CRC, checksum(position, state));
+            // The state byte goes last: a record is never seen without its payload
+            buffer.put(position, state);
+        }
+
+        private boolean isValid(int position) {
+            byte state = buffer.get(position);
+            return state >= IN_PROGRESS && state <= REMOVED && buffer.getInt(position + CRC) == checksum(position, state);
+        }
+
+        private int checksum(int position, byte state) {
+            CRC32C crc = new CRC32C();
+            crc.update(state);
+            crc.update(buffer.slice(position + HI, RECORD_BYTES - HI));
+            return (int) crc.getValue();
+        }
+
+        private void force(int limit) {
+            if (forcedPosition < limit) {
+                buffer.force(forcedPosition, limit - forcedPosition);
+                forcedPosition = limit;
+            }
+        }
+
+        private void clearFrom(int from) {
+            for (int position = from; position + 8 <= buffer.capacity(); position += 8) {
+                if (buffer.getLong(position) != 0) {
+                    buffer.putLong(position, 0);
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(String.format("Cannot delete idempotent log segment [%s]", file), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.cloudnative.idm.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.snapshot.IdempotentSnapshotSupport;
+import com.cloudnative.idm.snapshot.IdempotentSnapshotWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two-tier {@link IdempotentStore}: a bounded local cache of completed keys in front of a
+ * shared store.
+ *
+ * <p>
+ * Completed is the only state cached, being the only one that cannot change before it
+ * expires, together with the response stored for replay if any. A duplicate of a completed
+ * request is then rejected in-process, without the round trip to the shared store; every
+ * other call goes through to the delegate. Only completions the delegate confirms are
+ * cached, a stale owner completing a key it lost is not; batch completions are not
+ * confirmed one by one and get cached on the first duplicate claim instead. A key is
+ * cached for its retention, or for the time the delegate reports it is still kept when
+ * learned from a claim, and at most {@code timeToLive}; delegates not reporting that time
+ * only get their own completions cached.
+ * </p>
+ *
+ * <p>
+ * The cache is split in stripes by key hash, each one an LRU map under its own lock, so
+ * that concurrent claims of different keys rarely contend. Stripes share
+ * {@code maximumSize} evenly and evict independently, which approximates a global LRU
+ * order; caches too small to split keep a single stripe and an exact one.
+ * </p>
+ *
+ * <p>
+ * Hit, miss and eviction counters are kept to size the cache. The local tier can be
+ * saved across restarts with an {@link com.cloudnative.idm.snapshot.IdempotentSnapshotter},
+ * so that a restarted node does not send every duplicate to the shared store again.
+ * </p>
+ */
+public class NearCacheIdempotentStore implements IdempotentStore, IdempotentSnapshotSupport {
+    private static final int MAX_STRIPES = 64;
+
+    /**
+     * Smallest share of {@code maximumSize} worth a stripe of its own.
+     */
+    private static final int MIN_STRIPE_SIZE = 64;
+
+    private final String name;
+
+    private final IdempotentStore delegate;
+
+    private final long timeToLiveNanos;
+
+    /**
+     * Completed keys, a power of two number of stripes each in access order.
+     */
+    private final Stripe[] stripes;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Decorate a store under its own name, to be registered in place of it.
+     */
+    public NearCacheIdempotentStore(IdempotentStore delegate, int maximumSize, Duration timeToLive) {
+        this(delegate.name(), delegate, maximumSize, timeToLive);
+    }
+
+    public NearCacheIdempotentStore(String name, IdempotentStore delegate, int maximumSize, Duration timeToLive) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException(String.format("Near cache size must be positive [%s]", maximumSize));
+        }
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException(String.format("Near cache TTL must be positive [%s]", timeToLive));
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        int stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, maximumSize / MIN_STRIPE_SIZE)));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maximumSize / stripeCount + (i < maximumSize % stripeCount ? 1 : 0));
+        }
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        LocalEntry hit = hit(key);
+        if (hit != null) {
+            return hit.toClaim();
+        }
+        return remember(key, delegate.claim(key, leaseTime));
+    }
+
+    @Override
+    public CompletionStage<IdempotentClaim> claimAsync(String key, Duration leaseTime) {
+        LocalEntry hit = hit(key);
+        if (hit != null) {
+            return CompletableFuture.completedFuture(hit.toClaim());
+        }
+        return delegate.claimAsync(key, leaseTime).thenApply(claim -> remember(key, claim));
+    }
+
+    @Override
+    public List<IdempotentClaim> claimAll(List<String> keys, Duration leaseTime) {
+        IdempotentClaim[] claims = new IdempotentClaim[keys.size()];
+        List<String> remoteKeys = new ArrayList<>(keys.size());
+        for (int i = 0; i < claims.length; i++) {
+            LocalEntry hit = hit(keys.get(i));
+            if (hit != null) {
+                claims[i] = hit.toClaim();
+            } else {
+                remoteKeys.add(keys.get(i));
+            }
+        }
+        if (!remoteKeys.isEmpty()) {
+            List<IdempotentClaim> remoteClaims = delegate.claimAll(remoteKeys, leaseTime);
+            int next = 0;
+            for (int i = 0; i < claims.length; i++) {
+                if (claims[i] == null) {
+                    claims[i] = remember(keys.get(i), remoteClaims.get(next++));
+                }
+            }
+        }
+        return List.of(claims);
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        if (!delegate.markCompleted(key, owner, retention)) {
+            return false;
+        }
+        put(key, localTtl(retention), null);
+        return true;
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+        if (!delegate.markCompleted(key, owner, retention, response)) {
+            return false;
+        }
+        put(key, localTtl(retention), response);
+        return true;
+    }
+
+    @Override
+    public void markAllCompleted(List<String> keys, List<String> owners, Duration retention) {
+        // Not confirmed per key, the next claim of each one caches it
+        delegate.markAllCompleted(keys, owners, retention);
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        invalidate(key);
+        delegate.release(key, owner);
+    }
+
+    @Override
+    public void releaseAll(List<String> keys, List<String> owners) {
+        for (String key : keys) {
+            invalidate(key);
+        }
+        delegate.releaseAll(keys, owners);
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        if (hit(key) != null) {
+            return IdempotentKeyStateEnum.COMPLETED;
+        }
+        // Not cached, the response is unknown and a later claim must fetch it
+        return delegate.lookup(key);
+    }
+
+    /**
+     * Drop a key from the local tier only.
+     */
+    public void invalidate(String key) {
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    public IdempotentStore getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Number of claims and lookups answered locally.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Number of claims and lookups sent to the delegate.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Number of keys dropped because the cache was full, expirations excluded.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Number of keys held, expired ones included until touched.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String snapshotKeyFormat() {
+        return "utf8";
+    }
+
+    /**
+     * Copies each stripe under its lock, then writes the copy without holding it.
+     */
+    @Override
+    public void writeSnapshot(IdempotentSnapshotWriter writer) throws IOException {
+        long nowNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            String[] keys;
+            LocalEntry[] entries;
+            synchronized (stripe) {
+                keys = stripe.keySet().toArray(new String[0]);
+                entries = stripe.values().toArray(new LocalEntry[0]);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                long remaining = entries[i].expiresAtNanos - nowNanos;
+                if (remaining > 0) {
+                    writer.write(keys[i].getBytes(StandardCharsets.UTF_8), nowMillis + remaining / 1_000_000L,
+                            entries[i].response);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void restoreCompleted(byte[] key, long expiresAtEpochMillis, byte[] response) {
+        long remaining = expiresAtEpochMillis == Long.MAX_VALUE ? Long.MAX_VALUE
+                : (expiresAtEpochMillis - System.currentTimeMillis()) * 1_000_000L;
+        long ttl = Math.min(timeToLiveNanos, remaining);
+        if (ttl > 0) {
+            LocalEntry entry = new LocalEntry(System.nanoTime() + ttl, response);
+            String restored = new String(key, StandardCharsets.UTF_8);
+            Stripe stripe = stripeOf(restored);
+            synchronized (stripe) {
+                stripe.putIfAbsent(restored, entry);
+            }
+        }
+    }
+
+    /**
+     * The local entry of a completed key, null on a miss.
+     */
+    private LocalEntry hit(String key) {
+        long now = System.nanoTime();
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            LocalEntry entry = stripe.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAtNanos < 0) {
+                    hitCount.increment();
+                    return entry;
+                }
+                stripe.remove(key);
+            }
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * Cache a completed key reported by the delegate for the time it is still retained
+     * there, at most the local TTL. Claims not reporting that time are not cached, the
+     * retention of their method being unknown.
+     */
+    private IdempotentClaim remember(String key, IdempotentClaim claim) {
+        if (claim.getPreviousState() == IdempotentKeyStateEnum.COMPLETED && claim.getRemainingTtl() != null) {
+            put(key, localTtl(claim.getRemainingTtl()), claim.getResponse());
+        }
+        return claim;
+    }
+
+    private long localTtl(Duration retention) {
+        if (retention == null || retention.compareTo(Duration.ofNanos(timeToLiveNanos)) >= 0) {
+            return timeToLiveNanos;
+        }
+        return retention.toNanos();
+    }
+
+    private void put(String key, long ttlNanos, byte[] response) {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        LocalEntry entry = new LocalEntry(System.nanoTime() + ttlNanos, response);
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.put(key, entry);
+        }
+    }
+
+    private Stripe stripeOf(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ hash >>> 16) & stripes.length - 1];
+    }
+
+    /**
+     * One share of the cache, guarded by its own monitor.
+     */
+    private final class Stripe extends LinkedHashMap<String, LocalEntry> {
+        private final int maximumSize;
+
+        private Stripe(int maximumSize) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LocalEntry> eldest) {
+            if (size() > maximumSize) {
+                evictionCount.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class LocalEntry {
+        private final long expiresAtNanos;
+
+        /**
+         * Encoded response of the completed call, null if none was stored.
+         */
+        private final byte[] response;
+
+        private LocalEntry(long expiresAtNanos, byte[] response) {
+            this.expiresAtNanos = expiresAtNanos;
+            this.response = response;
+        }
+
+        private IdempotentClaim toClaim() {
+            return IdempotentClaim.rejected(IdempotentKeyStateEnum.COMPLETED, response);
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package com.cloudnative.idm.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.key.Murmur3Hasher;
+import com.cloudnative.idm.snapshot.IdempotentSnapshotSupport;
+import com.cloudnative.idm.snapshot.IdempotentSnapshotWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IdempotentStore} kept off-heap in the local process, for single instance
+ * services and tests holding too many keys for {@link InMemoryIdempotentStore}.
+ *
+ * <p>
+ * A key is reduced to its 128-bit MurmurHash3 fingerprint, stored with the owner, the
+ * state and the expiration in a 32-byte slot of an open addressing table in a direct
+ * {@link ByteBuffer}, so the heap holds no object per key. The table is split into
+ * segments, each with its own lock, table and expiry wheel; a segment doubles its table
+ * when three quarters full. Two keys sharing a fingerprint would be taken for one, which
+ * at 128 bits does not happen in practice.
+ * </p>
+ *
+ * <p>
+ * Expired keys are rejected as soon as they expire, and freed by a hierarchical timing
+ * wheel of {@value #WHEEL_LEVELS} levels of {@value #WHEEL_SIZE} buckets per segment,
+ * advanced by the operations on the segment, so no thread scans the table. Responses
+ * are not kept. Completed keys can be saved across restarts with an
+ * {@link com.cloudnative.idm.snapshot.IdempotentSnapshotter}, as fingerprints.
+ * </p>
+ */
+public class OffHeapIdempotentStore implements IdempotentStore, IdempotentSnapshotSupport {
+    public static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+
+    public static final int DEFAULT_SEGMENTS = 64;
+
+    public static final Duration DEFAULT_TICK = Duration.ofMillis(100);
+
+    static final int WHEEL_LEVELS = 4;
+
+    static final int WHEEL_SIZE = 64;
+
+    private static final int WHEEL_BITS = 6;
+
+    private static final int SLOT_BYTES = 32;
+
+    private static final int LO = 8;
+
+    /**
+     * Owner sequence shifted left by one, the low bit set once completed.
+     */
+    private static final int META = 16;
+
+    private static final int EXPIRES_AT = 24;
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final String name;
+
+    private final Segment[] segments;
+
+    private final long tickMillis;
+
+    private final AtomicLong ownerSequence = new AtomicLong();
+
+    /**
+     * Start of the monotonic clock, expirations are stored in millis since then.
+     */
+    private final long originNanos = System.nanoTime();
+
+    public OffHeapIdempotentStore() {
+        this("offheap", DEFAULT_INITIAL_CAPACITY, DEFAULT_SEGMENTS, DEFAULT_TICK);
+    }
+
+    /**
+     * @param name            name of this store
+     * @param initialCapacity number of keys held before the first resize, over all segments
+     * @param segments        number of independently locked segments, a power of two
+     * @param tick            resolution of the expiry wheel, keys are freed up to one tick
+     *                        after they expire
+     */
+    public OffHeapIdempotentStore(String name, int initialCapacity, int segments, Duration tick) {
+        if (segments <= 0 || Integer.bitCount(segments) != 1) {
+            throw new IllegalArgumentException(String.format("Segments must be a power of two [%s]", segments));
+        }
+        if (tick == null || tick.toMillis() <= 0) {
+            throw new IllegalArgumentException(String.format("Tick must be at least one millisecond [%s]", tick));
+        }
+        this.name = name;
+        this.tickMillis = tick.toMillis();
+        this.segments = new Segment[segments];
+        int slots = Integer.highestOneBit(Math.max(16, (int) (initialCapacity / 0.75 / segments) * 2 - 1));
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment(slots);
+        }
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        long[] fingerprint = fingerprint(key);
+        long now = now();
+        long owner = ownerSequence.incrementAndGet();
+        Segment segment = segmentOf(fingerprint);
+        long rejected;
+        synchronized (segment) {
+            segment.advance(now);
+            rejected = segment.claim(fingerprint[0], fingerprint[1], owner << 1, expiresAt(now, leaseTime), now);
+        }
+        if (rejected == 0) {
+            return IdempotentClaim.acquired(Long.toString(owner, 36));
+        }
+        return IdempotentClaim.rejected(stateOf(rejected));
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        long ownerId = ownerId(owner);
+        if (ownerId == 0) {
+            return false;
+        }
+        long[] fingerprint = fingerprint(key);
+        long now = now();
+        Segment segment = segmentOf(fingerprint);
+        synchronized (segment) {
+            segment.advance(now);
+            return segment.complete(fingerprint[0], fingerprint[1], ownerId, expiresAt(now, retention));
+        }
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        long ownerId = ownerId(owner);
+        if (ownerId == 0) {
+            return;
+        }
+        long[] fingerprint = fingerprint(key);
+        Segment segment = segmentOf(fingerprint);
+        synchronized (segment) {
+            segment.release(fingerprint[0], fingerprint[1], ownerId);
+        }
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        long[] fingerprint = fingerprint(key);
+        long now = now();
+        Segment segment = segmentOf(fingerprint);
+        long meta;
+        synchronized (segment) {
+            meta = segment.lookup(fingerprint[0], fingerprint[1], now);
+        }
+        return meta == 0 ? IdempotentKeyStateEnum.ABSENT : stateOf(meta);
+    }
+
+    /**
+     * Number of keys held, expired ones included until freed by the wheel.
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Off-heap memory taken by the tables.
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.table.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String snapshotKeyFormat() {
+        return "murmur3-128";
+    }
+
+    /**
+     * Copies the completed keys of one segment at a time under its lock, then writes them
+     * without holding it.
+     */
+    @Override
+    public void writeSnapshot(IdempotentSnapshotWriter writer) throws IOException {
+        for (Segment segment : segments) {
+            long[] completed;
+            long now;
+            synchronized (segment) {
+                now = now();
+                completed = segment.completed(now);
+            }
+            long nowMillis = System.currentTimeMillis();
+            for (int i = 0; i < completed.length; i += 3) {
+                byte[] key = ByteBuffer.allocate(16).putLong(completed[i]).putLong(completed[i + 1]).array();
+                long expiresAt = completed[i + 2];
+                writer.write(key, expiresAt == NEVER ? NEVER : nowMillis + expiresAt - now, null);
+            }
+        }
+    }
+
+    /**
+     * Restored keys have no owner, they cannot be released or completed again.
+     */
+    @Override
+    public void restoreCompleted(byte[] key, long expiresAtEpochMillis, byte[] response) {
+        ByteBuffer fingerprint = ByteBuffer.wrap(key);
+        long hi = fingerprint.getLong();
+        long lo = fingerprint.getLong();
+        long now = now();
+        long expiresAt = expiresAtEpochMillis == NEVER ? NEVER
+                : now + expiresAtEpochMillis - System.currentTimeMillis();
+        Segment segment = segments[(int) hi & (segments.length - 1)];
+        synchronized (segment) {
+            segment.advance(now);
+            segment.claim(hi, lo, 1, expiresAt, now);
+        }
+    }
+
+    /**
+     * Free every key expired by now, without waiting for the next operation on its segment.
+     */
+    public void purgeExpired() {
+        long now = now();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.advance(now);
+            }
+        }
+    }
+
+    private Segment segmentOf(long[] fingerprint) {
+        return segments[(int) fingerprint[0] & (segments.length - 1)];
+    }
+
+    private long now() {
+        return (System.nanoTime() - originNanos) / 1_000_000L;
+    }
+
+    private static long expiresAt(long now, Duration ttl) {
+        return ttl == null ? NEVER : now + Math.max(0L, ttl.toMillis());
+    }
+
+    private static long[] fingerprint(String key) {
+        long[] fingerprint = new Murmur3Hasher().putChars(key).finish();
+        if (fingerprint[0] == 0 && fingerprint[1] == 0) {
+            // All zeros marks an empty slot
+            fingerprint[1] = 1;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Owner sequence of a token handed out by this store, 0 for a foreign token.
+     */
+    private static long ownerId(String owner) {
+        try {
+            return owner == null ? 0 : Long.parseLong(owner, 36);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static IdempotentKeyStateEnum stateOf(long meta) {
+        return (meta & 1) != 0 ? IdempotentKeyStateEnum.COMPLETED : IdempotentKeyStateEnum.IN_PROGRESS;
+    }
+
+    private final class Segment {
+        private ByteBuffer table;
+
+        private int mask;
+
+        private int size;
+
+        /**
+         * Buckets of (fingerprint high, fingerprint low, expiration) triples, by level.
+         */
+        private final long[][][] wheel = new long[WHEEL_LEVELS][WHEEL_SIZE][];
+
+        private final int[][] wheelCounts = new int[WHEEL_LEVELS][WHEEL_SIZE];
+
+        private long scheduled;
+
+        private long currentTick;
+
+        private Segment(int slots) {
+            this.table = allocate(slots);
+            this.mask = slots - 1;
+            this.currentTick = now() / tickMillis;
+        }
+
+        /**
+         * @return 0 once claimed, otherwise the meta word of the live key
+         */
+        private long claim(long hi, long lo, long meta, long expiresAt, long now) {
+            int slot = find(hi, lo);
+            int offset = slot * SLOT_BYTES;
+            if (!isEmpty(offset)) {
+                if (table.getLong(offset + EXPIRES_AT) > now) {
+                    return table.getLong(offset + META);
+                }
+            } else {
+                if (size + 1 > (mask + 1) * 3 / 4) {
+                    resize();
+                    offset = find(hi, lo) * SLOT_BYTES;
+                }
+                size++;
+            }
+            table.putLong(offset, hi);
+            table.putLong(offset + LO, lo);
+            table.putLong(offset + META, meta);
+            table.putLong(offset + EXPIRES_AT, expiresAt);
+            schedule(hi, lo, expiresAt);
+            return 0;
+        }
+
+        /**
+         * (fingerprint high, fingerprint low, expiration) of every live completed key.
+         */
+        private long[] completed(long now) {
+            long[] completed = new long[size * 3];
+            int count = 0;
+            for (int offset = 0; offset < table.capacity(); offset += SLOT_BYTES) {
+                if (!isEmpty(offset) && (table.getLong(offset + META) & 1) != 0
+                        && table.getLong(offset + EXPIRES_AT) > now) {
+                    completed[count++] = table.getLong(offset);
+                    completed[count++] = table.getLong(offset + LO);
+                    completed[count++] = table.getLong(offset + EXPIRES_AT);
+                }
+            }
+            return Arrays.copyOf(completed, count);
+        }
+
+        private boolean complete(long hi, long lo, long owner, long expiresAt) {
+            int offset = find(hi, lo) * SLOT_BYTES;
+            if (isEmpty(offset) || table.getLong(offset + META) >>> 1 != owner) {
+                return false;
+            }
+            table.putLong(offset + META, owner << 1 | 1);
+            table.putLong(offset + EXPIRES_AT, expiresAt);
+            schedule(hi, lo, expiresAt);
+            return true;
+        }
+
+        private void release(long hi, long lo, long owner) {
+            int slot = find(hi, lo);
+            if (!isEmpty(slot * SLOT_BYTES) && table.getLong(slot * SLOT_BYTES + META) >>> 1 == owner) {
+                remove(slot);
+            }
+        }
+
+        private long lookup(long hi, long lo, long now) {
+            int offset = find(hi, lo) * SLOT_BYTES;
+            if (isEmpty(offset) || table.getLong(offset + EXPIRES_AT) <= now) {
+                return 0;
+            }
+            return table.getLong(offset + META);
+        }
+
+        /**
+         * Slot holding the fingerprint, or the empty slot ending its probe sequence.
+         */
+        private int find(long hi, long lo) {
+            int slot = (int) lo & mask;
+            for (;;) {
+                int offset = slot * SLOT_BYTES;
+                long slotHi = table.getLong(offset);
+                long slotLo = table.getLong(offset + LO);
+                if (slotHi == hi && slotLo == lo || slotHi == 0 && slotLo == 0) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private boolean isEmpty(int offset) {
+            return table.getLong(offset) == 0 && table.getLong(offset + LO) == 0;
+        }
+
+        /**
+         * Empty a slot, shifting back the following keys of the run so that probing never
+         * needs tombstones.
+         */
+        private void remove(int slot) {
+            int hole = slot;
+            int next = slot;
+            for (;;) {
+                next = (next + 1) & mask;
+                int offset = next * SLOT_BYTES;
+                if (isEmpty(offset)) {
+                    break;
+                }
+                int home = (int) table.getLong(offset + LO) & mask;
+                // Move the key into the hole unless its home lies cyclically in (hole, next]
+                boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+                if (movable) {
+                    copy(offset, hole * SLOT_BYTES);
+                    hole = next;
+                }
+            }
+            int offset = hole * SLOT_BYTES;
+            table.putLong(offset, 0);
+            table.putLong(offset + LO, 0);
+            table.putLong(offset + META, 0);
+            table.putLong(offset + EXPIRES_AT, 0);
+            size--;
+        }
+
+        private void copy(int from, int to) {
+            for (int i = 0; i < SLOT_BYTES; i += 8) {
+                table.putLong(to + i, table.getLong(from + i));
+            }
+        }
+
+        private void resize() {
+            ByteBuffer previous = table;
+            int slots = (mask + 1) * 2;
+            table = allocate(slots);
+            mask = slots - 1;
+            for (int offset = 0; offset < previous.capacity(); offset += SLOT_BYTES) {
+                long hi = previous.getLong(offset);
+                long lo = previous.getLong(offset + LO);
+                if (hi != 0 || lo != 0) {
+                    int target = find(hi, lo) * SLOT_BYTES;
+                    for (int i = 0; i < SLOT_BYTES; i += 8) {
+                        table.putLong(target + i, previous.getLong(offset + i));
+                    }
+                }
+            }
+        }
+
+        private void schedule(long hi, long lo, long expiresAt) {
+            if (expiresAt == NEVER) {
+                return;
+            }
+            // Rounded up, a key is freed at the first tick at or after its expiration
+            long tick = Math.max((expiresAt + tickMillis - 1) / tickMillis, currentTick + 1);
+            long delta = tick - currentTick;
+            int level = 0;
+            while (level < WHEEL_LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+                level++;
+            }
+            int bucket;
+            if (delta >= 1L << (WHEEL_BITS * WHEEL_LEVELS)) {
+                // Beyond the wheel: parked in the last bucket reached, rescheduled from there
+                bucket = (int) ((currentTick >>> (WHEEL_BITS * level)) - 1) & (WHEEL_SIZE - 1);
+            } else {
+                bucket = (int) (tick >>> (WHEEL_BITS * level)) & (WHEEL_SIZE - 1);
+            }
+            long[] entries = wheel[level][bucket];
+            int count = wheelCounts[level][bucket];
+            if (entries == null || entries.length < (count + 1) * 3) {
+                long[] grown = new long[Math.max(24, (count + 1) * 6)];
+                if (entries != null) {
+                    System.arraycopy(entries, 0, grown, 0, count * 3);
+                }
+                entries = grown;
+                wheel[level][bucket] = entries;
+            }
+            entries[count * 3] = hi;
+            entries[count * 3 + 1] = lo;
+            entries[count * 3 + 2] = expiresAt;
+            wheelCounts[level][bucket] = count + 1;
+            scheduled++;
+        }
+
+        /**
+         * Move the wheel up to now: cascade the higher level buckets reached, and free the
+         * keys of every level 0 bucket passed that are still expired.
+         */
+        private void advance(long now) {
+            long targetTick = now / tickMillis;
+            if (scheduled == 0) {
+                currentTick = Math.max(currentTick, targetTick);
+                return;
+            }
+            while (currentTick < targetTick) {
+                currentTick++;
+                for (int level = WHEEL_LEVELS - 1; level > 0; level--) {
+                    if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+                        cascade(level, (int) (currentTick >>> (WHEEL_BITS * level)) & (WHEEL_SIZE - 1), now);
+                    }
+                }
+                expire(0, (int) currentTick & (WHEEL_SIZE - 1), now);
+            }
+        }
+
+        private void cascade(int level, int bucket, long now) {
+            long[] entries = wheel[level][bucket];
+            int count = wheelCounts[level][bucket];
+            if (count == 0) {
+                return;
+            }
+            wheel[level][bucket] = null;
+            wheelCounts[level][bucket] = 0;
+            scheduled -= count;
+            for (int i = 0; i < count * 3; i += 3) {
+                if (entries[i + 2] <= now) {
+                    expireEntry(entries[i], entries[i + 1], now);
+                } else {
+                    schedule(entries[i], entries[i + 1], entries[i + 2]);
+                }
+            }
+        }
+
+        private void expire(int level, int bucket, long now) {
+            int count = wheelCounts[level][bucket];
+            if (count == 0) {
+                return;
+            }
+            long[] entries = wheel[level][bucket];
+            wheelCounts[level][bucket] = 0;
+            scheduled -= count;
+            for (int i = 0; i < count * 3; i += 3) {
+                expireEntry(entries[i], entries[i + 1], now);
+            }
+        }
+
+        /**
+         * Free a key if still expired: it may have been completed with a later expiration,
+         * or released and claimed again, since it was scheduled.
+         */
+        private void expireEntry(long hi, long lo, long now) {
+            int slot = find(hi, lo);
+            int offset = slot * SLOT_BYTES;
+            if (!isEmpty(offset) && table.getLong(offset + EXPIRES_AT) <= now) {
+                remove(slot);
+            }
+        }
+
+        private ByteBuffer allocate(int slots) {
+            return ByteBuffer.allocateDirect(slots * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.cloudnative.idm.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+import com.cloudnative.idm.key.Murmur3Hasher;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * {@link IdempotentStore} spreading keys over independent shards with consistent hashing.
+ *
+ * <p>
+ * Every shard is placed on a hash ring at {@code virtualNodes} positions derived from its
+ * name, and a key belongs to the first position at or after its own MurmurHash3. Adding or
+ * removing one of N shards therefore only moves about 1/N of the keys, and renaming the
+ * underlying endpoints moves none as long as the shard names are kept.
+ * </p>
+ *
+ * <p>
+ * A key always goes to its own shard: failing over to another one would forget the keys
+ * already claimed there and let duplicates through. Failures are instead counted per shard
+ * and reported by {@link #health()}, a shard turning unhealthy after
+ * {@code failureThreshold} consecutive failures until its next success.
+ * </p>
+ */
+public class ShardedIdempotentStore implements IdempotentStore {
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    private final String name;
+
+    private final List<Shard> shards;
+
+    private final NavigableMap<Long, Shard> ring = new TreeMap<>();
+
+    private final int failureThreshold;
+
+    public ShardedIdempotentStore(String name, Map<String, ? extends IdempotentStore> shards) {
+        this(name, shards, DEFAULT_VIRTUAL_NODES, DEFAULT_FAILURE_THRESHOLD);
+    }
+
+    /**
+     * @param name             name of this store
+     * @param shards           shard stores by stable shard name, the name decides the ring
+     *                         positions
+     * @param virtualNodes     ring positions per shard
+     * @param failureThreshold consecutive failures after which a shard is reported unhealthy
+     */
+    public ShardedIdempotentStore(String name, Map<String, ? extends IdempotentStore> shards,
+                                  int virtualNodes, int failureThreshold) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Sharded store [%s] needs at least one shard", name));
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException(String.format("Virtual nodes must be positive [%s]", virtualNodes));
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        List<Shard> created = new ArrayList<>(shards.size());
+        for (Map.Entry<String, ? extends IdempotentStore> entry : shards.entrySet()) {
+            Shard shard = new Shard(entry.getKey(), entry.getValue());
+            created.add(shard);
+            for (int i = 0; i < virtualNodes; i++) {
+                long position = new Murmur3Hasher().putChars(entry.getKey()).putInt(i).finish()[0];
+                Shard previous = ring.putIfAbsent(position, shard);
+                if (previous != null && previous != shard) {
+                    // Astronomically unlikely, but the order must not depend on the map order
+                    if (previous.name.compareTo(shard.name) > 0) {
+                        ring.put(position, shard);
+                    }
+                }
+            }
+        }
+        this.shards = Collections.unmodifiableList(created);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        Shard shard = shardOf(key);
+        return shard.call(() -> shard.store.claim(key, leaseTime));
+    }
+
+    @Override
+    public CompletionStage<IdempotentClaim> claimAsync(String key, Duration leaseTime) {
+        Shard shard = shardOf(key);
+        CompletionStage<IdempotentClaim> stage;
+        try {
+            stage = shard.store.claimAsync(key, leaseTime);
+        } catch (RuntimeException ex) {
+            shard.recordFailure(ex);
+            throw ex;
+        }
+        return stage.whenComplete((claim, ex) -> {
+            if (ex == null) {
+                shard.recordSuccess();
+            } else {
+                shard.recordFailure(ex);
+            }
+        });
+    }
+
+    /**
+     * Claims the keys of each shard with one {@link IdempotentStore#claimAll} call, so
+     * stores batching their claims keep doing so per shard; same for the other batch
+     * operations.
+     */
+    @Override
+    public List<IdempotentClaim> claimAll(List<String> keys, Duration leaseTime) {
+        IdempotentClaim[] claims = new IdempotentClaim[keys.size()];
+        for (Map.Entry<Shard, List<Integer>> entry : groupByShard(keys).entrySet()) {
+            Shard shard = entry.getKey();
+            List<Integer> indexes = entry.getValue();
+            List<String> shardKeys = select(keys, indexes);
+            List<IdempotentClaim> shardClaims = shard.call(() -> shard.store.claimAll(shardKeys, leaseTime));
+            for (int i = 0; i < indexes.size(); i++) {
+                claims[indexes.get(i)] = shardClaims.get(i);
+            }
+        }
+        return List.of(claims);
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        Shard shard = shardOf(key);
+        return shard.call(() -> shard.store.markCompleted(key, owner, retention));
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+        Shard shard = shardOf(key);
+        return shard.call(() -> shard.store.markCompleted(key, owner, retention, response));
+    }
+
+    @Override
+    public void markAllCompleted(List<String> keys, List<String> owners, Duration retention) {
+        for (Map.Entry<Shard, List<Integer>> entry : groupByShard(keys).entrySet()) {
+            Shard shard = entry.getKey();
+            List<String> shardKeys = select(keys, entry.getValue());
+            List<String> shardOwners = select(owners, entry.getValue());
+            shard.call(() -> {
+                shard.store.markAllCompleted(shardKeys, shardOwners, retention);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        Shard shard = shardOf(key);
+        shard.call(() -> {
+            shard.store.release(key, owner);
+            return null;
+        });
+    }
+
+    @Override
+    public void releaseAll(List<String> keys, List<String> owners) {
+        for (Map.Entry<Shard, List<Integer>> entry : groupByShard(keys).entrySet()) {
+            Shard shard = entry.getKey();
+            List<String> shardKeys = select(keys, entry.getValue());
+            List<String> shardOwners = select(owners, entry.getValue());
+            shard.call(() -> {
+                shard.store.releaseAll(shardKeys, shardOwners);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        Shard shard = shardOf(key);
+        return shard.call(() -> shard.store.lookup(key));
+    }
+
+    /**
+     * Name of the shard owning a key.
+     */
+    public String shardFor(String key) {
+        return shardOf(key).name;
+    }
+
+    /**
+     * Current health of every shard, in registration order.
+     */
+    public List<ShardHealth> health() {
+        List<ShardHealth> health = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            health.add(shard.health());
+        }
+        return health;
+    }
+
+    /**
+     * Shard stores by name, in registration order.
+     */
+    public Map<String, IdempotentStore> getShards() {
+        Map<String, IdempotentStore> stores = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            stores.put(shard.name, shard.store);
+        }
+        return stores;
+    }
+
+    private Map<Shard, List<Integer>> groupByShard(List<String> keys) {
+        Map<Shard, List<Integer>> positions = new IdentityHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            positions.computeIfAbsent(shardOf(keys.get(i)), shard -> new ArrayList<>()).add(i);
+        }
+        return positions;
+    }
+
+    private static List<String> select(List<String> values, List<Integer> indexes) {
+        List<String> selected = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            selected.add(values.get(index));
+        }
+        return selected;
+    }
+
+    private Shard shardOf(String key) {
+        long hash = new Murmur3Hasher().putChars(key).finish()[0];
+        Map.Entry<Long, Shard> entry = ring.ceilingEntry(hash);
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * Point in time health of one shard.
+     */
+    @Getter
+    public static final class ShardHealth {
+        private final String name;
+
+        private final boolean healthy;
+
+        private final long successCount;
+
+        private final long failureCount;
+
+        private final long consecutiveFailures;
+
+        /**
+         * Message of the last failure, null if the shard never failed.
+         */
+        private final String lastFailure;
+
+        private ShardHealth(String name, boolean healthy, long successCount, long failureCount,
+                            long consecutiveFailures, String lastFailure) {
+            this.name = name;
+            this.healthy = healthy;
+            this.successCount = successCount;
+            this.failureCount = failureCount;
+            this.consecutiveFailures = consecutiveFailures;
+            this.lastFailure = lastFailure;
+        }
+    }
+
+    private final class Shard {
+        private final String name;
+
+        private final IdempotentStore store;
+
+        private final AtomicLong successCount = new AtomicLong();
+
+        private final AtomicLong failureCount = new AtomicLong();
+
+        private final AtomicLong consecutiveFailures = new AtomicLong();
+
+        private volatile String lastFailure;
+
+        private Shard(String name, IdempotentStore store) {
+            this.name = name;
+            this.store = store;
+        }
+
+        private <T> T call(Supplier<T> operation) {
+            T result;
+            try {
+                result = operation.get();
+            } catch (RuntimeException ex) {
+                recordFailure(ex);
+                throw ex;
+            }
+            recordSuccess();
+            return result;
+        }
+
+        private void recordSuccess() {
+            successCount.incrementAndGet();
+            if (consecutiveFailures.get() != 0) {
+                consecutiveFailures.set(0);
+            }
+        }
+
+        private void recordFailure(Throwable ex) {
+            failureCount.incrementAndGet();
+            consecutiveFailures.incrementAndGet();
+            lastFailure = String.valueOf(ex.getMessage());
+        }
+
+        private ShardHealth health() {
+            long consecutive = consecutiveFailures.get();
+            return new ShardHealth(name, consecutive < failureThreshold, successCount.get(), failureCount.get(),
+                    consecutive, lastFailure);
+        }
+    }
+}
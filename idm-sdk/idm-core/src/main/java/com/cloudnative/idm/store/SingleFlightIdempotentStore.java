@@ -0,0 +1,333 @@
+package com.cloudnative.idm.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link IdempotentStore} letting a single thread per key and per JVM reach the shared
+ * store.
+ *
+ * <p>
+ * The first claim of a key registers itself as the flight of the key and goes to the
+ * delegate; concurrent claims of the same key in this JVM join that flight instead of
+ * sending their own. If the first claim is rejected they share its outcome. If it is
+ * acquired they wait up to {@code maxWait} for the flight to end: a completion rejects
+ * them as completed, with the stored response if any, a release lets them claim again,
+ * and a flight still running after {@code maxWait} rejects them as in progress. With a
+ * zero {@code maxWait} they are rejected as soon as the first claim is acquired.
+ * </p>
+ *
+ * <p>
+ * A flight ends on {@link #markCompleted} or {@link #release} by its owner, or once its
+ * lease time has passed, the store default {@code defaultLeaseTime} when none is given,
+ * so a lost claim expires locally no later than in the delegate. Batch claims are not
+ * coalesced and go straight to the delegate.
+ * </p>
+ */
+public class SingleFlightIdempotentStore implements IdempotentStore {
+    public static final Duration DEFAULT_LEASE_TIME = Duration.ofSeconds(30);
+
+    private static final IdempotentClaim IN_PROGRESS =
+            IdempotentClaim.rejected(IdempotentKeyStateEnum.IN_PROGRESS);
+
+    private final String name;
+
+    private final IdempotentStore delegate;
+
+    private final long maxWaitNanos;
+
+    private final Duration defaultLeaseTime;
+
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * Decorate a store under its own name, to be registered in place of it.
+     */
+    public SingleFlightIdempotentStore(IdempotentStore delegate, Duration maxWait) {
+        this(delegate.name(), delegate, maxWait, DEFAULT_LEASE_TIME);
+    }
+
+    /**
+     * @param name             name of this store
+     * @param delegate         the shared store
+     * @param maxWait          how long a concurrent duplicate waits for the flight it joined
+     *                         to end, zero to reject it as soon as the flight holds the key
+     * @param defaultLeaseTime lease time of the delegate, used for claims without one
+     */
+    public SingleFlightIdempotentStore(String name, IdempotentStore delegate, Duration maxWait,
+                                       Duration defaultLeaseTime) {
+        if (maxWait == null || maxWait.isNegative()) {
+            throw new IllegalArgumentException(String.format("Single flight wait must not be negative [%s]", maxWait));
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.defaultLeaseTime = defaultLeaseTime;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        for (;;) {
+            Flight flight = new Flight();
+            Flight current = flights.putIfAbsent(key, flight);
+            if (current == null) {
+                IdempotentClaim claim;
+                try {
+                    claim = delegate.claim(key, leaseTime);
+                } catch (RuntimeException ex) {
+                    abort(key, flight, ex);
+                    throw ex;
+                }
+                return settle(key, flight, claim, leaseTime);
+            }
+            if (current.isExpired()) {
+                end(key, current, null);
+                continue;
+            }
+            coalescedCount.increment();
+            IdempotentClaim outcome = await(current);
+            if (outcome != null) {
+                return outcome;
+            }
+        }
+    }
+
+    @Override
+    public CompletionStage<IdempotentClaim> claimAsync(String key, Duration leaseTime) {
+        Flight flight = new Flight();
+        Flight current = flights.putIfAbsent(key, flight);
+        if (current == null) {
+            CompletionStage<IdempotentClaim> stage;
+            try {
+                stage = delegate.claimAsync(key, leaseTime);
+            } catch (RuntimeException ex) {
+                abort(key, flight, ex);
+                throw ex;
+            }
+            return stage.whenComplete((claim, ex) -> {
+                if (ex == null) {
+                    settle(key, flight, claim, leaseTime);
+                } else {
+                    abort(key, flight, ex);
+                }
+            });
+        }
+        if (current.isExpired()) {
+            end(key, current, null);
+            return claimAsync(key, leaseTime);
+        }
+        coalescedCount.increment();
+        return current.claimed.handle((claim, ex) -> claim).thenCompose(claim -> {
+            if (claim == null) {
+                return claimAsync(key, leaseTime);
+            }
+            if (!claim.isAcquired()) {
+                return CompletableFuture.completedFuture(claim);
+            }
+            return current.finished.copy()
+                    .completeOnTimeout(IN_PROGRESS, maxWaitNanos, TimeUnit.NANOSECONDS)
+                    .thenCompose(outcome -> outcome != null ? CompletableFuture.completedFuture(outcome)
+                            : claimAsync(key, leaseTime));
+        });
+    }
+
+    @Override
+    public List<IdempotentClaim> claimAll(List<String> keys, Duration leaseTime) {
+        return delegate.claimAll(keys, leaseTime);
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        boolean completed = false;
+        try {
+            completed = delegate.markCompleted(key, owner, retention);
+            return completed;
+        } finally {
+            land(key, owner, completed ? IdempotentClaim.rejected(IdempotentKeyStateEnum.COMPLETED, null, retention) : null);
+        }
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+        boolean completed = false;
+        try {
+            completed = delegate.markCompleted(key, owner, retention, response);
+            return completed;
+        } finally {
+            land(key, owner, completed ? IdempotentClaim.rejected(IdempotentKeyStateEnum.COMPLETED, response, retention) : null);
+        }
+    }
+
+    @Override
+    public void markAllCompleted(List<String> keys, List<String> owners, Duration retention) {
+        boolean completed = false;
+        try {
+            delegate.markAllCompleted(keys, owners, retention);
+            completed = true;
+        } finally {
+            for (int i = 0; i < keys.size(); i++) {
+                land(keys.get(i), owners.get(i),
+                        completed ? IdempotentClaim.rejected(IdempotentKeyStateEnum.COMPLETED, null, retention) : null);
+            }
+        }
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        try {
+            delegate.release(key, owner);
+        } finally {
+            land(key, owner, null);
+        }
+    }
+
+    @Override
+    public void releaseAll(List<String> keys, List<String> owners) {
+        try {
+            delegate.releaseAll(keys, owners);
+        } finally {
+            for (int i = 0; i < keys.size(); i++) {
+                land(keys.get(i), owners.get(i), null);
+            }
+        }
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        Flight flight = flights.get(key);
+        if (flight != null && flight.owner != null && !flight.isExpired()) {
+            return IdempotentKeyStateEnum.IN_PROGRESS;
+        }
+        return delegate.lookup(key);
+    }
+
+    public IdempotentStore getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Number of claims that joined the flight of another thread instead of reaching the
+     * delegate.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * Number of keys currently claimed or being claimed through this store.
+     */
+    public int getInFlightCount() {
+        return flights.size();
+    }
+
+    /**
+     * Publish the outcome of the delegate claim of a flight. A rejected claim ends the
+     * flight right away, an acquired one keeps it until completed or released.
+     */
+    private IdempotentClaim settle(String key, Flight flight, IdempotentClaim claim, Duration leaseTime) {
+        if (claim.isAcquired()) {
+            Duration lease = leaseTime != null ? leaseTime : defaultLeaseTime;
+            flight.expiresAtNanos = System.nanoTime() + lease.toNanos();
+            flight.owner = claim.getOwner();
+            flight.claimed.complete(claim);
+        } else {
+            flight.claimed.complete(claim);
+            end(key, flight, claim);
+        }
+        return claim;
+    }
+
+    /**
+     * End a flight whose delegate claim failed, its followers retry on their own.
+     */
+    private void abort(String key, Flight flight, Throwable ex) {
+        flight.claimed.completeExceptionally(ex);
+        end(key, flight, null);
+    }
+
+    /**
+     * End the flight of a key if still held by {@code owner}.
+     */
+    private void land(String key, String owner, IdempotentClaim outcome) {
+        Flight flight = flights.get(key);
+        if (flight != null && owner != null && owner.equals(flight.owner)) {
+            end(key, flight, outcome);
+        }
+    }
+
+    /**
+     * @param outcome claim returned to the followers, null to let them claim again
+     */
+    private void end(String key, Flight flight, IdempotentClaim outcome) {
+        flights.remove(key, flight);
+        flight.finished.complete(outcome);
+    }
+
+    /**
+     * Wait for the outcome of a joined flight.
+     *
+     * @return the claim to return, null to claim again
+     */
+    private IdempotentClaim await(Flight flight) {
+        IdempotentClaim claim;
+        try {
+            claim = flight.claimed.join();
+        } catch (CompletionException | CancellationException ex) {
+            return null;
+        }
+        if (!claim.isAcquired()) {
+            return claim;
+        }
+        try {
+            return flight.finished.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            return IN_PROGRESS;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return IN_PROGRESS;
+        } catch (ExecutionException ex) {
+            return null;
+        }
+    }
+
+    private static final class Flight {
+        /**
+         * Outcome of the delegate claim.
+         */
+        private final CompletableFuture<IdempotentClaim> claimed = new CompletableFuture<>();
+
+        /**
+         * Outcome for the followers once the flight ended, null to claim again.
+         */
+        private final CompletableFuture<IdempotentClaim> finished = new CompletableFuture<>();
+
+        /**
+         * Owner of the acquired claim, null until acquired.
+         */
+        private volatile String owner;
+
+        private volatile long expiresAtNanos;
+
+        private boolean isExpired() {
+            return owner != null && System.nanoTime() - expiresAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.cloudnative.idm.store;
+
+import com.cloudnative.idm.enums.IdempotentKeyStateEnum;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link IdempotentStore} writing completions behind the call, so that a successful call
+ * does not wait for a second round trip to the shared store.
+ *
+ * <p>
+ * Claims, releases and lookups go straight to the delegate. Completions are put in a
+ * bounded queue and written by a single daemon thread, which drains up to
+ * {@code batchSize} of them at a time and sends those without a response and with the
+ * same retention as one {@link IdempotentStore#markAllCompleted}. When the queue is full,
+ * or while the store is not started or once it is closed, a completion is written on the
+ * calling thread instead, so memory stays bounded and a slow delegate slows its callers
+ * down rather than losing completions.
+ * </p>
+ *
+ * <p>
+ * The writer thread is started by {@link #start()} and stopped by {@link #close()}; as a
+ * Spring bean, declare them as its init and destroy methods.
+ * </p>
+ *
+ * <p>
+ * Until it is written, a queued completion is only known to this JVM: claims and lookups
+ * of the key here see it completed, other nodes see it in progress. Should the write
+ * fail, or the JVM die first, the key stays in progress until its lease expires and then
+ * becomes absent, as if the call had not completed; keep lease times well above the
+ * time the queue takes to drain. Failed writes are counted and the last failure is kept.
+ * </p>
+ */
+public class WriteBehindIdempotentStore implements IdempotentStore, Closeable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    public static final int DEFAULT_BATCH_SIZE = 128;
+
+    private final String name;
+
+    private final IdempotentStore delegate;
+
+    private final int queueCapacity;
+
+    private final int batchSize;
+
+    /**
+     * Guards the queue, {@link #writer}, {@link #writing} and {@link #closed}.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Signalled whenever the writer finds the queue empty.
+     */
+    private final Condition idle = lock.newCondition();
+
+    private final ArrayDeque<Completion> queue = new ArrayDeque<>();
+
+    /**
+     * Queued completions by key, answering claims and lookups of this JVM until written.
+     */
+    private final ConcurrentHashMap<String, Completion> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Null until started.
+     */
+    private Thread writer;
+
+    private final LongAdder writtenCount = new LongAdder();
+
+    private final LongAdder synchronousCount = new LongAdder();
+
+    private final LongAdder failedCount = new LongAdder();
+
+    private volatile Throwable lastFailure;
+
+    /**
+     * Whether the writer holds a batch taken from the queue.
+     */
+    private boolean writing;
+
+    private boolean closed;
+
+    /**
+     * Decorate a store under its own name with the default queue capacity and batch size,
+     * to be registered in place of it.
+     */
+    public WriteBehindIdempotentStore(IdempotentStore delegate) {
+        this(delegate.name(), delegate, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param name          name of this store
+     * @param delegate      the shared store
+     * @param queueCapacity number of completions queued at most, further ones are written
+     *                      synchronously
+     * @param batchSize     number of completions written at most in one batch
+     */
+    public WriteBehindIdempotentStore(String name, IdempotentStore delegate, int queueCapacity, int batchSize) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException(String.format("Write-behind queue capacity must be positive [%s]", queueCapacity));
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(String.format("Write-behind batch size must be positive [%s]", batchSize));
+        }
+        this.name = name;
+        this.delegate = delegate;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Start the writer thread, completions are queued from then on. Does nothing if
+     * already started.
+     *
+     * @return this store
+     */
+    public WriteBehindIdempotentStore start() {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException(String.format("Write-behind store is closed [%s]", name));
+            }
+            if (writer == null) {
+                writer = new Thread(this::run, "idempotent-write-behind-" + name);
+                writer.setDaemon(true);
+                writer.start();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public IdempotentClaim claim(String key, Duration leaseTime) {
+        Completion completion = pending.get(key);
+        if (completion != null) {
+            return completion.toClaim();
+        }
+        return delegate.claim(key, leaseTime);
+    }
+
+    @Override
+    public CompletionStage<IdempotentClaim> claimAsync(String key, Duration leaseTime) {
+        Completion completion = pending.get(key);
+        if (completion != null) {
+            return CompletableFuture.completedFuture(completion.toClaim());
+        }
+        return delegate.claimAsync(key, leaseTime);
+    }
+
+    @Override
+    public List<IdempotentClaim> claimAll(List<String> keys, Duration leaseTime) {
+        if (pending.isEmpty()) {
+            return delegate.claimAll(keys, leaseTime);
+        }
+        return IdempotentStore.super.claimAll(keys, leaseTime);
+    }
+
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention) {
+        return markCompleted(key, owner, retention, null);
+    }
+
+    /**
+     * @return false for a queued completion, not confirmed until written
+     */
+    @Override
+    public boolean markCompleted(String key, String owner, Duration retention, byte[] response) {
+        Completion completion = new Completion(key, owner, retention, response);
+        boolean queued;
+        lock.lock();
+        try {
+            queued = writer != null && !closed && queue.size() < queueCapacity;
+            if (queued) {
+                pending.put(key, completion);
+                queue.add(completion);
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (queued) {
+            return false;
+        }
+        synchronousCount.increment();
+        return delegate.markCompleted(key, owner, retention, response);
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        delegate.release(key, owner);
+    }
+
+    @Override
+    public void releaseAll(List<String> keys, List<String> owners) {
+        delegate.releaseAll(keys, owners);
+    }
+
+    @Override
+    public IdempotentKeyStateEnum lookup(String key) {
+        return pending.containsKey(key) ? IdempotentKeyStateEnum.COMPLETED : delegate.lookup(key);
+    }
+
+    /**
+     * Wait until the writer has written every queued completion.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            while (!queue.isEmpty() || writing) {
+                idle.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of completions waiting to be written.
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of completions written behind the call.
+     */
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    /**
+     * Number of completions written on the calling thread, the queue being full or the
+     * store not running.
+     */
+    public long getSynchronousCount() {
+        return synchronousCount.sum();
+    }
+
+    /**
+     * Number of completions lost to a failed write, their keys expire with their lease.
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * Failure of the last failed write, null if none failed.
+     */
+    public Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Write the queued completions and stop the writer thread; later completions are
+     * written synchronously.
+     */
+    @Override
+    public void close() {
+        Thread started;
+        lock.lock();
+        try {
+            closed = true;
+            started = writer;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (started == null) {
+            return;
+        }
+        try {
+            started.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes batches until the store is closed and the queue empty.
+     */
+    private void run() {
+        List<Completion> batch = new ArrayList<>(batchSize);
+        for (;;) {
+            lock.lock();
+            try {
+                writing = false;
+                while (queue.isEmpty()) {
+                    idle.signalAll();
+                    if (closed) {
+                        return;
+                    }
+                    notEmpty.awaitUninterruptibly();
+                }
+                while (batch.size() < batchSize && !queue.isEmpty()) {
+                    batch.add(queue.poll());
+                }
+                writing = true;
+            } finally {
+                lock.unlock();
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Sends runs of completions without a response and with the same retention as one
+     * batch, the others one by one.
+     */
+    private void write(List<Completion> batch) {
+        int start = 0;
+        while (start < batch.size()) {
+            Completion first = batch.get(start);
+            int end = start + 1;
+            if (first.response == null) {
+                while (end < batch.size() && batch.get(end).response == null
+                        && Objects.equals(batch.get(end).retention, first.retention)) {
+                    end++;
+                }
+            }
+            List<Completion> run = batch.subList(start, end);
+            try {
+                if (run.size() == 1) {
+                    delegate.markCompleted(first.key, first.owner, first.retention, first.response);
+                } else {
+                    List<String> keys = new ArrayList<>(run.size());
+                    List<String> owners = new ArrayList<>(run.size());
+                    for (Completion completion : run) {
+                        keys.add(completion.key);
+                        owners.add(completion.owner);
+                    }
+                    delegate.markAllCompleted(keys, owners, first.retention);
+                }
+                writtenCount.add(run.size());
+            } catch (RuntimeException ex) {
+                failedCount.add(run.size());
+                lastFailure = ex;
+            }
+            for (Completion completion : run) {
+                pending.remove(completion.key, completion);
+            }
+            start = end;
+        }
+    }
+
+    private static final class Completion {
+        private final String key;
+
+        private final String owner;
+
+        private final Duration retention;
+
+        private final byte[] response;
+
+        private final long queuedAtNanos = System.nanoTime();
+
+        private Completion(String key, String owner, Duration retention, byte[] response) {
+            this.key = key;
+            this.owner = owner;
+            this.retention = retention;
+            this.response = response;
+        }
+
+        private IdempotentClaim toClaim() {
+            return IdempotentClaim.rejected(IdempotentKeyStateEnum.COMPLETED, response,
+                    retention == null ? null : retention.minusNanos(System.nanoTime() - queuedAtNanos));
+        }
+    }
+}
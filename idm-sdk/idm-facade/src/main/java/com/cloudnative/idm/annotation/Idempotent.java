@@ -1,5 +1,8 @@
 package com.cloudnative.idm.annotation;
 
+import com.cloudnative.idm.enums.IdempotentClaimModeEnum;
+import com.cloudnative.idm.enums.IdempotentFingerprintEnum;
+import com.cloudnative.idm.enums.IdempotentKeyFormatEnum;
 import com.cloudnative.idm.enums.IdempotentSceneEnum;
 import com.cloudnative.idm.enums.IdempotentTypeEnum;
 
@@ -33,6 +36,9 @@ public @interface Idempotent {
 
     /**
      * Idempotency type to validate against.
+     * Reactive methods only support {@link IdempotentTypeEnum#SPEL}, the servlet request read
+     * by the other types being bound to the request thread; their caller identity comes from
+     * the Reactor context.
      */
     IdempotentTypeEnum type() default IdempotentTypeEnum.PARAM;
 
@@ -50,10 +56,50 @@ public @interface Idempotent {
     String uniqueKeyPrefix() default "";
 
     /**
-     * Expiration time (in seconds) for the idempotency key.
-     * Default is 3600 seconds (1 hour).
-     * Effective only when used with {@link IdempotentSceneEnum#MQ} and
-     * {@link IdempotentTypeEnum#SPEL}
+     * How long (in seconds) a successfully processed key keeps rejecting duplicates.
+     * Default is 3600 seconds (1 hour); 0 releases the key as soon as the method returns,
+     * so only concurrent duplicates are rejected.
      */
     long keyTimeout() default 3600L;
+
+    /**
+     * Lease (in seconds) of the claim while the method runs. The claim expires by itself
+     * after it, should the node die before releasing it, and is never renewed: keep it
+     * above the slowest expected execution.
+     */
+    long leaseTime() default 30L;
+
+    /**
+     * Algorithm used to fingerprint the method arguments.
+     * Effective only when used with {@link IdempotentTypeEnum#PARAM}
+     */
+    IdempotentFingerprintEnum fingerprint() default IdempotentFingerprintEnum.MURMUR3_128;
+
+    /**
+     * Encoding of the stored key. {@link IdempotentKeyFormatEnum#COMPACT} trades readability
+     * for a short, fixed size key, which matters with many millions of live keys.
+     */
+    IdempotentKeyFormatEnum keyFormat() default IdempotentKeyFormatEnum.READABLE;
+
+    /**
+     * Name of the idempotent store holding the keys. Blank uses the default store of the
+     * {@link #scene()}, e.g. Redis for HTTP; set it per method to move an endpoint to a
+     * cheaper or faster backend.
+     */
+    String store() default "";
+
+    /**
+     * How the key is claimed, when {@link #store()} is blank. {@link IdempotentClaimModeEnum#SET_NX}
+     * costs a single Redis command per request; keep {@link IdempotentClaimModeEnum#LOCK}
+     * where reentrancy is needed.
+     */
+    IdempotentClaimModeEnum claimMode() default IdempotentClaimModeEnum.DEFAULT;
+
+    /**
+     * Replay the response of the first successful call to later duplicates, instead of
+     * failing them with {@link #message()}. Duplicates arriving while the first call still
+     * runs fail fast with {@code IdempotentInProgressException}. Needs a store keeping
+     * responses and a response codec on the handler; not supported for reactive methods.
+     */
+    boolean replay() default false;
 }
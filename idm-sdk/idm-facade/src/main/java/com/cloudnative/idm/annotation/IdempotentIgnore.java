@@ -0,0 +1,22 @@
+package com.cloudnative.idm.annotation;
+
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Excludes a field, or a whole method parameter, from the idempotency key.
+ * <p>
+ * Use it for volatile values such as timestamps, trace ids or large payloads, which
+ * would otherwise make retries of the same request look different.
+ * Only effective with {@link IdempotentTypeEnum#PARAM} and a streaming fingerprint.
+ */
+@Target({ElementType.FIELD, ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface IdempotentIgnore {
+}
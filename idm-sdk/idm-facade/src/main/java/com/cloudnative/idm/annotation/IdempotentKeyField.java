@@ -0,0 +1,23 @@
+package com.cloudnative.idm.annotation;
+
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field as part of the idempotency key of its class.
+ * <p>
+ * As soon as one field of a class hierarchy carries this annotation, only the annotated
+ * fields are fingerprinted and all the others are ignored. Classes without it are
+ * fingerprinted on all their fields, minus the ones marked {@link IdempotentIgnore}.
+ * Only effective with {@link IdempotentTypeEnum#PARAM} and a streaming fingerprint.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface IdempotentKeyField {
+}
@@ -0,0 +1,24 @@
+package com.cloudnative.idm.enums;
+
+/**
+ * How a key is claimed in Redis.
+ */
+public enum IdempotentClaimModeEnum {
+    /**
+     * Whatever store the scene or the application defaults to.
+     */
+    DEFAULT,
+
+    /**
+     * Redisson lock held by an owner of its own per claim, not reentrant, turned into a
+     * completed marker on success; a rejected claim takes a second round trip to read the
+     * key state.
+     */
+    LOCK,
+
+    /**
+     * One atomic {@code SET NX PX} per claim, the value carrying the key state and the
+     * claim owner. Not reentrant.
+     */
+    SET_NX
+}
@@ -0,0 +1,17 @@
+package com.cloudnative.idm.enums;
+
+/**
+ * Fingerprint algorithm used to digest method arguments in
+ * {@link IdempotentTypeEnum#PARAM} mode.
+ */
+public enum IdempotentFingerprintEnum {
+    /**
+     * Streaming 128-bit MurmurHash3 over a canonical encoding of the arguments.
+     */
+    MURMUR3_128,
+
+    /**
+     * MD5 over the JSON serialization of the arguments, kept for key compatibility.
+     */
+    MD5
+}
@@ -0,0 +1,17 @@
+package com.cloudnative.idm.enums;
+
+/**
+ * Encoding of the keys written to the idempotency store.
+ */
+public enum IdempotentKeyFormatEnum {
+    /**
+     * Self-describing key, e.g. {@code idempotent:path:/orders:currentUserId:42:m3:<hex>}.
+     */
+    READABLE,
+
+    /**
+     * Short namespace id followed by a 16-byte fingerprint of all the key parts, base64url
+     * encoded: a fixed 29 characters whatever the path, user or payload.
+     */
+    COMPACT
+}
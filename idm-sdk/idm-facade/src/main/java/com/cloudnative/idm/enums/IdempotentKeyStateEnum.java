@@ -0,0 +1,21 @@
+package com.cloudnative.idm.enums;
+
+/**
+ * State of an idempotency key in the store.
+ */
+public enum IdempotentKeyStateEnum {
+    /**
+     * Unknown or expired key, free to claim.
+     */
+    ABSENT,
+
+    /**
+     * Claimed, the guarded operation is running.
+     */
+    IN_PROGRESS,
+
+    /**
+     * The guarded operation succeeded, duplicates must be rejected until the key expires.
+     */
+    COMPLETED
+}
@@ -0,0 +1,13 @@
+package com.cloudnative.idm.exception;
+
+/**
+ * Duplicate of a request whose original is still being processed.
+ * <p>
+ * Raised instead of replaying a response when none exists yet, so that callers can map it
+ * to a cheap "try again later" answer (e.g. HTTP 409 or 425) rather than a generic error.
+ */
+public class IdempotentInProgressException extends RuntimeException {
+    public IdempotentInProgressException(String message) {
+        super(message);
+    }
+}
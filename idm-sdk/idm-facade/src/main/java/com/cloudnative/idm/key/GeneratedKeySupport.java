@@ -0,0 +1,49 @@
+package com.cloudnative.idm.key;
+
+/**
+ * Runtime helpers called by generated key extractors.
+ * <p>
+ * They reproduce the SpEL semantics the generated code replaces: navigating a property of
+ * a null value fails, {@code +} concatenates as soon as one side is a String and renders
+ * null as {@code "null"}, and enums are converted through their name.
+ */
+public final class GeneratedKeySupport {
+
+    private GeneratedKeySupport() {
+    }
+
+    /**
+     * Guard a property navigation, as SpEL's {@code .} operator does.
+     */
+    public static <T> T target(T target, String property) {
+        if (target == null) {
+            throw new IllegalStateException(String.format("Property [%s] cannot be read on null",
+                    property));
+        }
+        return target;
+    }
+
+    /**
+     * SpEL {@code +} restricted to String concatenation.
+     */
+    public static String plus(Object left, Object right) {
+        if (!(left instanceof String) && !(right instanceof String)) {
+            throw new IllegalStateException(String.format("Operator [+] is not supported between [%s] and [%s]",
+                    left, right));
+        }
+        return (left == null ? "null" : toKey(left)) + (right == null ? "null" : toKey(right));
+    }
+
+    /**
+     * Convert the value of a key expression to a String, null stays null.
+     */
+    public static String toKey(Object value) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        return value.toString();
+    }
+}
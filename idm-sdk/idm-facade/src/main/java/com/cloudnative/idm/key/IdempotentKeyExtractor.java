@@ -0,0 +1,19 @@
+package com.cloudnative.idm.key;
+
+/**
+ * Extracts the business part of an idempotency key from the arguments of an idempotent
+ * method invocation.
+ * <p>
+ * One instance is built per annotated method and shared by all invocations, so
+ * implementations must be thread-safe.
+ */
+public interface IdempotentKeyExtractor {
+
+    /**
+     * Evaluate the key for one invocation.
+     *
+     * @param args the invocation arguments, in declaration order
+     * @return the evaluated key, may be null if the expression evaluates to null
+     */
+    String extract(Object[] args);
+}
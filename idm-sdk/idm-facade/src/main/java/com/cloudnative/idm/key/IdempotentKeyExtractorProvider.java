@@ -0,0 +1,26 @@
+package com.cloudnative.idm.key;
+
+/**
+ * Source of compile-time generated {@link IdempotentKeyExtractor}s.
+ * <p>
+ * The {@code idm-processor} annotation processor generates one implementation next to
+ * every class declaring {@code @Idempotent(type = SPEL)} methods, named after it with an
+ * {@value #CLASS_NAME_SUFFIX} suffix, e.g. {@code OrderController_IdempotentKeys}.
+ */
+public interface IdempotentKeyExtractorProvider {
+
+    /**
+     * Suffix appended to the flattened binary name of the declaring class.
+     */
+    String CLASS_NAME_SUFFIX = "_IdempotentKeys";
+
+    /**
+     * Return the generated extractor of a method.
+     *
+     * @param methodKey   method name and canonical parameter types, e.g.
+     *                    {@code create(com.acme.OrderRequest,int)}
+     * @param keyTemplate key expression currently declared on the method
+     * @return the extractor, or null when none was generated for that exact expression
+     */
+    IdempotentKeyExtractor getKeyExtractor(String methodKey, String keyTemplate);
+}
@@ -0,0 +1,373 @@
+package com.cloudnative.idm.processor;
+
+import com.cloudnative.idm.annotation.Idempotent;
+import com.cloudnative.idm.enums.IdempotentTypeEnum;
+import com.cloudnative.idm.key.IdempotentKeyExtractorProvider;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles {@code @Idempotent(type = SPEL)} key expressions to plain Java.
+ *
+ * <p>
+ * For every class declaring such methods, an {@link IdempotentKeyExtractorProvider} named
+ * {@code <Class>_IdempotentKeys} is generated in the same package. It holds one static
+ * method per annotated method, reading the arguments and calling the getters directly, so
+ * no expression is parsed nor interpreted at runtime and nothing needs to warm up.
+ * </p>
+ *
+ * <p>
+ * Expressions outside the subset described in {@link KeyExpression}, unknown parameters
+ * and unresolvable properties fail the build. Pass {@code -Aidm.processor.lenient=true}
+ * to downgrade them to warnings, the affected methods then keep being evaluated by SpEL.
+ * </p>
+ */
+@SupportedAnnotationTypes("com.cloudnative.idm.annotation.Idempotent")
+@SupportedOptions(IdempotentKeyExtractorProcessor.LENIENT_OPTION)
+public class IdempotentKeyExtractorProcessor extends AbstractProcessor {
+    static final String LENIENT_OPTION = "idm.processor.lenient";
+
+    private static final String SUPPORT = "com.cloudnative.idm.key.GeneratedKeySupport";
+
+    private static final Set<String> LOMBOK_GETTER_ANNOTATIONS = Set.of(
+            "lombok.Getter", "lombok.Data", "lombok.Value");
+
+    private Elements elements;
+
+    private Types types;
+
+    private Messager messager;
+
+    private boolean lenient;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.messager = processingEnv.getMessager();
+        this.lenient = Boolean.parseBoolean(processingEnv.getOptions().get(LENIENT_OPTION));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<TypeElement, List<ExecutableElement>> methodsByType = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(Idempotent.class)) {
+            if (element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            Idempotent idempotent = element.getAnnotation(Idempotent.class);
+            if (idempotent.type() != IdempotentTypeEnum.SPEL || idempotent.key().isBlank()) {
+                continue;
+            }
+            methodsByType.computeIfAbsent((TypeElement) element.getEnclosingElement(),
+                    type -> new ArrayList<>()).add((ExecutableElement) element);
+        }
+        methodsByType.forEach(this::generate);
+        return false;
+    }
+
+    private void generate(TypeElement type, List<ExecutableElement> methods) {
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + IdempotentKeyExtractorProvider.CLASS_NAME_SUFFIX;
+
+        StringBuilder cases = new StringBuilder();
+        StringBuilder extractors = new StringBuilder();
+        int index = 0;
+        for (ExecutableElement method : methods) {
+            String key = method.getAnnotation(Idempotent.class).key();
+            String methodKey;
+            String body;
+            try {
+                methodKey = methodKey(method);
+                body = compile(method, KeyExpression.parse(key));
+            } catch (KeyExpressionException ex) {
+                messager.printMessage(lenient ? Diagnostic.Kind.WARNING : Diagnostic.Kind.ERROR,
+                        String.format("Unsupported @Idempotent key [%s]: %s", key, ex.getMessage()),
+                        method, idempotentMirror(method));
+                continue;
+            }
+            String extractorName = "key" + index++;
+            cases.append("            case ").append(KeyExpression.javaString(methodKey)).append(":\n")
+                    .append("                return ").append(KeyExpression.javaString(key))
+                    .append(".equals(keyTemplate) ? ").append(simpleName).append("::").append(extractorName)
+                    .append(" : null;\n");
+            extractors.append("\n    private static String ").append(extractorName).append("(Object[] args) {\n")
+                    .append(body)
+                    .append("    }\n");
+        }
+        if (index == 0) {
+            return;
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n")
+                .append("public final class ").append(simpleName)
+                .append(" implements com.cloudnative.idm.key.IdempotentKeyExtractorProvider {\n\n")
+                .append("    @Override\n")
+                .append("    public com.cloudnative.idm.key.IdempotentKeyExtractor getKeyExtractor(String methodKey, ")
+                .append("String keyTemplate) {\n")
+                .append("        switch (methodKey) {\n")
+                .append(cases)
+                .append("            default:\n")
+                .append("                return null;\n")
+                .append("        }\n")
+                .append("    }\n")
+                .append(extractors)
+                .append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (IOException ex) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    String.format("Cannot write [%s]: %s", qualifiedName, ex.getMessage()), type);
+        }
+    }
+
+    /**
+     * Compile the expression into the body of an {@code (Object[])String} method.
+     */
+    private String compile(ExecutableElement method, KeyExpression expression) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        StringBuilder body = new StringBuilder();
+        List<String> operands = new ArrayList<>();
+        List<Boolean> stringOperands = new ArrayList<>();
+        int variable = 0;
+        for (KeyExpression.Operand operand : expression.getOperands()) {
+            if (operand instanceof KeyExpression.Literal) {
+                KeyExpression.Literal literal = (KeyExpression.Literal) operand;
+                operands.add(literal.getSource());
+                stringOperands.add(literal.isString());
+                continue;
+            }
+
+            KeyExpression.Reference reference = (KeyExpression.Reference) operand;
+            int parameterIndex = indexOf(parameters, reference.getParameter());
+            TypeMirror currentType = parameters.get(parameterIndex).asType();
+            String current = "v" + variable++;
+            body.append("        ").append(sourceName(currentType, true)).append(' ').append(current)
+                    .append(" = (").append(sourceName(currentType, true)).append(") args[")
+                    .append(parameterIndex).append("];\n");
+            for (KeyExpression.Step step : reference.getSteps()) {
+                Property property = resolveProperty(currentType, step.getProperty());
+                String next = "v" + variable++;
+                body.append("        ").append(sourceName(property.type, true)).append(' ').append(next)
+                        .append(" = ");
+                if (step.isNullSafe()) {
+                    body.append(current).append(" == null ? null : ").append(current);
+                } else {
+                    body.append(SUPPORT).append(".target(").append(current).append(", ")
+                            .append(KeyExpression.javaString(step.getProperty())).append(')');
+                }
+                body.append('.').append(property.accessor).append(";\n");
+                current = next;
+                currentType = property.type;
+            }
+            operands.add(current);
+            stringOperands.add(isString(currentType));
+        }
+
+        String result = operands.get(0);
+        boolean stringResult = stringOperands.get(0);
+        if (operands.size() == 1) {
+            result = SUPPORT + ".toKey(" + result + ")";
+        }
+        for (int i = 1; i < operands.size(); i++) {
+            if (!stringResult && !stringOperands.get(i)) {
+                throw new KeyExpressionException(String.format(
+                        "operand %d of '+' must be a String, numeric addition is not supported", i));
+            }
+            result = SUPPORT + ".plus(" + result + ", " + operands.get(i) + ")";
+            stringResult = true;
+        }
+        return body.append("        return ").append(result).append(";\n").toString();
+    }
+
+    private int indexOf(List<? extends VariableElement> parameters, String name) {
+        for (int i = 0; i < parameters.size(); i++) {
+            if (parameters.get(i).getSimpleName().contentEquals(name)) {
+                return i;
+            }
+        }
+        throw new KeyExpressionException(String.format("unknown parameter [#%s]", name));
+    }
+
+    /**
+     * Resolve a SpEL property against a type: public getter, public field, or a getter
+     * Lombok is going to generate.
+     */
+    private Property resolveProperty(TypeMirror ownerType, String name) {
+        if (ownerType.getKind() != TypeKind.DECLARED) {
+            throw new KeyExpressionException(String.format("cannot read [%s] on [%s]", name, ownerType));
+        }
+        DeclaredType owner = (DeclaredType) ownerType;
+        TypeElement ownerElement = (TypeElement) owner.asElement();
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+        VariableElement publicField = null;
+        VariableElement lombokField = null;
+        for (Element member : elements.getAllMembers(ownerElement)) {
+            if (member.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            if (member.getKind() == ElementKind.METHOD && member.getModifiers().contains(Modifier.PUBLIC)) {
+                ExecutableElement method = (ExecutableElement) member;
+                String methodName = method.getSimpleName().toString();
+                if (method.getParameters().isEmpty() && (methodName.equals("get" + capitalized)
+                        || methodName.equals("is" + capitalized) && isBoolean(method.getReturnType()))) {
+                    TypeMirror type = ((ExecutableType) types.asMemberOf(owner, method)).getReturnType();
+                    return new Property(methodName + "()", type);
+                }
+            } else if (member.getKind() == ElementKind.FIELD && member.getSimpleName().contentEquals(name)) {
+                if (member.getModifiers().contains(Modifier.PUBLIC)) {
+                    publicField = (VariableElement) member;
+                } else if (hasLombokGetter(member)) {
+                    lombokField = (VariableElement) member;
+                }
+            }
+        }
+        if (publicField != null) {
+            return new Property(name, types.asMemberOf(owner, publicField));
+        }
+        if (lombokField != null) {
+            TypeMirror type = types.asMemberOf(owner, lombokField);
+            String prefix = type.getKind() == TypeKind.BOOLEAN ? "is" : "get";
+            return new Property(prefix + capitalized + "()", type);
+        }
+        throw new KeyExpressionException(String.format("no public getter or field [%s] on [%s]",
+                name, ownerElement.getQualifiedName()));
+    }
+
+    private boolean hasLombokGetter(Element field) {
+        return hasAnnotation(field, LOMBOK_GETTER_ANNOTATIONS)
+                || hasAnnotation(field.getEnclosingElement(), LOMBOK_GETTER_ANNOTATIONS);
+    }
+
+    private boolean hasAnnotation(Element element, Set<String> annotationNames) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationNames.contains(annotation.getQualifiedName().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBoolean(TypeMirror type) {
+        return type.getKind() == TypeKind.BOOLEAN || isDeclared(type, "java.lang.Boolean");
+    }
+
+    private boolean isString(TypeMirror type) {
+        return isDeclared(type, "java.lang.String");
+    }
+
+    private boolean isDeclared(TypeMirror type, String qualifiedName) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(qualifiedName);
+    }
+
+    /**
+     * Source form of the erasure of a type, primitives optionally boxed.
+     */
+    private String sourceName(TypeMirror type, boolean box) {
+        switch (type.getKind()) {
+            case DECLARED:
+                return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+            case ARRAY:
+                return sourceName(((ArrayType) type).getComponentType(), false) + "[]";
+            case TYPEVAR:
+            case WILDCARD:
+            case INTERSECTION:
+                return sourceName(types.erasure(type), box);
+            default:
+                if (type.getKind().isPrimitive()) {
+                    return box ? types.boxedClass((PrimitiveType) type).getQualifiedName().toString()
+                            : type.getKind().name().toLowerCase();
+                }
+                throw new KeyExpressionException(String.format("unsupported type [%s]", type));
+        }
+    }
+
+    /**
+     * Method name and canonical parameter type names, matching the runtime lookup.
+     */
+    private String methodKey(ExecutableElement method) {
+        StringBuilder key = new StringBuilder(method.getSimpleName()).append('(');
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(sourceName(types.erasure(parameters.get(i).asType()), false));
+        }
+        return key.append(')').toString();
+    }
+
+    private AnnotationMirror idempotentMirror(Element element) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(Idempotent.class.getName())) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * How a property is read and the type it yields.
+     */
+    private static final class Property {
+        private final String accessor;
+
+        private final TypeMirror type;
+
+        private Property(String accessor, TypeMirror type) {
+            this.accessor = accessor;
+            this.type = type;
+        }
+    }
+}
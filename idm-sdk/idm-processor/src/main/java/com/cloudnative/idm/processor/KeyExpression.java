@@ -0,0 +1,277 @@
+package com.cloudnative.idm.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed form of the SpEL subset the processor can compile to plain Java.
+ *
+ * <p>
+ * Supported expressions are {@code +} chains of operands, an operand being:
+ * <ul>
+ *     <li>a string literal, {@code 'text'} or {@code "text"}, quotes escaped by doubling</li>
+ *     <li>an int literal, e.g. {@code 42}</li>
+ *     <li>a parameter reference followed by property navigations, e.g.
+ *     {@code #order.customer?.id}</li>
+ * </ul>
+ * Anything else (method calls, indexers, operators other than {@code +}, {@code #root},
+ * bean references, ...) is rejected with a {@link KeyExpressionException}.
+ * </p>
+ */
+final class KeyExpression {
+    private final List<Operand> operands;
+
+    private KeyExpression(List<Operand> operands) {
+        this.operands = Collections.unmodifiableList(operands);
+    }
+
+    List<Operand> getOperands() {
+        return operands;
+    }
+
+    /**
+     * Parse a key expression.
+     *
+     * @throws KeyExpressionException if the expression is outside the supported subset
+     */
+    static KeyExpression parse(String expression) {
+        return new Parser(expression).parse();
+    }
+
+    /**
+     * One operand of the {@code +} chain.
+     */
+    interface Operand {
+    }
+
+    /**
+     * A string or int literal, already rendered as Java source.
+     */
+    static final class Literal implements Operand {
+        private final String source;
+
+        private final boolean string;
+
+        Literal(String source, boolean string) {
+            this.source = source;
+            this.string = string;
+        }
+
+        String getSource() {
+            return source;
+        }
+
+        boolean isString() {
+            return string;
+        }
+    }
+
+    /**
+     * A {@code #parameter} reference with its property navigations.
+     */
+    static final class Reference implements Operand {
+        private final String parameter;
+
+        private final List<Step> steps;
+
+        Reference(String parameter, List<Step> steps) {
+            this.parameter = parameter;
+            this.steps = steps;
+        }
+
+        String getParameter() {
+            return parameter;
+        }
+
+        List<Step> getSteps() {
+            return steps;
+        }
+    }
+
+    /**
+     * One property navigation, {@code .name} or the null-safe {@code ?.name}.
+     */
+    static final class Step {
+        private final String property;
+
+        private final boolean nullSafe;
+
+        Step(String property, boolean nullSafe) {
+            this.property = property;
+            this.nullSafe = nullSafe;
+        }
+
+        String getProperty() {
+            return property;
+        }
+
+        boolean isNullSafe() {
+            return nullSafe;
+        }
+    }
+
+    private static final class Parser {
+        private final String expression;
+
+        private int position;
+
+        private Parser(String expression) {
+            this.expression = expression;
+        }
+
+        private KeyExpression parse() {
+            List<Operand> operands = new ArrayList<>();
+            operands.add(operand());
+            skipWhitespace();
+            while (position < expression.length()) {
+                expect('+');
+                operands.add(operand());
+                skipWhitespace();
+            }
+            return new KeyExpression(operands);
+        }
+
+        private Operand operand() {
+            skipWhitespace();
+            if (position >= expression.length()) {
+                throw error("operand expected");
+            }
+            char current = expression.charAt(position);
+            if (current == '\'' || current == '"') {
+                return new Literal(javaString(quoted(current)), true);
+            }
+            if (Character.isDigit(current)) {
+                return intLiteral();
+            }
+            if (current == '#') {
+                position++;
+                return reference();
+            }
+            throw error("unsupported token");
+        }
+
+        private String quoted(char quote) {
+            StringBuilder value = new StringBuilder();
+            position++;
+            while (position < expression.length()) {
+                char current = expression.charAt(position++);
+                if (current != quote) {
+                    value.append(current);
+                } else if (position < expression.length() && expression.charAt(position) == quote) {
+                    value.append(quote);
+                    position++;
+                } else {
+                    return value.toString();
+                }
+            }
+            throw error("unterminated string literal");
+        }
+
+        private Literal intLiteral() {
+            int start = position;
+            while (position < expression.length() && Character.isDigit(expression.charAt(position))) {
+                position++;
+            }
+            if (position < expression.length() && Character.isJavaIdentifierPart(expression.charAt(position))
+                    || position < expression.length() && expression.charAt(position) == '.') {
+                throw error("only int literals are supported");
+            }
+            String digits = expression.substring(start, position);
+            try {
+                return new Literal(Integer.toString(Integer.parseInt(digits)), false);
+            } catch (NumberFormatException ex) {
+                throw error("int literal out of range");
+            }
+        }
+
+        private Reference reference() {
+            String parameter = identifier();
+            List<Step> steps = new ArrayList<>();
+            while (true) {
+                skipWhitespace();
+                if (expression.startsWith("?.", position)) {
+                    position += 2;
+                    steps.add(new Step(identifier(), true));
+                } else if (expression.startsWith(".", position)) {
+                    position++;
+                    steps.add(new Step(identifier(), false));
+                } else {
+                    break;
+                }
+            }
+            if (position < expression.length() && "([{".indexOf(expression.charAt(position)) >= 0) {
+                throw error("method calls, indexers and projections are not supported");
+            }
+            return new Reference(parameter, steps);
+        }
+
+        private String identifier() {
+            skipWhitespace();
+            int start = position;
+            if (position < expression.length()
+                    && Character.isJavaIdentifierStart(expression.charAt(position))) {
+                position++;
+                while (position < expression.length()
+                        && Character.isJavaIdentifierPart(expression.charAt(position))) {
+                    position++;
+                }
+            }
+            if (start == position) {
+                throw error("identifier expected");
+            }
+            return expression.substring(start, position);
+        }
+
+        private void expect(char expected) {
+            if (expression.charAt(position) != expected) {
+                throw error("only the '+' operator is supported");
+            }
+            position++;
+        }
+
+        private void skipWhitespace() {
+            while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+                position++;
+            }
+        }
+
+        private KeyExpressionException error(String reason) {
+            return new KeyExpressionException(String.format("%s at position %d", reason, position));
+        }
+    }
+
+    /**
+     * Render a value as a Java string literal.
+     */
+    static String javaString(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char current = value.charAt(i);
+            switch (current) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                case '\t':
+                    literal.append("\\t");
+                    break;
+                default:
+                    if (current < 0x20 || current > 0x7e) {
+                        literal.append(String.format("\\u%04x", (int) current));
+                    } else {
+                        literal.append(current);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
@@ -0,0 +1,11 @@
+package com.cloudnative.idm.processor;
+
+/**
+ * Raised when a key expression cannot be compiled to Java, reported as a compile error.
+ */
+final class KeyExpressionException extends RuntimeException {
+
+    KeyExpressionException(String message) {
+        super(message);
+    }
+}